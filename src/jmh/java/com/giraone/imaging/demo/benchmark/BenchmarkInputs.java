@@ -0,0 +1,132 @@
+package com.giraone.imaging.demo.benchmark;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.service.ThumbnailService;
+import org.jcodec.api.awt.AWTSequenceEncoder;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Input files for the benchmarks. Raster formats are generated synthetically with the requested number of
+ * megapixels. PDF is taken from the test resources and MP4 is a synthetic H.264 video encoded with JCodec; both do
+ * not depend on the number of megapixels. A real file {@code sample.<ext>} in the directory given by the system
+ * property {@value #INPUT_DIR_PROPERTY} takes precedence.
+ */
+final class BenchmarkInputs {
+
+    static final String INPUT_DIR_PROPERTY = "benchmark.input.dir";
+
+    /**
+     * Length of the synthetic video used by {@link #load}.
+     */
+    static final int VIDEO_SECONDS = 2;
+
+    private BenchmarkInputs() {
+    }
+
+    static byte[] load(FileTypeDetector.FileType fileType, int megapixels) throws IOException {
+
+        final String inputDir = System.getProperty(INPUT_DIR_PROPERTY);
+        if (inputDir != null) {
+            final Path sample = Path.of(inputDir, "sample" + extension(fileType));
+            if (Files.exists(sample)) {
+                return Files.readAllBytes(sample);
+            }
+        }
+        return switch (fileType) {
+            case JPEG -> synthetic("jpeg", megapixels);
+            case PNG -> synthetic("png", megapixels);
+            case GIF -> synthetic("gif", megapixels);
+            case BMP -> synthetic("bmp", megapixels);
+            case TIFF -> synthetic("tiff", megapixels);
+            case PDF -> resource("document-01-PDF-1.3.pdf");
+            case MP4 -> video(VIDEO_SECONDS);
+            default -> throw new IllegalStateException("No input for " + fileType + ", provide "
+                + "sample" + extension(fileType) + " in -D" + INPUT_DIR_PROPERTY);
+        };
+    }
+
+    /**
+     * {@code sample.mp4} from the input directory or a synthetic 640x360 video with 25 fps and a moving pattern.
+     */
+    static byte[] video(int seconds) throws IOException {
+
+        final String inputDir = System.getProperty(INPUT_DIR_PROPERTY);
+        if (inputDir != null) {
+            final Path sample = Path.of(inputDir, "sample.mp4");
+            if (Files.exists(sample)) {
+                return Files.readAllBytes(sample);
+            }
+        }
+        final Path file = Files.createTempFile("bench-video-", ".mp4");
+        try {
+            final AWTSequenceEncoder encoder = AWTSequenceEncoder.create25Fps(file.toFile());
+            final BufferedImage frame = new BufferedImage(640, 360, BufferedImage.TYPE_3BYTE_BGR);
+            for (int i = 0; i < 25 * seconds; i++) {
+                final Graphics2D g = frame.createGraphics();
+                g.setPaint(new GradientPaint(i * 4, 0, Color.ORANGE, 640 + i * 4, 360, Color.BLUE));
+                g.fillRect(0, 0, 640, 360);
+                g.setColor(Color.WHITE);
+                g.fillOval((i * 8) % 640, 120, 120, 120);
+                g.dispose();
+                encoder.encodeImage(frame);
+            }
+            encoder.finish();
+            return Files.readAllBytes(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    static Path writeTempFile(FileTypeDetector.FileType fileType, byte[] content) throws IOException {
+        final Path file = Files.createTempFile("bench-in-", ThumbnailService.getFileExtension(fileType));
+        file.toFile().deleteOnExit();
+        return Files.write(file, content);
+    }
+
+    private static String extension(FileTypeDetector.FileType fileType) {
+        return fileType == FileTypeDetector.FileType.MP4 ? ".mp4" : ThumbnailService.getFileExtension(fileType);
+    }
+
+    /**
+     * Generate a 4:3 image with gradients and noise, so that compression ratios are close to photos.
+     */
+    private static byte[] synthetic(String formatName, int megapixels) throws IOException {
+
+        final int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000.0 * 4 / 3));
+        final int height = width * 3 / 4;
+        final int imageType = "gif".equals(formatName) ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_INT_RGB;
+        final BufferedImage image = new BufferedImage(width, height, imageType);
+        final Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+        g.fillRect(0, 0, width, height);
+        final Random random = new Random(42L);
+        for (int i = 0; i < 200; i++) {
+            g.setColor(new Color(random.nextInt(0x1000000)));
+            g.fillOval(random.nextInt(width), random.nextInt(height), random.nextInt(width / 4 + 1), random.nextInt(height / 4 + 1));
+        }
+        g.dispose();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, formatName, out)) {
+            throw new IllegalStateException("No ImageIO writer for " + formatName);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = BenchmarkInputs.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing test resource " + name);
+            }
+            return in.readAllBytes();
+        }
+    }
+}
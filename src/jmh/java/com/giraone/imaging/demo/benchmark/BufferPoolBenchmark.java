@@ -0,0 +1,78 @@
+package com.giraone.imaging.demo.benchmark;
+
+import com.giraone.imaging.demo.config.BufferPoolProperties;
+import com.giraone.imaging.demo.service.BufferPool;
+import com.giraone.imaging.demo.service.Spooling;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest ({@link Spooling#spool} of a request body to disk) and egress (copy of a result file to the response) with
+ * a pooled buffer and with a buffer allocated per request. Run with {@code -prof gc} and compare
+ * {@code gc.alloc.rate.norm}, the bytes allocated per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BufferPoolBenchmark {
+
+    @Param({"POOLED", "ALLOCATED"})
+    public String buffer;
+
+    @Param({"64", "4096"})
+    public int kilobytes;
+
+    private BufferPool bufferPool;
+    private byte[] content;
+    private byte[] prefix;
+    private Path spoolFile;
+    private Path resultFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        bufferPool = new BufferPool(new BufferPoolProperties(), new SimpleMeterRegistry());
+        content = new byte[kilobytes * 1024];
+        Arrays.fill(content, (byte) 0x5a);
+        prefix = Arrays.copyOf(content, Spooling.DETECTION_PREFIX_SIZE);
+        spoolFile = Files.createTempFile("benchmark-in-", ".bin");
+        resultFile = Files.write(Files.createTempFile("benchmark-out-", ".bin"), content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Spooling.deleteQuietly(spoolFile);
+        Spooling.deleteQuietly(resultFile);
+    }
+
+    @Benchmark
+    public long ingest() throws IOException {
+        final InputStream rest = new ByteArrayInputStream(content, prefix.length, content.length - prefix.length);
+        if ("POOLED".equals(buffer)) {
+            try (BufferPool.Buffer pooled = bufferPool.lease()) {
+                return Spooling.spool(prefix, rest, spoolFile, null, pooled.array());
+            }
+        }
+        return Spooling.spool(prefix, rest, spoolFile, null);
+    }
+
+    @Benchmark
+    public long egress() throws IOException {
+        try (InputStream in = Files.newInputStream(resultFile)) {
+            return "POOLED".equals(buffer)
+                ? bufferPool.copy(in, OutputStream.nullOutputStream())
+                : in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
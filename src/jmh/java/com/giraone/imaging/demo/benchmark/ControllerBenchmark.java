@@ -0,0 +1,96 @@
+package com.giraone.imaging.demo.benchmark;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.ImagingKitDemoApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The complete HTTP path of the endpoints including request body ingest, temp file spooling, conversion and
+ * response writing. The thumbnail cache is disabled, so that every invocation converts. The servlet and the reactive
+ * stack are compared with the same requests, memory with {@code -prof gc}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ControllerBenchmark {
+
+    @Param({"JPEG", "PNG", "PDF"})
+    public String format;
+
+    /**
+     * Size of the raster inputs. PDF uses the same input for all values, so its result for 12 repeats the one for 1.
+     */
+    @Param({"1", "12"})
+    public int megapixels;
+
+    @Param({"200"})
+    public int dimension;
+
+    @Param({"SERVLET", "REACTIVE"})
+    public String stack;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private URI baseUri;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        content = BenchmarkInputs.load(FileTypeDetector.FileType.valueOf(format), megapixels);
+        context = new SpringApplicationBuilder(ImagingKitDemoApplication.class)
+            .properties("server.port=0", "logging.level.ROOT=WARN", "imaging.thumbnail-cache.enabled=false",
+                "spring.main.web-application-type=" + stack)
+            .run();
+        final int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        baseUri = URI.create("http://localhost:" + port);
+        httpClient = HttpClient.newHttpClient();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        httpClient.close();
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] createThumbnail() throws Exception {
+        return put(HttpRequest.newBuilder(baseUri.resolve("/create-thumbnail"))
+            .header("Thumbnail-Width", Integer.toString(dimension))
+            .header("Thumbnail-Height", Integer.toString(dimension)));
+    }
+
+    @Benchmark
+    public byte[] fetchFileInfo() throws Exception {
+        return put(HttpRequest.newBuilder(baseUri.resolve("/fetch-file-info")));
+    }
+
+    @Benchmark
+    public byte[] detectType() throws Exception {
+        return put(HttpRequest.newBuilder(baseUri.resolve("/detect-type")));
+    }
+
+    private byte[] put(HttpRequest.Builder builder) throws Exception {
+        final HttpRequest request = builder
+            .header("Content-Type", "application/octet-stream")
+            .PUT(HttpRequest.BodyPublishers.ofByteArray(content))
+            .build();
+        final HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.uri() + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,53 @@
+package com.giraone.imaging.demo.benchmark;
+
+import com.giraone.imaging.FileInfo;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.ImagingProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ImagingProvider#fetchFileInfo} on files of different formats and sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FetchFileInfoBenchmark {
+
+    @Param({"JPEG", "PNG", "GIF", "TIFF", "PDF", "MP4"})
+    public String format;
+
+    /**
+     * Size of the raster inputs. PDF and MP4 use the same input for all values, so their results for 12 repeat those
+     * for 1. To skip the repetition, run them separately with {@code -p format=PDF,MP4 -p megapixels=1}.
+     */
+    @Param({"1", "12"})
+    public int megapixels;
+
+    private final ImagingProvider imagingProvider = ImagingProvider.getInstance();
+    private Path inputFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final FileTypeDetector.FileType fileType = FileTypeDetector.FileType.valueOf(format);
+        inputFile = BenchmarkInputs.writeTempFile(fileType, BenchmarkInputs.load(fileType, megapixels));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(inputFile);
+    }
+
+    @Benchmark
+    public FileInfo fetchFileInfo() throws Exception {
+        final File file = inputFile.toFile();
+        return imagingProvider.fetchFileInfo(file);
+    }
+}
@@ -0,0 +1,52 @@
+package com.giraone.imaging.demo.benchmark;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.service.Spooling;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FileTypeDetector#getFileType} on a detection prefix and on the complete input.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileTypeDetectorBenchmark {
+
+    @Param({"JPEG", "PNG", "GIF", "TIFF", "PDF", "MP4"})
+    public String format;
+
+    /**
+     * Size of the raster inputs. PDF and MP4 use the same input for all values, so their results for 12 repeat those
+     * for 1. To skip the repetition, run them separately with {@code -p format=PDF,MP4 -p megapixels=1}.
+     */
+    @Param({"1", "12"})
+    public int megapixels;
+
+    private final FileTypeDetector fileTypeDetector = FileTypeDetector.getInstance();
+    private byte[] content;
+    private byte[] prefix;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        content = BenchmarkInputs.load(FileTypeDetector.FileType.valueOf(format), megapixels);
+        prefix = Arrays.copyOf(content, Math.min(content.length, Spooling.DETECTION_PREFIX_SIZE));
+    }
+
+    @Benchmark
+    public FileTypeDetector.FileType getFileType_prefix() {
+        return fileTypeDetector.getFileType(prefix);
+    }
+
+    @Benchmark
+    public FileTypeDetector.FileType getFileType_stream() {
+        return fileTypeDetector.getFileType(new ByteArrayInputStream(content));
+    }
+}
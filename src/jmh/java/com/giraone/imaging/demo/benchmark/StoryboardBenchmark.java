@@ -0,0 +1,67 @@
+package com.giraone.imaging.demo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.config.MemoryBudgetProperties;
+import com.giraone.imaging.demo.config.StoryboardProperties;
+import com.giraone.imaging.demo.service.DecodeMemoryBudget;
+import com.giraone.imaging.demo.service.StoryboardService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame extraction throughput (frames per second) of {@link StoryboardService#createStoryboard} with one and
+ * with several extraction threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StoryboardBenchmark {
+
+    private static final int FRAMES = 20;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"20"})
+    public int seconds;
+
+    private ExecutorService executor;
+    private StoryboardService storyboardService;
+    private Path inputFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final StoryboardProperties properties = new StoryboardProperties();
+        properties.setThreads(threads);
+        executor = Executors.newFixedThreadPool(threads);
+        storyboardService = new StoryboardService(executor, new DecodeMemoryBudget(new MemoryBudgetProperties(), meterRegistry),
+            new ObjectMapper(), properties, meterRegistry);
+        inputFile = BenchmarkInputs.writeTempFile(FileTypeDetector.FileType.MP4, BenchmarkInputs.video(seconds));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        Files.deleteIfExists(inputFile);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int createStoryboard() throws Exception {
+        try (StoryboardService.Storyboard storyboard = storyboardService.createStoryboard(inputFile, FRAMES, new Dimension(160, 90), 0)) {
+            return storyboard.sprite().getWidth();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.giraone.imaging.demo.benchmark;
+
+import com.giraone.imaging.ConversionCommand;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.config.BufferPoolProperties;
+import com.giraone.imaging.demo.config.MemoryBudgetProperties;
+import com.giraone.imaging.demo.config.PdfPagesProperties;
+import com.giraone.imaging.demo.config.SpoolProperties;
+import com.giraone.imaging.demo.config.SubsamplingProperties;
+import com.giraone.imaging.demo.config.TiffProperties;
+import com.giraone.imaging.demo.metrics.ImagingMetrics;
+import com.giraone.imaging.demo.service.BufferPool;
+import com.giraone.imaging.demo.service.DecodeMemoryBudget;
+import com.giraone.imaging.demo.service.PdfPageService;
+import com.giraone.imaging.demo.service.SpoolManager;
+import com.giraone.imaging.demo.service.ThumbnailService;
+import com.giraone.imaging.demo.service.ThumbnailSpec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ThumbnailService#createThumbnail} for large JPEG and PNG sources with and without subsampled decoding.
+ * Run with {@code -prof gc} to compare the allocation per thumbnail.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubsampledThumbnailBenchmark {
+
+    @Param({"JPEG", "PNG"})
+    public String format;
+
+    @Param({"12", "24"})
+    public int megapixels;
+
+    @Param({"200"})
+    public int dimension;
+
+    @Param({"true", "false"})
+    public boolean subsampling;
+
+    private SpoolManager spoolManager;
+    private ThumbnailService thumbnailService;
+    private FileTypeDetector.FileType fileType;
+    private ThumbnailSpec spec;
+    private Path inputFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final SubsamplingProperties subsamplingProperties = new SubsamplingProperties();
+        subsamplingProperties.setEnabled(subsampling);
+        final SpoolProperties spoolProperties = new SpoolProperties();
+        spoolProperties.setDirectory(Files.createTempDirectory("spool-"));
+        spoolManager = new SpoolManager(spoolProperties, new BufferPool(new BufferPoolProperties(), meterRegistry), meterRegistry);
+        final DecodeMemoryBudget decodeMemoryBudget = new DecodeMemoryBudget(new MemoryBudgetProperties(), meterRegistry);
+        // only single page sources, the page executor is never used
+        final PdfPageService pdfPageService = new PdfPageService(ForkJoinPool.commonPool(), decodeMemoryBudget, new PdfPagesProperties(), meterRegistry);
+        thumbnailService = new ThumbnailService(new ImagingMetrics(meterRegistry), decodeMemoryBudget, spoolManager, pdfPageService,
+            subsamplingProperties, new TiffProperties());
+        fileType = FileTypeDetector.FileType.valueOf(format);
+        spec = new ThumbnailSpec(dimension, dimension, ConversionCommand.CompressionQuality.LOSSY_MEDIUM);
+        inputFile = BenchmarkInputs.writeTempFile(fileType, BenchmarkInputs.load(fileType, megapixels));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(inputFile);
+        Files.deleteIfExists(spoolManager.getDirectory());
+    }
+
+    @Benchmark
+    public long createThumbnail() throws Exception {
+        final Path outputFile = thumbnailService.createThumbnail(inputFile, fileType, spec);
+        try {
+            return Files.size(outputFile);
+        } finally {
+            spoolManager.delete(outputFile);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.giraone.imaging.demo.benchmark;
+
+import com.giraone.imaging.ConversionCommand;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.ThumbnailProvider;
+import com.giraone.imaging.demo.service.ThumbnailService;
+import com.giraone.imaging.demo.service.ThumbnailSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ThumbnailProvider#createThumbnail} across formats, input sizes, target dimensions and compression qualities.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThumbnailProviderBenchmark {
+
+    @Param({"JPEG", "PNG", "GIF", "TIFF", "PDF", "MP4"})
+    public String format;
+
+    /**
+     * Size of the raster inputs. PDF and MP4 use the same input for all values, so their results for 12 repeat those
+     * for 1. To skip the repetition, run them separately with {@code -p format=PDF,MP4 -p megapixels=1}.
+     */
+    @Param({"1", "12"})
+    public int megapixels;
+
+    @Param({"200", "800"})
+    public int dimension;
+
+    @Param({"LOSSY_SPEED", "LOSSY_MEDIUM", "LOSSY_BEST", "LOSSLESS"})
+    public String quality;
+
+    private ThumbnailProvider thumbnailProvider;
+    private Path inputFile;
+    private Path outputFile;
+    private ConversionCommand command;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final FileTypeDetector.FileType fileType = FileTypeDetector.FileType.valueOf(format);
+        final ThumbnailSpec spec = new ThumbnailSpec(dimension, dimension, ConversionCommand.CompressionQuality.valueOf(quality));
+        thumbnailProvider = ThumbnailProvider.getThumbnailProvider(ThumbnailService.determineOutputFormat(fileType));
+        inputFile = BenchmarkInputs.writeTempFile(fileType, BenchmarkInputs.load(fileType, megapixels));
+        outputFile = Files.createTempFile("bench-out-", spec.outputExtension());
+        command = spec.toCommand(outputFile.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(inputFile);
+        Files.deleteIfExists(outputFile);
+    }
+
+    @Benchmark
+    public long createThumbnail() throws Exception {
+        thumbnailProvider.createThumbnail(inputFile.toFile(), command);
+        return Files.size(outputFile);
+    }
+}
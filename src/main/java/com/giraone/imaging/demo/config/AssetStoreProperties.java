@@ -0,0 +1,37 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+/**
+ * Settings for the asset store with originals and their renditions ({@code imaging.assets.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.assets")
+public class AssetStoreProperties {
+
+    /**
+     * Directory for originals and renditions. Must be on a persistent volume to keep assets across restarts.
+     */
+    private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "imaging-assets");
+    /**
+     * Upper bound for the stored renditions per asset, the least recently used renditions are deleted.
+     */
+    private int maxRenditions = 20;
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public int getMaxRenditions() {
+        return maxRenditions;
+    }
+
+    public void setMaxRenditions(int maxRenditions) {
+        this.maxRenditions = maxRenditions;
+    }
+}
@@ -0,0 +1,35 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the batch thumbnail endpoint ({@code imaging.batch.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.batch")
+public class BatchProperties {
+
+    /**
+     * Number of worker threads shared by all batches. 0 means number of available processors.
+     */
+    private int threads = 0;
+    /**
+     * Maximum number of entries in a single batch request.
+     */
+    private int maxEntries = 1000;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
@@ -0,0 +1,37 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Settings for the shared I/O buffers of request bodies and responses ({@code imaging.buffers.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.buffers")
+public class BufferPoolProperties {
+
+    /**
+     * Size of each buffer, which is the chunk size of all copies.
+     */
+    private DataSize size = DataSize.ofKilobytes(64);
+    /**
+     * Maximum number of idle buffers kept for reuse. More buffers are allocated under load, but not kept.
+     * 0 means four per available processor.
+     */
+    private int maxPooled = 0;
+
+    public DataSize getSize() {
+        return size;
+    }
+
+    public void setSize(DataSize size) {
+        this.size = size;
+    }
+
+    public int getMaxPooled() {
+        return maxPooled;
+    }
+
+    public void setMaxPooled(int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+}
@@ -0,0 +1,125 @@
+package com.giraone.imaging.demo.config;
+
+import com.giraone.imaging.FileTypeDetector;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings for the per-format conversion bulkheads ({@code imaging.bulkhead.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.bulkhead")
+public class BulkheadProperties {
+
+    private boolean enabled = true;
+    /**
+     * Value of the {@code Retry-After} header of rejected requests.
+     */
+    private Duration retryAfter = Duration.ofSeconds(5);
+    /**
+     * Limits for all file types without an entry in {@link #formats}.
+     */
+    private Limits defaults = Limits.withBuiltInValues();
+    /**
+     * Limits per file type, e.g. {@code PDF} or {@code MP4}. Fields, that are not set, are taken from {@link #defaults}.
+     */
+    private Map<FileTypeDetector.FileType, Limits> formats = new EnumMap<>(FileTypeDetector.FileType.class);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    public Limits getDefaults() {
+        return defaults;
+    }
+
+    public void setDefaults(Limits defaults) {
+        this.defaults = defaults;
+    }
+
+    public Map<FileTypeDetector.FileType, Limits> getFormats() {
+        return formats;
+    }
+
+    public void setFormats(Map<FileTypeDetector.FileType, Limits> formats) {
+        this.formats = formats;
+    }
+
+    public Limits limitsFor(FileTypeDetector.FileType fileType) {
+        final Limits limits = formats.get(fileType);
+        return limits != null ? limits.mergedOver(defaults) : defaults;
+    }
+
+    /**
+     * Limits of one bulkhead. A field, that is null, is inherited from the defaults.
+     */
+    public static class Limits {
+
+        /**
+         * Number of conversions running at the same time. 0 means number of available processors.
+         */
+        private Integer maxConcurrent;
+        /**
+         * Number of requests waiting for a free slot. Further requests are rejected immediately.
+         */
+        private Integer maxQueue;
+        /**
+         * Maximum time a request waits for a free slot, before it is rejected.
+         */
+        private Duration maxWait;
+
+        static Limits withBuiltInValues() {
+            final Limits limits = new Limits();
+            limits.maxConcurrent = 0;
+            limits.maxQueue = 50;
+            limits.maxWait = Duration.ofSeconds(10);
+            return limits;
+        }
+
+        Limits mergedOver(Limits defaults) {
+            final Limits merged = new Limits();
+            merged.maxConcurrent = maxConcurrent != null ? maxConcurrent : defaults.maxConcurrent;
+            merged.maxQueue = maxQueue != null ? maxQueue : defaults.maxQueue;
+            merged.maxWait = maxWait != null ? maxWait : defaults.maxWait;
+            return merged;
+        }
+
+        public Integer getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(Integer maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public Integer getMaxQueue() {
+            return maxQueue;
+        }
+
+        public void setMaxQueue(Integer maxQueue) {
+            this.maxQueue = maxQueue;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for coalescing identical concurrent thumbnail conversions ({@code imaging.coalescing.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.coalescing")
+public class CoalescingProperties {
+
+    private boolean enabled = true;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+}
@@ -0,0 +1,47 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+/**
+ * Settings for the persistent on-disk thumbnail cache behind the in-memory cache ({@code imaging.disk-cache.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.disk-cache")
+public class DiskCacheProperties {
+
+    private boolean enabled = false;
+    /**
+     * Directory for the thumbnails and the index. Must be on a persistent volume to survive restarts.
+     */
+    private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "imaging-disk-cache");
+    /**
+     * Upper bound for the sum of all cached thumbnail bytes, least recently used thumbnails are evicted.
+     */
+    private DataSize maxSize = DataSize.ofGigabytes(1);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public DataSize getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(DataSize maxSize) {
+        this.maxSize = maxSize;
+    }
+}
@@ -0,0 +1,41 @@
+package com.giraone.imaging.demo.config;
+
+import com.giraone.imaging.demo.service.CpuPool;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ExecutionConfiguration {
+
+    /**
+     * Tomcat handles each request on a new virtual thread in mode {@code VIRTUAL}, so slow uploads and downloads
+     * do not occupy platform threads.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "imaging.execution", name = "mode", havingValue = "VIRTUAL")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(new VirtualThreadExecutor("tomcat-virtual-"));
+    }
+
+    /**
+     * Fixed, core-sized pool of platform threads for decoding and encoding in mode {@code VIRTUAL}. In mode
+     * {@code PLATFORM} the work runs on the calling thread.
+     */
+    @Bean(destroyMethod = "close")
+    public CpuPool cpuPool(ExecutionProperties properties, MeterRegistry meterRegistry) {
+        if (properties.getMode() != ExecutionProperties.Mode.VIRTUAL) {
+            return new CpuPool(null);
+        }
+        int threads = properties.getCpuThreads() > 0 ? properties.getCpuThreads() : Runtime.getRuntime().availableProcessors();
+        return new CpuPool(ExecutorServiceMetrics.monitor(meterRegistry,
+            Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("cpu-")), "cpu"));
+    }
+}
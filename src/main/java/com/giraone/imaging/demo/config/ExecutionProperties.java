@@ -0,0 +1,42 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Threading of request handling and imaging work ({@code imaging.execution.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.execution")
+public class ExecutionProperties {
+
+    public enum Mode {
+        /** Requests and their imaging work run on the platform threads of the Tomcat pool. */
+        PLATFORM,
+        /**
+         * Requests (incl. reading the upload and writing the response) run on virtual threads, the CPU-bound
+         * decode and encode work is handed to a fixed pool of platform threads.
+         */
+        VIRTUAL
+    }
+
+    private Mode mode = Mode.PLATFORM;
+    /**
+     * Size of the CPU pool in mode {@link Mode#VIRTUAL}. 0 means number of available processors.
+     */
+    private int cpuThreads = 0;
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public int getCpuThreads() {
+        return cpuThreads;
+    }
+
+    public void setCpuThreads(int cpuThreads) {
+        this.cpuThreads = cpuThreads;
+    }
+}
@@ -0,0 +1,35 @@
+package com.giraone.imaging.demo.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.imaging.demo.service.DirectoryIndexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class IndexerConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexerConfiguration.class);
+
+    /**
+     * Index {@code imaging.indexer.directory} once at startup and log the report. Without a web server
+     * ({@code spring.main.web-application-type=none}) the context is closed, so that the application exits after the run.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "imaging.indexer", name = "directory")
+    public ApplicationRunner directoryIndexerRunner(DirectoryIndexer directoryIndexer, IndexerProperties properties,
+                                                    ObjectMapper objectMapper, ConfigurableApplicationContext context) {
+        return args -> {
+            final DirectoryIndexer.Report report = directoryIndexer.index(properties.getDirectory(), properties.getIndexFile());
+            LOGGER.info("Index report {}", objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+            if (!(context instanceof WebServerApplicationContext)) {
+                context.close();
+            }
+        };
+    }
+}
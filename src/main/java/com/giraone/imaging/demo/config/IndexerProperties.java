@@ -0,0 +1,50 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+/**
+ * Settings for the bulk directory indexer ({@code imaging.indexer.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.indexer")
+public class IndexerProperties {
+
+    /**
+     * Root of the directory tree to index at startup. Null disables the indexer run.
+     */
+    private Path directory;
+    /**
+     * JSON-lines index file. An existing index is used to skip unchanged files and is replaced after the run.
+     */
+    private Path indexFile = Path.of("imaging-index.jsonl");
+    /**
+     * Parallelism of the work-stealing pool, 0 means number of available processors. Can be set higher for
+     * network volumes with high latency.
+     */
+    private int threads = 0;
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getIndexFile() {
+        return indexFile;
+    }
+
+    public void setIndexFile(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+}
@@ -0,0 +1,49 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings for asynchronous thumbnail jobs ({@code imaging.jobs.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.jobs")
+public class JobProperties {
+
+    /**
+     * Number of threads of the dedicated job executor.
+     */
+    private int threads = 2;
+    /**
+     * Number of jobs waiting for a thread. Further submissions are rejected with 503.
+     */
+    private int queueCapacity = 100;
+    /**
+     * How long finished jobs and their results are kept.
+     */
+    private Duration retention = Duration.ofMinutes(15);
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public Duration getRetention() {
+        return retention;
+    }
+
+    public void setRetention(Duration retention) {
+        this.retention = retention;
+    }
+}
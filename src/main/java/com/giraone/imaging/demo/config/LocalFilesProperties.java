@@ -0,0 +1,39 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allow-lists for processing server-local files by path reference ({@code imaging.local-files.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.local-files")
+public class LocalFilesProperties {
+
+    /**
+     * Directories, whose files may be read by path. Empty disables the {@code /local/*} endpoints.
+     */
+    private List<Path> roots = new ArrayList<>();
+    /**
+     * Directories, into which thumbnails may be written by path. Empty disables writing to a target path.
+     */
+    private List<Path> outputRoots = new ArrayList<>();
+
+    public List<Path> getRoots() {
+        return roots;
+    }
+
+    public void setRoots(List<Path> roots) {
+        this.roots = roots;
+    }
+
+    public List<Path> getOutputRoots() {
+        return outputRoots;
+    }
+
+    public void setOutputRoots(List<Path> outputRoots) {
+        this.outputRoots = outputRoots;
+    }
+}
@@ -0,0 +1,59 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Settings for the admission of decodes against a heap budget ({@code imaging.memory-budget.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.memory-budget")
+public class MemoryBudgetProperties {
+
+    private boolean enabled = true;
+    /**
+     * Heap available for decoded images of all concurrent conversions. 0 = half of the maximum heap size.
+     */
+    private DataSize maxSize = DataSize.ofBytes(0);
+    /**
+     * Sources with more pixels are rejected regardless of the free budget.
+     */
+    private long maxPixels = 100_000_000L;
+    /**
+     * How long a conversion waits for the budget, before it is rejected.
+     */
+    private Duration maxWait = Duration.ofSeconds(10);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public DataSize getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(DataSize maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getMaxPixels() {
+        return maxPixels;
+    }
+
+    public void setMaxPixels(long maxPixels) {
+        this.maxPixels = maxPixels;
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(Duration maxWait) {
+        this.maxWait = maxWait;
+    }
+}
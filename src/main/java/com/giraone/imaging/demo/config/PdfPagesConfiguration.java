@@ -0,0 +1,24 @@
+package com.giraone.imaging.demo.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class PdfPagesConfiguration {
+
+    /**
+     * Bounded worker pool for rendering PDF pages in parallel.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService pdfPageExecutor(PdfPagesProperties properties, MeterRegistry meterRegistry) {
+        int threads = properties.getThreads() > 0 ? properties.getThreads() : Runtime.getRuntime().availableProcessors();
+        return ExecutorServiceMetrics.monitor(meterRegistry,
+            Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("pdf-page-")), "pdf-pages");
+    }
+}
@@ -0,0 +1,35 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the rendering of PDF pages ({@code imaging.pdf-pages.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.pdf-pages")
+public class PdfPagesProperties {
+
+    /**
+     * Number of render threads shared by all requests. 0 means number of available processors.
+     */
+    private int threads = 0;
+    /**
+     * Maximum number of pages rendered for a single request.
+     */
+    private int maxPages = 100;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    public void setMaxPages(int maxPages) {
+        this.maxPages = maxPages;
+    }
+}
@@ -0,0 +1,21 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfiguration {
+
+    /**
+     * Bounded scheduler for the blocking imaging-kit calls, so that they never run on the event loop.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler imagingScheduler(ReactiveProperties properties) {
+        int threads = properties.getThreads() > 0 ? properties.getThreads() : Runtime.getRuntime().availableProcessors();
+        return Schedulers.newBoundedElastic(threads, properties.getQueuedTasks(), "imaging");
+    }
+}
@@ -0,0 +1,36 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the reactive variant of the endpoints ({@code imaging.reactive.*}), used only with
+ * {@code spring.main.web-application-type=reactive}.
+ */
+@ConfigurationProperties(prefix = "imaging.reactive")
+public class ReactiveProperties {
+
+    /**
+     * Number of threads for the blocking imaging calls. 0 means number of available processors.
+     */
+    private int threads = 0;
+    /**
+     * Maximum number of calls waiting for a thread, further requests get 503.
+     */
+    private int queuedTasks = 1000;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    public void setQueuedTasks(int queuedTasks) {
+        this.queuedTasks = queuedTasks;
+    }
+}
@@ -0,0 +1,37 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the {@code Server-Timing} response header ({@code imaging.server-timing.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.server-timing")
+public class ServerTimingProperties {
+
+    /**
+     * Request header, that switches the {@code Server-Timing} response header on in mode {@link Mode#ON_REQUEST}.
+     */
+    public static final String REQUEST_HEADER = "Server-Timing-Enabled";
+
+    public enum Mode {
+        /** Never add the header. */
+        OFF,
+        /** Add the header, when the request contains {@link #REQUEST_HEADER} with value {@code true}. */
+        ON_REQUEST,
+        /** Add the header to every response. */
+        ALWAYS
+    }
+
+    /**
+     * When to add the {@code Server-Timing} header.
+     */
+    private Mode mode = Mode.ON_REQUEST;
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+}
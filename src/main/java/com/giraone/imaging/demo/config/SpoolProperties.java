@@ -0,0 +1,64 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings for the temporary files of uploads and conversions ({@code imaging.spool.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.spool")
+public class SpoolProperties {
+
+    /**
+     * Directory for all temporary files, e.g. on tmpfs. Used by this instance only, its content is deleted at startup.
+     */
+    private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "imaging-spool");
+    /**
+     * Upper bound for the sum of all spooled bytes. New uploads wait while it is exceeded.
+     */
+    private DataSize maxSize = DataSize.ofGigabytes(2);
+    /**
+     * How long a new upload waits for the quota, before it is rejected.
+     */
+    private Duration maxWait = Duration.ofSeconds(10);
+    /**
+     * Files not released after this time are reported as leak and deleted. Must exceed the longest conversion
+     * plus the retention of job results.
+     */
+    private Duration leakAge = Duration.ofHours(1);
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public DataSize getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(DataSize maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(Duration maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public Duration getLeakAge() {
+        return leakAge;
+    }
+
+    public void setLeakAge(Duration leakAge) {
+        this.leakAge = leakAge;
+    }
+}
@@ -0,0 +1,35 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for video storyboards ({@code imaging.storyboard.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.storyboard")
+public class StoryboardProperties {
+
+    /**
+     * Number of frame extraction threads shared by all requests. 0 means number of available processors.
+     */
+    private int threads = 0;
+    /**
+     * Maximum number of frames in a single storyboard.
+     */
+    private int maxFrames = 100;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+
+    public void setMaxFrames(int maxFrames) {
+        this.maxFrames = maxFrames;
+    }
+}
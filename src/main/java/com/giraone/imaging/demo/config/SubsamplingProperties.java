@@ -0,0 +1,32 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the reduced-resolution decoding of large JPEG and PNG sources ({@code imaging.subsampling.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.subsampling")
+public class SubsamplingProperties {
+
+    private boolean enabled = true;
+    /**
+     * The subsampled image keeps at least this factor of the thumbnail size for the final high-quality resize.
+     */
+    private int oversampling = 2;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getOversampling() {
+        return oversampling;
+    }
+
+    public void setOversampling(int oversampling) {
+        this.oversampling = oversampling;
+    }
+}
@@ -0,0 +1,35 @@
+package com.giraone.imaging.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the band-wise processing of TIFF sources ({@code imaging.tiff.*}).
+ */
+@ConfigurationProperties(prefix = "imaging.tiff")
+public class TiffProperties {
+
+    /**
+     * Read TIFF sources band by band instead of decoding the full raster with the thumbnail provider.
+     */
+    private boolean tiled = true;
+    /**
+     * Minimum number of source rows decoded at once. Bands are aligned to the tiles or strips of the file.
+     */
+    private int bandRows = 512;
+
+    public boolean isTiled() {
+        return tiled;
+    }
+
+    public void setTiled(boolean tiled) {
+        this.tiled = tiled;
+    }
+
+    public int getBandRows() {
+        return bandRows;
+    }
+
+    public void setBandRows(int bandRows) {
+        this.bandRows = bandRows;
+    }
+}
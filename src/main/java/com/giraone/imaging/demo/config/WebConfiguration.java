@@ -0,0 +1,21 @@
+package com.giraone.imaging.demo.config;
+
+import com.giraone.imaging.demo.metrics.StageTimingInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer {
+
+    private final StageTimingInterceptor stageTimingInterceptor;
+
+    public WebConfiguration(StageTimingInterceptor stageTimingInterceptor) {
+        this.stageTimingInterceptor = stageTimingInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(stageTimingInterceptor);
+    }
+}
@@ -0,0 +1,192 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.FormatNotSupportedException;
+import com.giraone.imaging.demo.metrics.Stage;
+import com.giraone.imaging.demo.metrics.StageTimings;
+import com.giraone.imaging.demo.service.Asset;
+import com.giraone.imaging.demo.service.AssetStore;
+import com.giraone.imaging.demo.service.BulkheadFullException;
+import com.giraone.imaging.demo.service.ConversionBulkheads;
+import com.giraone.imaging.demo.service.ImageTooLargeException;
+import com.giraone.imaging.demo.service.PageNotFoundException;
+import com.giraone.imaging.demo.service.Spooling;
+import com.giraone.imaging.demo.service.ThumbnailService;
+import com.giraone.imaging.demo.service.ThumbnailSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Upload an original once and fetch renditions of it by id. Originals and renditions never change for an id, so
+ * responses are cacheable forever and carry an ETag.
+ */
+@SuppressWarnings("unused")
+@Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class AssetController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AssetController.class);
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
+    private final AssetStore assetStore;
+    private final ThumbnailService thumbnailService;
+    private final ConversionBulkheads conversionBulkheads;
+
+    public AssetController(AssetStore assetStore, ThumbnailService thumbnailService, ConversionBulkheads conversionBulkheads) {
+        this.assetStore = assetStore;
+        this.thumbnailService = thumbnailService;
+        this.conversionBulkheads = conversionBulkheads;
+    }
+
+    @PutMapping(value = "/assets", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<Asset> uploadAsset(InputStream in,
+                                             @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) throws IOException {
+
+        timings.skip();
+        final byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+        timings.lap(Stage.INGEST);
+        if (prefix.length == 0) {
+            LOGGER.info("/assets 0 bytes received");
+            return ResponseEntity.badRequest().build();
+        }
+        final FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(prefix);
+        timings.lap(Stage.DETECT);
+        timings.setFileType(fileType);
+        if (!thumbnailService.isSupported(fileType)) {
+            // Reject before the rest of the body is read
+            LOGGER.warn("/assets unsupported file type {}", fileType);
+            timings.setBytesIn(prefix.length);
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        }
+        final AssetStore.Stored stored = assetStore.store(prefix, in, fileType);
+        timings.lap(Stage.SPOOL);
+        timings.setBytesIn(stored.asset().size());
+        LOGGER.info("/assets {} bytes received, fileType={}, id={}, created={}",
+            stored.asset().size(), fileType, stored.asset().id(), stored.created());
+        if (!stored.created()) {
+            return ResponseEntity.ok().location(location(stored.asset())).body(stored.asset());
+        }
+        return ResponseEntity.created(location(stored.asset())).body(stored.asset());
+    }
+
+    @GetMapping("/assets/{id}")
+    public ResponseEntity<Resource> getOriginal(@PathVariable String id) throws IOException {
+
+        final Asset asset = findAsset(id);
+        if (asset == null) {
+            return ResponseEntity.notFound().build();
+        }
+        final Path original = assetStore.originalFile(asset);
+        return ResponseEntity.ok()
+            .contentType(MediaTypeFactory.getMediaType(original.getFileName().toString()).orElse(MediaType.APPLICATION_OCTET_STREAM))
+            .cacheControl(IMMUTABLE)
+            .eTag(id)
+            .body(new FileSystemResource(original));
+    }
+
+    @GetMapping("/assets/{id}/rendition")
+    public ResponseEntity<Resource> getRendition(
+        @PathVariable String id,
+        @RequestParam(value = "width", required = false, defaultValue = "200") int width,
+        @RequestParam(value = "height", required = false, defaultValue = "200") int height,
+        @RequestParam(value = "quality", required = false, defaultValue = "LOSSY_MEDIUM") String qualityStr,
+        @RequestParam(value = "page", required = false, defaultValue = "1") int page,
+        @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) throws IOException {
+
+        final ThumbnailSpec spec;
+        try {
+            spec = ThumbnailSpec.of(width, height, qualityStr).withPage(page);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("/assets/{}/rendition {}", id, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        final Asset asset = findAsset(id);
+        if (asset == null) {
+            return ResponseEntity.notFound().build();
+        }
+        timings.setFileType(asset.fileType());
+        timings.setOutputFormat(spec.outputFormat());
+        timings.setQuality(spec.quality());
+        timings.skip();
+
+        final Path rendition;
+        final FileChannel channel;
+        try {
+            rendition = assetStore.rendition(asset, spec);
+            // opened before the response is returned, so the eviction of the rendition cannot truncate it
+            channel = FileChannel.open(rendition);
+            timings.lap(Stage.CONVERT);
+        } catch (BulkheadFullException e) {
+            LOGGER.warn("/assets/{}/rendition {}", id, e.getMessage());
+            return ImageController.serviceUnavailable(conversionBulkheads.getRetryAfterSeconds());
+        } catch (ImageTooLargeException e) {
+            LOGGER.warn("/assets/{}/rendition {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (PageNotFoundException e) {
+            LOGGER.warn("/assets/{}/rendition {}", id, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (FormatNotSupportedException e) {
+            LOGGER.error("/assets/{}/rendition format not supported", id, e);
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        } catch (Exception e) {
+            LOGGER.error("/assets/{}/rendition conversion failed", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(spec.outputFormat()))
+            .cacheControl(IMMUTABLE)
+            .eTag(id + '-' + rendition.getFileName())
+            .contentLength(channel.size())
+            .body(new InputStreamResource(Channels.newInputStream(channel)));
+    }
+
+    @DeleteMapping("/assets/{id}")
+    public ResponseEntity<Void> deleteAsset(@PathVariable String id) throws IOException {
+        try {
+            return assetStore.delete(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * The asset or null, also for ids, that are no SHA-256.
+     */
+    private Asset findAsset(String id) throws IOException {
+        try {
+            return assetStore.find(id);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("/assets {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static URI location(Asset asset) {
+        return URI.create("/assets/" + asset.id());
+    }
+}
@@ -0,0 +1,152 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.demo.service.BatchThumbnailService;
+import com.giraone.imaging.demo.service.BulkheadFullException;
+import com.giraone.imaging.demo.service.ConversionBulkheads;
+import com.giraone.imaging.demo.service.ThumbnailBatch;
+import com.giraone.imaging.demo.service.ThumbnailSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Batch variant of {@code /create-thumbnail}: many inputs, one shared thumbnail spec, one ZIP as response.
+ * The ZIP contains the thumbnails in completion order and a {@value ThumbnailBatch#MANIFEST_NAME} with the
+ * outcome of each entry. Failing entries do not fail the batch.
+ */
+@SuppressWarnings("unused")
+@Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class BatchThumbnailController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchThumbnailController.class);
+
+    static final String APPLICATION_ZIP = "application/zip";
+
+    private final BatchThumbnailService batchThumbnailService;
+    private final ConversionBulkheads conversionBulkheads;
+
+    public BatchThumbnailController(BatchThumbnailService batchThumbnailService, ConversionBulkheads conversionBulkheads) {
+        this.batchThumbnailService = batchThumbnailService;
+        this.conversionBulkheads = conversionBulkheads;
+    }
+
+    @PutMapping(value = "/create-thumbnails", consumes = {APPLICATION_ZIP, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<StreamingResponseBody> createThumbnailsFromZip(
+        InputStream in,
+        @RequestHeader(value = "Thumbnail-Width", required = false, defaultValue = "200") int width,
+        @RequestHeader(value = "Thumbnail-Height", required = false, defaultValue = "200") int height,
+        @RequestHeader(value = "Thumbnail-Quality", required = false, defaultValue = "LOSSY_MEDIUM") String qualityStr) throws IOException {
+
+        final ThumbnailSpec spec;
+        try {
+            spec = ThumbnailSpec.of(width, height, qualityStr);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("/create-thumbnails {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        final ThumbnailBatch batch = batchThumbnailService.newBatch(spec);
+        try {
+            final ZipInputStream zipIn = new ZipInputStream(in);
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (batch.size() >= batchThumbnailService.getMaxEntries()) {
+                    return tooManyEntries(batch);
+                }
+                batch.add(entry.getName(), zipIn);
+            }
+        } catch (BulkheadFullException | InterruptedException e) {
+            return spoolRejected(batch, e);
+        } catch (IOException | RuntimeException e) {
+            batch.close();
+            throw e;
+        }
+        return zipResponse(batch, spec);
+    }
+
+    @PostMapping(value = "/create-thumbnails", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StreamingResponseBody> createThumbnailsFromParts(
+        MultipartHttpServletRequest request,
+        @RequestHeader(value = "Thumbnail-Width", required = false, defaultValue = "200") int width,
+        @RequestHeader(value = "Thumbnail-Height", required = false, defaultValue = "200") int height,
+        @RequestHeader(value = "Thumbnail-Quality", required = false, defaultValue = "LOSSY_MEDIUM") String qualityStr) throws IOException {
+
+        final ThumbnailSpec spec;
+        try {
+            spec = ThumbnailSpec.of(width, height, qualityStr);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("/create-thumbnails {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        final ThumbnailBatch batch = batchThumbnailService.newBatch(spec);
+        try {
+            for (List<MultipartFile> files : request.getMultiFileMap().values()) {
+                for (MultipartFile file : files) {
+                    if (batch.size() >= batchThumbnailService.getMaxEntries()) {
+                        return tooManyEntries(batch);
+                    }
+                    final String name = file.getOriginalFilename() != null ? file.getOriginalFilename() : file.getName();
+                    try (InputStream fileIn = file.getInputStream()) {
+                        batch.add(name, fileIn);
+                    }
+                }
+            }
+        } catch (BulkheadFullException | InterruptedException e) {
+            return spoolRejected(batch, e);
+        } catch (IOException | RuntimeException e) {
+            batch.close();
+            throw e;
+        }
+        return zipResponse(batch, spec);
+    }
+
+    private ResponseEntity<StreamingResponseBody> zipResponse(ThumbnailBatch batch, ThumbnailSpec spec) {
+
+        LOGGER.info("/create-thumbnails {} entries, width={}, height={}, quality={}", batch.size(), spec.width(), spec.height(), spec.quality());
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(APPLICATION_ZIP));
+        headers.setContentDisposition(ContentDisposition.attachment().filename("thumbnails.zip").build());
+        final StreamingResponseBody body = out -> {
+            try (batch) {
+                batch.writeZip(out);
+            }
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    private ResponseEntity<StreamingResponseBody> spoolRejected(ThumbnailBatch batch, Exception e) {
+        LOGGER.warn("/create-thumbnails {}", e.getMessage());
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        batch.close();
+        return ImageController.serviceUnavailable(conversionBulkheads.getRetryAfterSeconds());
+    }
+
+    private ResponseEntity<StreamingResponseBody> tooManyEntries(ThumbnailBatch batch) {
+        LOGGER.warn("/create-thumbnails more than {} entries", batchThumbnailService.getMaxEntries());
+        batch.close();
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+    }
+}
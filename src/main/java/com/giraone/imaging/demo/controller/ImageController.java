@@ -5,13 +5,36 @@ import com.giraone.imaging.FileInfo;
 import com.giraone.imaging.FileTypeDetector;
 import com.giraone.imaging.FormatNotSupportedException;
 import com.giraone.imaging.ImagingProvider;
-import com.giraone.imaging.ThumbnailProvider;
+import com.giraone.imaging.demo.metrics.ImagingMetrics;
+import com.giraone.imaging.demo.metrics.Stage;
+import com.giraone.imaging.demo.metrics.StageTimings;
+import com.giraone.imaging.demo.service.BufferPool;
+import com.giraone.imaging.demo.service.BulkheadFullException;
+import com.giraone.imaging.demo.service.ConversionBulkheads;
+import com.giraone.imaging.demo.service.CpuPool;
+import com.giraone.imaging.demo.service.DecodeMemoryBudget;
+import com.giraone.imaging.demo.service.DiskThumbnailCache;
+import com.giraone.imaging.demo.service.ImageHeaderReader;
+import com.giraone.imaging.demo.service.ImageIoSupport;
+import com.giraone.imaging.demo.service.ImageTooLargeException;
+import com.giraone.imaging.demo.service.PageNotFoundException;
+import com.giraone.imaging.demo.service.SpoolManager;
+import com.giraone.imaging.demo.service.Spooling;
+import com.giraone.imaging.demo.service.TempFileResource;
+import com.giraone.imaging.demo.service.ThumbnailCache;
+import com.giraone.imaging.demo.service.ThumbnailCoalescer;
+import com.giraone.imaging.demo.service.ThumbnailKey;
+import com.giraone.imaging.demo.service.ThumbnailService;
+import com.giraone.imaging.demo.service.ThumbnailSpec;
 import com.giraone.imaging.pdf.PdfProvider;
 import com.giraone.imaging.text.MarkdownProvider;
 import com.giraone.imaging.video.VideoProvider;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -19,32 +42,63 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestHeader;
 
-import java.awt.*;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.util.List;
 
-import static com.giraone.imaging.ConversionCommand.CompressionQuality.LOSSLESS;
-import static com.giraone.imaging.MimeTypes.*;
-
 @SuppressWarnings("unused")
 @Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ImageController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ImageController.class);
 
+    /**
+     * Request attributes of Tomcat to send a file with zero-copy transfer after the servlet returns.
+     */
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final ImagingProvider imagingProvider = ImagingProvider.getInstance();
     private final PdfProvider pdfProvider = PdfProvider.getInstance();
     private final MarkdownProvider markdownProvider = MarkdownProvider.getInstance();
     private final VideoProvider videoProvider = VideoProvider.getInstance();
 
+    private final ThumbnailService thumbnailService;
+    private final ThumbnailCache thumbnailCache;
+    private final DiskThumbnailCache diskThumbnailCache;
+    private final ThumbnailCoalescer thumbnailCoalescer;
+    private final ConversionBulkheads conversionBulkheads;
+    private final DecodeMemoryBudget decodeMemoryBudget;
+    private final ImagingMetrics imagingMetrics;
+    private final CpuPool cpuPool;
+    private final SpoolManager spoolManager;
+    private final BufferPool bufferPool;
+
+    public ImageController(ThumbnailService thumbnailService, ThumbnailCache thumbnailCache, DiskThumbnailCache diskThumbnailCache,
+                           ThumbnailCoalescer thumbnailCoalescer, ConversionBulkheads conversionBulkheads,
+                           DecodeMemoryBudget decodeMemoryBudget, ImagingMetrics imagingMetrics, CpuPool cpuPool,
+                           SpoolManager spoolManager, BufferPool bufferPool) {
+        this.thumbnailService = thumbnailService;
+        this.thumbnailCache = thumbnailCache;
+        this.diskThumbnailCache = diskThumbnailCache;
+        this.thumbnailCoalescer = thumbnailCoalescer;
+        this.conversionBulkheads = conversionBulkheads;
+        this.decodeMemoryBudget = decodeMemoryBudget;
+        this.imagingMetrics = imagingMetrics;
+        this.cpuPool = cpuPool;
+        this.spoolManager = spoolManager;
+        this.bufferPool = bufferPool;
+    }
+
     @GetMapping("/list-types")
     public ResponseEntity<List<String>> listImageTypes() {
 
@@ -53,66 +107,115 @@ public class ImageController {
     }
 
     @PutMapping(value = "/detect-size", consumes = MediaType.ALL_VALUE)
-    public ResponseEntity<Long> detectSize(HttpServletRequest request) throws IOException {
+    public ResponseEntity<Long> detectSize(HttpServletRequest request,
+                                           @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) throws IOException {
 
         InputStream in = request.getInputStream();
-        byte[] buffer = new byte[4096];
         long total = 0L;
-        int r;
-        while ((r = in.read(buffer)) >= 0) {
-            total += r;
+        try (BufferPool.Buffer buffer = bufferPool.lease()) {
+            int r;
+            while ((r = in.read(buffer.array())) >= 0) {
+                total += r;
+            }
         }
+        timings.lap(Stage.INGEST);
+        timings.setBytesIn(total);
         LOGGER.info("/detect-size {} Bytes", total);
         return ResponseEntity.ok(total);
     }
 
     @PutMapping(value = "/detect-type", consumes = MediaType.ALL_VALUE)
-    public ResponseEntity<String> detectImageType(InputStream in) {
+    public ResponseEntity<String> detectImageType(InputStream in,
+                                                  @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) throws IOException {
 
-        FileTypeDetector.FileType detectedFileType = FileTypeDetector.getInstance().getFileType(in);
+        // Detection needs only the magic bytes, the rest of the body is not read
+        final byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+        timings.lap(Stage.INGEST);
+        timings.setBytesIn(prefix.length);
+        FileTypeDetector.FileType detectedFileType = FileTypeDetector.getInstance().getFileType(prefix);
+        timings.lap(Stage.DETECT);
+        timings.setFileType(detectedFileType);
         LOGGER.info("/detect-type {}", detectedFileType);
         return ResponseEntity.ok(detectedFileType.name());
     }
 
     @PutMapping(value = "/fetch-file-info", consumes = MediaType.ALL_VALUE)
-    public ResponseEntity<FileInfo> fetchFileInfo(InputStream in) throws IOException {
+    public ResponseEntity<FileInfo> fetchFileInfo(InputStream in,
+                                                  HttpServletRequest request,
+                                                  @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) throws IOException {
 
-        byte[] buffer = new byte[4096];
-        long total = 0L;
-        int r;
-        File file = File.createTempFile("img", "");
-        try (FileOutputStream out = new FileOutputStream(file)) {
-            while ((r = in.read(buffer)) >= 0) {
-                out.write(buffer, 0, r);
-                total += r;
+        byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+        timings.lap(Stage.INGEST);
+        final FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(prefix);
+        timings.lap(Stage.DETECT);
+        timings.setFileType(fileType);
+
+        // Fast path: take the metadata from the header without reading the rest of the body
+        if (ImageHeaderReader.supports(fileType)) {
+            try (BufferPool.Buffer buffer = bufferPool.lease()) {
+                final ImageHeaderReader headerReader = new ImageHeaderReader(prefix, in, buffer.array());
+                final FileInfo fileInfo = headerReader.read(fileType);
+                timings.lap(Stage.CONVERT);
+                if (fileInfo != null) {
+                    timings.setBytesIn(headerReader.getBytesReadCount());
+                    timings.setInputPixels((long) fileInfo.getWidth() * fileInfo.getHeight());
+                    LOGGER.info("/fetch-file-info from {} header bytes {}", headerReader.getBytesReadCount(), fileInfo.dumpInfo());
+                    return ResponseEntity.ok(fileInfo);
+                }
+                // header not found, continue with a copy of the bytes read so far
+                prefix = headerReader.getBytesRead();
             }
         }
-        LOGGER.info("/fetch-file-info {} bytes received", total);
-        try {
-            final FileInfo fileInfo = imagingProvider.fetchFileInfo(file);
-            LOGGER.info("/fetch-file-info {}", fileInfo.dumpInfo());
-            return ResponseEntity.ok(fileInfo);
-        } catch (FormatNotSupportedException e) {
-            return ResponseEntity.badRequest().build();
-        } finally {
-            file.delete();
+
+        try (SpoolManager.SpoolFile spoolFile = spoolManager.spoolFile("file-in-", "", request.getContentLengthLong())) {
+            final Path file = spoolFile.path();
+            final long total = spoolManager.spool(prefix, in, file, null);
+            timings.lap(Stage.SPOOL);
+            timings.setBytesIn(total);
+            LOGGER.info("/fetch-file-info {} bytes received", total);
+            try (ImagingMetrics.ActiveConversion conversion = imagingMetrics.startConversion()) {
+                // null for unsupported formats, so that only I/O errors are left to the pool
+                final FileInfo fileInfo = cpuPool.call(() -> {
+                    try {
+                        return imagingProvider.fetchFileInfo(file.toFile());
+                    } catch (FormatNotSupportedException e) {
+                        return null;
+                    }
+                });
+                if (fileInfo == null) {
+                    return ResponseEntity.badRequest().build();
+                }
+                timings.lap(Stage.CONVERT);
+                timings.setInputPixels((long) fileInfo.getWidth() * fileInfo.getHeight());
+                LOGGER.info("/fetch-file-info {}", fileInfo.dumpInfo());
+                return ResponseEntity.ok(fileInfo);
+            }
+        } catch (BulkheadFullException e) {
+            LOGGER.warn("/fetch-file-info {}", e.getMessage());
+            return serviceUnavailable(conversionBulkheads.getRetryAfterSeconds());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         }
     }
 
     @PutMapping(value = "/create-thumbnail", consumes = MediaType.ALL_VALUE)
-    public ResponseEntity<byte[]> createThumbnail(
+    public ResponseEntity<Resource> createThumbnail(
         InputStream in,
+        HttpServletRequest request,
         @RequestHeader(value = "Thumbnail-Width", required = false, defaultValue = "200") int width,
         @RequestHeader(value = "Thumbnail-Height", required = false, defaultValue = "200") int height,
-        @RequestHeader(value = "Thumbnail-Quality", required = false, defaultValue = "LOSSY_MEDIUM") String qualityStr) throws IOException {
+        @RequestHeader(value = "Thumbnail-Quality", required = false, defaultValue = "LOSSY_MEDIUM") String qualityStr,
+        @RequestHeader(value = "Thumbnail-Page", required = false, defaultValue = "1") int page,
+        @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) throws IOException {
 
         // Validate width
-        if (width <= 0 || width > 10000) {
+        if (!ThumbnailSpec.isValidDimension(width)) {
             LOGGER.warn("/create-thumbnail invalid width: {}", width);
             return ResponseEntity.badRequest().build();
         }
         // Validate height
-        if (height <= 0 || height > 10000) {
+        if (!ThumbnailSpec.isValidDimension(height)) {
             LOGGER.warn("/create-thumbnail invalid height: {}", height);
             return ResponseEntity.badRequest().build();
         }
@@ -120,60 +223,118 @@ public class ImageController {
         // Parse and validate quality
         ConversionCommand.CompressionQuality quality;
         try {
-            quality = parseQuality(qualityStr);
+            quality = ThumbnailSpec.parseQuality(qualityStr);
         } catch (IllegalArgumentException e) {
             LOGGER.warn("/create-thumbnail invalid quality: {}", qualityStr);
             return ResponseEntity.badRequest().build();
         }
-
-        // Read all input into byte array
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
-        final byte[] buffer = new byte[4096];
-        int r;
-        while ((r = in.read(buffer)) >= 0) {
-            out.write(buffer, 0, r);
+        // Validate page
+        if (page < 1) {
+            LOGGER.warn("/create-thumbnail invalid page: {}", page);
+            return ResponseEntity.badRequest().build();
         }
-        final byte[] inputFileData = out.toByteArray();
 
-        LOGGER.info("/create-thumbnail {} bytes received, width={}, height={}, quality={}", inputFileData.length, width, height, quality);
-
-        if (inputFileData.length == 0) {
+        // Detect file type from a small prefix to determine output format and proper file extension
+        timings.skip();
+        final byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+        timings.lap(Stage.INGEST);
+        if (prefix.length == 0) {
+            LOGGER.info("/create-thumbnail 0 bytes received");
             return ResponseEntity.badRequest().build();
         }
-
-        File inputFile = null;
+        final FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(prefix);
+        timings.lap(Stage.DETECT);
+        timings.setFileType(fileType);
+        if (!thumbnailService.isSupported(fileType)) {
+            // Reject before the rest of the body is read
+            LOGGER.warn("/create-thumbnail unsupported file type {}", fileType);
+            timings.setBytesIn(prefix.length);
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        }
+        // Reject decompression bombs, when the dimensions are already in the prefix
+        timings.setInputPixels(readPixelCount(prefix, fileType));
         try {
-            // Detect file type from byte array to determine output format and proper file extension
-            FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(inputFileData);
-            String inputFormat = determineOutputFormat(fileType);
-            String extension = getFileExtension(fileType);
-            ThumbnailProvider thumbnailProvider = ThumbnailProvider.getThumbnailProvider(inputFormat);
-
-            // Create temp file with proper extension so ImageOpener can read it
-            inputFile = File.createTempFile("file-in-", extension);
-            Files.write(inputFile.toPath(), inputFileData, StandardOpenOption.TRUNCATE_EXISTING);
-            File outputFile = File.createTempFile("thumb-out-", extension);
-            String outputFormat = quality == LOSSLESS ? IMAGE_PNG : IMAGE_JPEG;
-
-            // Create thumbnail using createThumbnail with ConversionCommand
-            ConversionCommand command = new ConversionCommand();
-            command.setOutputFile(outputFile);
-            command.setOutputFormat(outputFormat);
-            command.setDimension(new Dimension(width, height));
-            command.setQuality(quality);
-            thumbnailProvider.createThumbnail(inputFile, command);
-
-            long outputByteSize = outputFile.length();
-            LOGGER.info("/create-thumbnail inputFormat={} outputFormat={} outputByteSize={}", inputFormat, outputFormat, outputByteSize);
-
-            // Set appropriate content type
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(outputFormat));
-            headers.setContentLength(outputByteSize);
-
-            // return the complete file
-            return new ResponseEntity<>(Files.readAllBytes(outputFile.toPath()), headers, HttpStatus.OK);
+            decodeMemoryBudget.checkPixels(timings.getInputPixels());
+        } catch (ImageTooLargeException e) {
+            LOGGER.warn("/create-thumbnail {}", e.getMessage());
+            timings.setBytesIn(prefix.length);
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+        final String extension = ThumbnailService.getFileExtension(fileType);
+        final ThumbnailSpec spec = new ThumbnailSpec(width, height, quality).withPage(page);
+        final String outputFormat = spec.outputFormat();
+        timings.setOutputFormat(outputFormat);
+        timings.setQuality(quality);
+
+        Path outputFile = null;
+        // Spool the body to a temp file with proper extension so ImageOpener can read it
+        try (SpoolManager.SpoolFile spoolFile = spoolManager.spoolFile("file-in-", extension, request.getContentLengthLong())) {
+            final Path inputFile = spoolFile.path();
+            final MessageDigest contentDigest = thumbnailCache.isEnabled() || diskThumbnailCache.isEnabled() || thumbnailCoalescer.isEnabled()
+                ? ThumbnailKey.newDigest() : null;
+            final long inputByteSize = spoolManager.spool(prefix, in, inputFile, contentDigest);
+            timings.lap(Stage.SPOOL);
+            timings.setBytesIn(inputByteSize);
+            LOGGER.info("/create-thumbnail {} bytes received, width={}, height={}, quality={}", inputByteSize, width, height, quality);
+            if (timings.isServerTimingEnabled() && timings.getInputPixels() < 0L) {
+                // only needed for the Server-Timing header
+                timings.setInputPixels(ImageIoSupport.readPixelCount(inputFile));
+                timings.lap(Stage.DETECT);
+            }
+
+            // Serve identical requests (same content, same parameters) from the cache
+            final ThumbnailKey thumbnailKey = contentDigest != null
+                ? ThumbnailKey.of(contentDigest, spec) : null;
+            if (thumbnailKey != null) {
+                final ThumbnailCache.CachedThumbnail cached = thumbnailCache.get(thumbnailKey);
+                if (cached != null) {
+                    LOGGER.info("/create-thumbnail cache hit outputFormat={} outputByteSize={}", cached.contentType(), cached.data().length);
+                    return thumbnailResponse(cached.contentType(), new ByteArrayResource(cached.data()));
+                }
+                final DiskThumbnailCache.Entry stored = diskThumbnailCache.get(thumbnailKey);
+                final ResponseEntity<Resource> storedResponse = stored != null ? storedThumbnailResponse(stored, request) : null;
+                if (storedResponse != null) {
+                    LOGGER.info("/create-thumbnail disk cache hit outputFormat={} outputByteSize={}", stored.contentType(), stored.size());
+                    return storedResponse;
+                }
+            }
+
+            // Identical requests running at the same time share one conversion
+            outputFile = thumbnailCoalescer.convert(thumbnailKey, () -> {
+                try (ConversionBulkheads.Permit permit = conversionBulkheads.acquire(fileType)) {
+                    // time waiting for the bulkhead is part of the conversion
+                    return cpuPool.call(() -> thumbnailService.createThumbnail(inputFile, fileType, spec));
+                }
+            });
+            timings.lap(Stage.CONVERT);
+
+            final long outputByteSize = Files.size(outputFile);
+            LOGGER.info("/create-thumbnail fileType={} outputFormat={} outputByteSize={}", fileType, outputFormat, outputByteSize);
+            final DiskThumbnailCache.Entry stored = diskThumbnailCache.put(thumbnailKey, outputFormat, outputFile);
+            if (thumbnailKey != null && thumbnailCache.accepts(outputByteSize)) {
+                final byte[] outputFileData = Files.readAllBytes(outputFile);
+                thumbnailCache.put(thumbnailKey, new ThumbnailCache.CachedThumbnail(outputFormat, outputFileData));
+                return thumbnailResponse(outputFormat, new ByteArrayResource(outputFileData));
+            }
+            final ResponseEntity<Resource> storedResponse = stored != null ? storedThumbnailResponse(stored, request) : null;
+            if (storedResponse != null) {
+                return storedResponse;
+            }
 
+            // return the complete file, streamed from disk and deleted afterward
+            final ResponseEntity<Resource> response = thumbnailResponse(outputFormat, new TempFileResource(outputFile, spoolManager));
+            outputFile = null;
+            return response;
+
+        } catch (BulkheadFullException e) {
+            LOGGER.warn("/create-thumbnail {}", e.getMessage());
+            return serviceUnavailable(conversionBulkheads.getRetryAfterSeconds());
+        } catch (ImageTooLargeException e) {
+            LOGGER.warn("/create-thumbnail {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (PageNotFoundException e) {
+            LOGGER.warn("/create-thumbnail {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (FormatNotSupportedException e) {
             LOGGER.error("/create-thumbnail format not supported", e);
             return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
@@ -181,55 +342,57 @@ public class ImageController {
             LOGGER.error("/create-thumbnail conversion failed", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         } finally {
-            if (inputFile != null && inputFile.exists()) {
-                inputFile.delete();
-            }
+            spoolManager.delete(outputFile);
         }
     }
 
     /**
-     * Parse quality string from header to CompressionQuality enum.
-     * Maps user-friendly names to internal enum values.
+     * Pixel count from the image header within the prefix, -1 if the format is not supported or the header is not in the prefix.
      */
-    private ConversionCommand.CompressionQuality parseQuality(String qualityStr) {
-        return switch (qualityStr.toUpperCase()) {
-            case "LOSSY_LOW", "LOSSY_SPEED" -> ConversionCommand.CompressionQuality.LOSSY_SPEED;
-            case "LOSSY_MEDIUM" -> ConversionCommand.CompressionQuality.LOSSY_MEDIUM;
-            case "LOSSY_HIGH", "LOSSY_BEST" -> ConversionCommand.CompressionQuality.LOSSY_BEST;
-            case "LOSSLESS" -> LOSSLESS;
-            default -> throw new IllegalArgumentException("Invalid quality: " + qualityStr);
-        };
+    static long readPixelCount(byte[] prefix, FileTypeDetector.FileType fileType) throws IOException {
+        if (!ImageHeaderReader.supports(fileType)) {
+            return -1L;
+        }
+        final FileInfo header = new ImageHeaderReader(prefix, InputStream.nullInputStream()).read(fileType);
+        return header != null ? (long) header.getWidth() * header.getHeight() : -1L;
     }
 
-    /**
-     * Determine output format (MIME type) based on input file type.
-     * Defaults to JPEG for most image formats, keeps PNG for PNG input.
-     */
-    private String determineOutputFormat(FileTypeDetector.FileType fileType) {
-        return switch (fileType) {
-            case JPEG -> IMAGE_JPEG;
-            case PNG -> IMAGE_PNG;
-            case GIF -> IMAGE_GIF;
-            case PDF -> APPLICATION_PDF;
-            case MARKDOWN -> TEXT_MARKDOWN;
-            case MP4 -> VIDEO_MP4;
-            default -> DEFAULT;
-        };
+    static <T> ResponseEntity<T> serviceUnavailable(long retryAfterSeconds) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+            .build();
     }
 
     /**
-     * Get file extension (with dot) based on file type.
+     * Send a file of the disk cache from a {@link DiskThumbnailCache#link link}, which a concurrent eviction or
+     * replacement of the entry cannot delete. On Tomcat the link is sent by the connector with zero-copy transfer
+     * ({@code FileChannel.transferTo}) after the controller returned, otherwise it is streamed and deleted afterward.
+     * @return null, when the entry was evicted in the meantime
      */
-    private String getFileExtension(FileTypeDetector.FileType fileType) {
-        return switch (fileType) {
-            case JPEG -> ".jpg";
-            case PNG -> ".png";
-            case GIF -> ".gif";
-            case BMP -> ".bmp";
-            case TIFF -> ".tif";
-            case PGM -> ".pgm";
-            case PDF -> ".pdf";
-            default -> ".img";
-        };
+    private ResponseEntity<Resource> storedThumbnailResponse(DiskThumbnailCache.Entry stored, HttpServletRequest request) throws IOException {
+        final Path link = diskThumbnailCache.link(stored);
+        if (link == null) {
+            return null;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // the size of the linked file, the entry may have been replaced since
+            final long size = Files.size(link);
+            request.setAttribute(SENDFILE_FILENAME, link.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            final HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType(stored.contentType()));
+            headers.setContentLength(size);
+            return new ResponseEntity<>(headers, HttpStatus.OK);
+        }
+        return thumbnailResponse(stored.contentType(), new TempFileResource(link));
+    }
+
+    private ResponseEntity<Resource> thumbnailResponse(String outputFormat, Resource body) throws IOException {
+        // Set appropriate content type
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(outputFormat));
+        headers.setContentLength(body.contentLength());
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 }
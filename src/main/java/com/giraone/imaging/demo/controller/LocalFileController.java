@@ -0,0 +1,237 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.FileInfo;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.FormatNotSupportedException;
+import com.giraone.imaging.ImagingProvider;
+import com.giraone.imaging.demo.metrics.ImagingMetrics;
+import com.giraone.imaging.demo.metrics.Stage;
+import com.giraone.imaging.demo.metrics.StageTimings;
+import com.giraone.imaging.demo.service.BulkheadFullException;
+import com.giraone.imaging.demo.service.ConversionBulkheads;
+import com.giraone.imaging.demo.service.CpuPool;
+import com.giraone.imaging.demo.service.DecodeMemoryBudget;
+import com.giraone.imaging.demo.service.ImageHeaderReader;
+import com.giraone.imaging.demo.service.ImageTooLargeException;
+import com.giraone.imaging.demo.service.LocalFiles;
+import com.giraone.imaging.demo.service.PageNotFoundException;
+import com.giraone.imaging.demo.service.SpoolManager;
+import com.giraone.imaging.demo.service.Spooling;
+import com.giraone.imaging.demo.service.TempFileResource;
+import com.giraone.imaging.demo.service.ThumbnailService;
+import com.giraone.imaging.demo.service.ThumbnailSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * {@code /fetch-file-info} and {@code /create-thumbnail} for files on the server's file system, named by path instead
+ * of being uploaded. The file is read in place: there is no request body and no temp spool. The thumbnail is either
+ * returned or written to a target path. Only files below {@code imaging.local-files.roots} are accessible.
+ * <p>
+ * The thumbnail caches are not used, because the content hash would need a full read of the file.
+ */
+@SuppressWarnings("unused")
+@Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class LocalFileController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalFileController.class);
+
+    private final ImagingProvider imagingProvider = ImagingProvider.getInstance();
+
+    private final LocalFiles localFiles;
+    private final ThumbnailService thumbnailService;
+    private final ConversionBulkheads conversionBulkheads;
+    private final DecodeMemoryBudget decodeMemoryBudget;
+    private final ImagingMetrics imagingMetrics;
+    private final CpuPool cpuPool;
+    private final SpoolManager spoolManager;
+
+    public LocalFileController(LocalFiles localFiles, ThumbnailService thumbnailService, ConversionBulkheads conversionBulkheads,
+                               DecodeMemoryBudget decodeMemoryBudget, ImagingMetrics imagingMetrics, CpuPool cpuPool,
+                               SpoolManager spoolManager) {
+        this.localFiles = localFiles;
+        this.thumbnailService = thumbnailService;
+        this.conversionBulkheads = conversionBulkheads;
+        this.decodeMemoryBudget = decodeMemoryBudget;
+        this.imagingMetrics = imagingMetrics;
+        this.cpuPool = cpuPool;
+        this.spoolManager = spoolManager;
+    }
+
+    @GetMapping("/local/fetch-file-info")
+    public ResponseEntity<FileInfo> fetchFileInfo(@RequestParam("path") String path,
+                                                  @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) {
+
+        if (!localFiles.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            final Path file = localFiles.resolveInput(path);
+            final FileTypeDetector.FileType fileType;
+            FileInfo fileInfo = null;
+            try (InputStream in = Files.newInputStream(file)) {
+                final byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+                fileType = FileTypeDetector.getInstance().getFileType(prefix);
+                timings.lap(Stage.DETECT);
+                timings.setFileType(fileType);
+                // Fast path: only the header is read
+                if (ImageHeaderReader.supports(fileType)) {
+                    fileInfo = new ImageHeaderReader(prefix, in).read(fileType);
+                }
+            }
+            if (fileInfo == null) {
+                try (ImagingMetrics.ActiveConversion conversion = imagingMetrics.startConversion()) {
+                    // null for unsupported formats, so that only I/O errors are left to the pool
+                    fileInfo = cpuPool.call(() -> {
+                        try {
+                            return imagingProvider.fetchFileInfo(file.toFile());
+                        } catch (FormatNotSupportedException e) {
+                            return null;
+                        }
+                    });
+                }
+                if (fileInfo == null) {
+                    LOGGER.warn("/local/fetch-file-info unsupported file type {}", fileType);
+                    return ResponseEntity.badRequest().build();
+                }
+            }
+            timings.lap(Stage.CONVERT);
+            timings.setInputPixels((long) fileInfo.getWidth() * fileInfo.getHeight());
+            LOGGER.info("/local/fetch-file-info {} {}", file, fileInfo.dumpInfo());
+            return ResponseEntity.ok(fileInfo);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (Exception e) {
+            return errorResponse("/local/fetch-file-info", path, e);
+        }
+    }
+
+    @PostMapping("/local/create-thumbnail")
+    public ResponseEntity<?> createThumbnail(
+        @RequestParam("path") String path,
+        @RequestParam(value = "target", required = false) String targetPath,
+        @RequestHeader(value = "Thumbnail-Width", required = false, defaultValue = "200") int width,
+        @RequestHeader(value = "Thumbnail-Height", required = false, defaultValue = "200") int height,
+        @RequestHeader(value = "Thumbnail-Quality", required = false, defaultValue = "LOSSY_MEDIUM") String qualityStr,
+        @RequestHeader(value = "Thumbnail-Page", required = false, defaultValue = "1") int page,
+        @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) {
+
+        if (!localFiles.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        final ThumbnailSpec spec;
+        try {
+            spec = ThumbnailSpec.of(width, height, qualityStr).withPage(page);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("/local/create-thumbnail {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        Path outputFile = null;
+        try {
+            final Path file = localFiles.resolveInput(path);
+            final Path target = targetPath != null ? localFiles.resolveOutput(targetPath) : null;
+            final byte[] prefix;
+            try (InputStream in = Files.newInputStream(file)) {
+                prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+            }
+            final FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(prefix);
+            timings.lap(Stage.DETECT);
+            timings.setFileType(fileType);
+            if (!thumbnailService.isSupported(fileType)) {
+                LOGGER.warn("/local/create-thumbnail unsupported file type {}", fileType);
+                return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+            }
+            // Reject decompression bombs, when the dimensions are in the prefix
+            timings.setInputPixels(ImageController.readPixelCount(prefix, fileType));
+            decodeMemoryBudget.checkPixels(timings.getInputPixels());
+            timings.setOutputFormat(spec.outputFormat());
+            timings.setQuality(spec.quality());
+
+            try (LocalFiles.Input input = localFiles.withExtension(file, fileType);
+                 ConversionBulkheads.Permit permit = conversionBulkheads.acquire(fileType)) {
+                outputFile = cpuPool.call(() -> thumbnailService.createThumbnail(input.file(), fileType, spec));
+            }
+            timings.lap(Stage.CONVERT);
+            final long outputByteSize = Files.size(outputFile);
+            LOGGER.info("/local/create-thumbnail {} fileType={} outputFormat={} outputByteSize={}", file, fileType, spec.outputFormat(), outputByteSize);
+
+            if (target != null) {
+                // the moved file is released to the spool manager in finally
+                LocalFiles.moveTo(outputFile, target);
+                return ResponseEntity.ok(new WrittenThumbnail(target.toString(), spec.outputFormat(), outputByteSize));
+            }
+            final HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType(spec.outputFormat()));
+            headers.setContentLength(outputByteSize);
+            // streamed from disk and deleted afterward
+            final ResponseEntity<Resource> response = new ResponseEntity<>(new TempFileResource(outputFile, spoolManager), headers, HttpStatus.OK);
+            outputFile = null;
+            return response;
+        } catch (BulkheadFullException e) {
+            LOGGER.warn("/local/create-thumbnail {}", e.getMessage());
+            return ImageController.serviceUnavailable(conversionBulkheads.getRetryAfterSeconds());
+        } catch (ImageTooLargeException e) {
+            LOGGER.warn("/local/create-thumbnail {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (FormatNotSupportedException e) {
+            LOGGER.error("/local/create-thumbnail format not supported", e);
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (Exception e) {
+            return errorResponse("/local/create-thumbnail", path, e);
+        } finally {
+            spoolManager.delete(outputFile);
+        }
+    }
+
+    /**
+     * 404 for missing input files and input files outside the roots, 403 for targets outside the output roots, 400 for
+     * invalid paths or pages and 500 otherwise.
+     */
+    private static <T> ResponseEntity<T> errorResponse(String endpoint, String path, Exception e) {
+        if (e instanceof NoSuchFileException) {
+            LOGGER.warn("{} file not found: {}", endpoint, path);
+            return ResponseEntity.notFound().build();
+        }
+        if (e instanceof AccessDeniedException) {
+            LOGGER.warn("{} access denied: {} {}", endpoint, path, e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (e instanceof IllegalArgumentException || e instanceof PageNotFoundException) {
+            LOGGER.warn("{} {}", endpoint, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        LOGGER.error("{} failed for {}", endpoint, path, e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    }
+
+    /**
+     * Response, when the thumbnail was written to a target path.
+     */
+    public record WrittenThumbnail(String target, String contentType, long size) {
+    }
+}
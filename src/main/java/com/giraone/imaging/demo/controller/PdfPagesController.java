@@ -0,0 +1,150 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.ConversionCommand;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.metrics.Stage;
+import com.giraone.imaging.demo.metrics.StageTimings;
+import com.giraone.imaging.demo.service.BulkheadFullException;
+import com.giraone.imaging.demo.service.ConversionBulkheads;
+import com.giraone.imaging.demo.service.ImageIoSupport;
+import com.giraone.imaging.demo.service.ImageTooLargeException;
+import com.giraone.imaging.demo.service.PageNotFoundException;
+import com.giraone.imaging.demo.service.PdfPageService;
+import com.giraone.imaging.demo.service.SpoolManager;
+import com.giraone.imaging.demo.service.Spooling;
+import com.giraone.imaging.demo.service.ThumbnailService;
+import com.giraone.imaging.demo.service.ThumbnailSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Thumbnails of several or all pages of a PDF, either as ZIP with one image per page or as a single contact sheet.
+ */
+@SuppressWarnings("unused")
+@Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class PdfPagesController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PdfPagesController.class);
+
+    private final PdfPageService pdfPageService;
+    private final ConversionBulkheads conversionBulkheads;
+    private final SpoolManager spoolManager;
+
+    public PdfPagesController(PdfPageService pdfPageService, ConversionBulkheads conversionBulkheads, SpoolManager spoolManager) {
+        this.spoolManager = spoolManager;
+        this.pdfPageService = pdfPageService;
+        this.conversionBulkheads = conversionBulkheads;
+    }
+
+    @PutMapping(value = "/render-pages", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<StreamingResponseBody> renderPages(
+        InputStream in,
+        @RequestHeader(value = "Pages", required = false, defaultValue = "all") String pagesStr,
+        @RequestHeader(value = "Thumbnail-Width", required = false, defaultValue = "200") int width,
+        @RequestHeader(value = "Thumbnail-Height", required = false, defaultValue = "200") int height,
+        @RequestHeader(value = "Thumbnail-Quality", required = false, defaultValue = "LOSSY_MEDIUM") String qualityStr,
+        @RequestHeader(value = "Contact-Sheet", required = false, defaultValue = "false") boolean contactSheet,
+        @RequestHeader(value = "Contact-Sheet-Columns", required = false, defaultValue = "0") int columns,
+        @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) throws IOException {
+
+        final ThumbnailSpec spec;
+        try {
+            spec = ThumbnailSpec.of(width, height, qualityStr);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("/render-pages {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        if (columns < 0) {
+            LOGGER.warn("/render-pages invalid columns: {}", columns);
+            return ResponseEntity.badRequest().build();
+        }
+
+        timings.skip();
+        final byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+        timings.lap(Stage.INGEST);
+        if (prefix.length == 0) {
+            LOGGER.info("/render-pages 0 bytes received");
+            return ResponseEntity.badRequest().build();
+        }
+        final FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(prefix);
+        timings.lap(Stage.DETECT);
+        timings.setFileType(fileType);
+        if (fileType != FileTypeDetector.FileType.PDF) {
+            LOGGER.warn("/render-pages unsupported file type {}", fileType);
+            timings.setBytesIn(prefix.length);
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        }
+        timings.setOutputFormat(contactSheet ? spec.outputFormat() : BatchThumbnailController.APPLICATION_ZIP);
+        timings.setQuality(spec.quality());
+
+        final List<Integer> pages;
+        final PdfPageService.RenderedPages rendered;
+        try (SpoolManager.SpoolFile inputFile = spoolManager.spoolFile("file-in-", ThumbnailService.getFileExtension(fileType))) {
+            final long inputByteSize = spoolManager.spool(prefix, in, inputFile.path(), null);
+            timings.lap(Stage.SPOOL);
+            timings.setBytesIn(inputByteSize);
+            // one permit per document, the parallelism is bounded by the page executor
+            try (ConversionBulkheads.Permit permit = conversionBulkheads.acquire(fileType)) {
+                try {
+                    pages = pdfPageService.parsePages(pagesStr, pdfPageService.countPages(inputFile.path()));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.warn("/render-pages {}", e.getMessage());
+                    return ResponseEntity.badRequest().build();
+                }
+                LOGGER.info("/render-pages {} bytes received, pages={}, contactSheet={}", inputByteSize, pages.size(), contactSheet);
+                final long sheetPixels = contactSheet ? PdfPageService.contactSheetPixels(pages.size(), columns, spec.dimension()) : 0L;
+                rendered = pdfPageService.renderPages(inputFile.path(), pages, spec.dimension(), sheetPixels);
+            }
+            timings.lap(Stage.CONVERT);
+        } catch (PageNotFoundException e) {
+            LOGGER.warn("/render-pages {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (BulkheadFullException e) {
+            LOGGER.warn("/render-pages {}", e.getMessage());
+            return ImageController.serviceUnavailable(conversionBulkheads.getRetryAfterSeconds());
+        } catch (ImageTooLargeException e) {
+            LOGGER.warn("/render-pages {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (Exception e) {
+            LOGGER.error("/render-pages rendering failed", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+
+        // the pages and the contact sheet stay in the memory budget until the body is written
+        final HttpHeaders headers = new HttpHeaders();
+        final StreamingResponseBody body;
+        if (contactSheet) {
+            headers.setContentType(MediaType.parseMediaType(spec.outputFormat()));
+            body = out -> {
+                try (rendered) {
+                    ImageIoSupport.write(PdfPageService.contactSheet(rendered.images(), columns), spec.quality(), out);
+                }
+            };
+        } else {
+            headers.setContentType(MediaType.parseMediaType(BatchThumbnailController.APPLICATION_ZIP));
+            headers.setContentDisposition(ContentDisposition.attachment().filename("pages.zip").build());
+            body = out -> {
+                try (rendered) {
+                    PdfPageService.writePages(pages, rendered.images(), spec, out);
+                }
+            };
+        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+}
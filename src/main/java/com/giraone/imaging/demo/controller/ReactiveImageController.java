@@ -0,0 +1,368 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.FileInfo;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.FormatNotSupportedException;
+import com.giraone.imaging.ImagingProvider;
+import com.giraone.imaging.demo.metrics.ImagingMetrics;
+import com.giraone.imaging.demo.metrics.Stage;
+import com.giraone.imaging.demo.metrics.StageTimings;
+import com.giraone.imaging.demo.service.BulkheadFullException;
+import com.giraone.imaging.demo.service.ConversionBulkheads;
+import com.giraone.imaging.demo.service.DecodeMemoryBudget;
+import com.giraone.imaging.demo.service.DiskThumbnailCache;
+import com.giraone.imaging.demo.service.ImageHeaderReader;
+import com.giraone.imaging.demo.service.ImageTooLargeException;
+import com.giraone.imaging.demo.service.PageNotFoundException;
+import com.giraone.imaging.demo.service.ReactiveSpooling;
+import com.giraone.imaging.demo.service.SpoolManager;
+import com.giraone.imaging.demo.service.ThumbnailCache;
+import com.giraone.imaging.demo.service.ThumbnailCoalescer;
+import com.giraone.imaging.demo.service.ThumbnailKey;
+import com.giraone.imaging.demo.service.ThumbnailService;
+import com.giraone.imaging.demo.service.ThumbnailSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reactive variant of {@code /detect-type}, {@code /fetch-file-info} and {@code /create-thumbnail}, active only with
+ * {@code spring.main.web-application-type=reactive}. The body is consumed as {@code Flux<DataBuffer>} and written with
+ * asynchronous file channels, the blocking imaging-kit calls run on the bounded {@code imagingScheduler} and the result
+ * file is streamed back in chunks, each read only on demand of the client. Stage timings are recorded like for the
+ * servlet controllers, so both stacks can be compared under the same load.
+ */
+@SuppressWarnings("unused")
+@Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveImageController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveImageController.class);
+
+    private static final int RESPONSE_BUFFER_SIZE = 8192;
+
+    private final ImagingProvider imagingProvider = ImagingProvider.getInstance();
+
+    private final ThumbnailService thumbnailService;
+    private final ThumbnailCache thumbnailCache;
+    private final DiskThumbnailCache diskThumbnailCache;
+    private final ThumbnailCoalescer thumbnailCoalescer;
+    private final ConversionBulkheads conversionBulkheads;
+    private final DecodeMemoryBudget decodeMemoryBudget;
+    private final ImagingMetrics imagingMetrics;
+    private final SpoolManager spoolManager;
+    private final Scheduler imagingScheduler;
+
+    public ReactiveImageController(ThumbnailService thumbnailService, ThumbnailCache thumbnailCache, DiskThumbnailCache diskThumbnailCache,
+                                   ThumbnailCoalescer thumbnailCoalescer, ConversionBulkheads conversionBulkheads,
+                                   DecodeMemoryBudget decodeMemoryBudget, ImagingMetrics imagingMetrics,
+                                   SpoolManager spoolManager, @Qualifier("imagingScheduler") Scheduler imagingScheduler) {
+        this.thumbnailService = thumbnailService;
+        this.thumbnailCache = thumbnailCache;
+        this.diskThumbnailCache = diskThumbnailCache;
+        this.thumbnailCoalescer = thumbnailCoalescer;
+        this.conversionBulkheads = conversionBulkheads;
+        this.decodeMemoryBudget = decodeMemoryBudget;
+        this.imagingMetrics = imagingMetrics;
+        this.spoolManager = spoolManager;
+        this.imagingScheduler = imagingScheduler;
+    }
+
+    @PutMapping(value = "/detect-type", consumes = MediaType.ALL_VALUE)
+    public Mono<ResponseEntity<String>> detectImageType(ServerHttpRequest request) {
+
+        final StageTimings timings = new StageTimings();
+        // Detection needs only the magic bytes, the rest of the body is not read
+        return ReactiveSpooling.readPrefix(request.getBody())
+            .map(prefix -> {
+                timings.lap(Stage.INGEST);
+                timings.setBytesIn(prefix.length);
+                final FileTypeDetector.FileType detectedFileType = FileTypeDetector.getInstance().getFileType(prefix);
+                timings.lap(Stage.DETECT);
+                timings.setFileType(detectedFileType);
+                LOGGER.info("/detect-type {}", detectedFileType);
+                return ResponseEntity.ok(detectedFileType.name());
+            })
+            .doFinally(signal -> record("/detect-type", timings));
+    }
+
+    @PutMapping(value = "/fetch-file-info", consumes = MediaType.ALL_VALUE)
+    public Mono<ResponseEntity<FileInfo>> fetchFileInfo(ServerHttpRequest request) {
+
+        final StageTimings timings = new StageTimings();
+        final AtomicReference<FileTypeDetector.FileType> detected = new AtomicReference<>();
+        // Fast path: read the body into memory until the metadata is found in the header, spool it only otherwise
+        return ReactiveSpooling.readHeader(request.getBody(),
+                prefix -> headerLimit(prefix, detected, timings),
+                (bytes, length) -> readHeader(bytes, length, detected.get()),
+                spoolFile(), spoolManager::delete)
+            .flatMap(header -> {
+                timings.setBytesIn(header.size());
+                if (header.header() != null) {
+                    LOGGER.info("/fetch-file-info from {} header bytes {}", header.size(), header.header().dumpInfo());
+                    return Mono.just(fileInfoResponse(header.header(), timings));
+                }
+                final Path file = header.file();
+                spoolManager.account(file);
+                timings.lap(Stage.SPOOL);
+                LOGGER.info("/fetch-file-info {} bytes received", header.size());
+                return Mono.fromCallable(() -> fetchFileInfo(file, timings))
+                    .subscribeOn(imagingScheduler)
+                    .doFinally(signal -> spoolManager.delete(file));
+            })
+            .onErrorResume(e -> errorResponse("/fetch-file-info", e))
+            .doFinally(signal -> record("/fetch-file-info", timings));
+    }
+
+    @PutMapping(value = "/create-thumbnail", consumes = MediaType.ALL_VALUE)
+    public Mono<ResponseEntity<Flux<DataBuffer>>> createThumbnail(
+        ServerHttpRequest request,
+        ServerHttpResponse response,
+        @RequestHeader(value = "Thumbnail-Width", required = false, defaultValue = "200") int width,
+        @RequestHeader(value = "Thumbnail-Height", required = false, defaultValue = "200") int height,
+        @RequestHeader(value = "Thumbnail-Quality", required = false, defaultValue = "LOSSY_MEDIUM") String qualityStr,
+        @RequestHeader(value = "Thumbnail-Page", required = false, defaultValue = "1") int page) {
+
+        final StageTimings timings = new StageTimings();
+        final ThumbnailSpec spec;
+        try {
+            spec = ThumbnailSpec.of(width, height, qualityStr).withPage(page);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("/create-thumbnail {}", e.getMessage());
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        timings.setOutputFormat(spec.outputFormat());
+        timings.setQuality(spec.quality());
+
+        final MessageDigest contentDigest = thumbnailCache.isEnabled() || diskThumbnailCache.isEnabled() || thumbnailCoalescer.isEnabled()
+            ? ThumbnailKey.newDigest() : null;
+        final AtomicReference<FileTypeDetector.FileType> detected = new AtomicReference<>();
+        return Mono.usingWhen(spoolFile(),
+                file -> ReactiveSpooling.spool(request.getBody(), file, contentDigest, prefix -> {
+                        // Reject unsupported types and decompression bombs before the rest of the body is read
+                        detected.set(checkThumbnailInput(prefix, timings));
+                        return true;
+                    })
+                    .flatMap(spooled -> {
+                        spoolManager.account(file);
+                        timings.lap(Stage.SPOOL);
+                        timings.setBytesIn(spooled.size());
+                        LOGGER.info("/create-thumbnail {} bytes received, width={}, height={}, quality={}",
+                            spooled.size(), width, height, spec.quality());
+                        return Mono.fromCallable(() -> convert(file, detected.get(), spec, contentDigest, response.bufferFactory(), timings))
+                            .subscribeOn(imagingScheduler);
+                    }),
+                file -> Mono.fromRunnable(() -> spoolManager.delete(file)))
+            .onErrorResume(e -> errorResponse("/create-thumbnail", e))
+            .doOnNext(result -> {
+                // streamed bodies are recorded when they are written
+                if (result.getBody() == null) {
+                    record("/create-thumbnail", timings);
+                }
+            });
+    }
+
+    private ResponseEntity<FileInfo> fetchFileInfo(Path file, StageTimings timings) throws IOException {
+
+        try (ImagingMetrics.ActiveConversion conversion = imagingMetrics.startConversion()) {
+            final FileInfo fileInfo = imagingProvider.fetchFileInfo(file.toFile());
+            LOGGER.info("/fetch-file-info {}", fileInfo.dumpInfo());
+            return fileInfoResponse(fileInfo, timings);
+        } catch (FormatNotSupportedException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private static ResponseEntity<FileInfo> fileInfoResponse(FileInfo fileInfo, StageTimings timings) {
+        timings.lap(Stage.CONVERT);
+        timings.setInputPixels((long) fileInfo.getWidth() * fileInfo.getHeight());
+        return ResponseEntity.ok(fileInfo);
+    }
+
+    /**
+     * Detect the file type from the prefix and check the pixel count, when the header is in the prefix.
+     */
+    private FileTypeDetector.FileType checkThumbnailInput(byte[] prefix, StageTimings timings) {
+
+        timings.lap(Stage.INGEST);
+        if (prefix.length == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "0 bytes received");
+        }
+        final FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(prefix);
+        timings.lap(Stage.DETECT);
+        timings.setFileType(fileType);
+        if (!thumbnailService.isSupported(fileType)) {
+            throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "unsupported file type " + fileType);
+        }
+        try {
+            timings.setInputPixels(ImageController.readPixelCount(prefix, fileType));
+            decodeMemoryBudget.checkPixels(timings.getInputPixels());
+        } catch (IOException | ImageTooLargeException e) {
+            throw Exceptions.propagate(e);
+        }
+        return fileType;
+    }
+
+    /**
+     * The blocking part of {@code /create-thumbnail}: cache lookup and conversion. Runs on the imaging scheduler.
+     */
+    private ResponseEntity<Flux<DataBuffer>> convert(Path spoolFile, FileTypeDetector.FileType fileType, ThumbnailSpec spec,
+                                                     MessageDigest contentDigest, DataBufferFactory bufferFactory,
+                                                     StageTimings timings) throws Exception {
+
+        // ImageOpener needs the proper file extension
+        final Path inputFile = spoolManager.rename(spoolFile, ThumbnailService.getFileExtension(fileType));
+        Path outputFile = null;
+        try {
+            final ThumbnailKey thumbnailKey = contentDigest != null ? ThumbnailKey.of(contentDigest, spec) : null;
+            if (thumbnailKey != null) {
+                final ThumbnailCache.CachedThumbnail cached = thumbnailCache.get(thumbnailKey);
+                if (cached != null) {
+                    LOGGER.info("/create-thumbnail cache hit outputFormat={} outputByteSize={}", cached.contentType(), cached.data().length);
+                    return thumbnailResponse(cached.contentType(), cached.data().length,
+                        Flux.defer(() -> Flux.just(bufferFactory.wrap(cached.data()))), null, timings);
+                }
+                final DiskThumbnailCache.Entry stored = diskThumbnailCache.get(thumbnailKey);
+                // read from a link, which a concurrent eviction or replacement of the entry cannot delete
+                final Path link = stored != null ? diskThumbnailCache.link(stored) : null;
+                if (link != null) {
+                    LOGGER.info("/create-thumbnail disk cache hit outputFormat={} outputByteSize={}", stored.contentType(), stored.size());
+                    return thumbnailResponse(stored.contentType(), Files.size(link),
+                        DataBufferUtils.read(link, bufferFactory, RESPONSE_BUFFER_SIZE), link, timings);
+                }
+            }
+
+            try (ImagingMetrics.ActiveConversion conversion = imagingMetrics.startConversion()) {
+                outputFile = thumbnailCoalescer.convert(thumbnailKey, () -> {
+                    try (ConversionBulkheads.Permit permit = conversionBulkheads.acquire(fileType)) {
+                        return thumbnailService.createThumbnail(inputFile, fileType, spec);
+                    }
+                });
+            }
+            timings.lap(Stage.CONVERT);
+
+            final long outputByteSize = Files.size(outputFile);
+            LOGGER.info("/create-thumbnail fileType={} outputFormat={} outputByteSize={}", fileType, spec.outputFormat(), outputByteSize);
+            diskThumbnailCache.put(thumbnailKey, spec.outputFormat(), outputFile);
+            if (thumbnailKey != null && thumbnailCache.accepts(outputByteSize)) {
+                final byte[] outputFileData = Files.readAllBytes(outputFile);
+                thumbnailCache.put(thumbnailKey, new ThumbnailCache.CachedThumbnail(spec.outputFormat(), outputFileData));
+                return thumbnailResponse(spec.outputFormat(), outputByteSize,
+                    Flux.defer(() -> Flux.just(bufferFactory.wrap(outputFileData))), null, timings);
+            }
+
+            // streamed from disk on demand of the client and deleted afterward
+            final ResponseEntity<Flux<DataBuffer>> result = thumbnailResponse(spec.outputFormat(), outputByteSize,
+                DataBufferUtils.read(outputFile, bufferFactory, RESPONSE_BUFFER_SIZE), outputFile, timings);
+            outputFile = null;
+            return result;
+        } finally {
+            spoolManager.delete(inputFile);
+            spoolManager.delete(outputFile);
+        }
+    }
+
+    private ResponseEntity<Flux<DataBuffer>> thumbnailResponse(String outputFormat, long contentLength, Flux<DataBuffer> body,
+                                                               Path outputFile, StageTimings timings) {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(outputFormat));
+        headers.setContentLength(contentLength);
+        timings.setBytesOut(contentLength);
+        return new ResponseEntity<>(body.doFinally(signal -> {
+            spoolManager.delete(outputFile);
+            record("/create-thumbnail", timings);
+        }), headers, HttpStatus.OK);
+    }
+
+    /**
+     * Admit an upload to the spool directory. Waiting for the quota blocks, so it runs on the imaging scheduler.
+     */
+    private Mono<Path> spoolFile() {
+        return Mono.fromCallable(() -> {
+            spoolManager.awaitQuota();
+            return spoolManager.createFile("file-in-", "");
+        }).subscribeOn(imagingScheduler);
+    }
+
+    /**
+     * Map failures to the same status codes as the servlet controllers.
+     */
+    private <T> Mono<ResponseEntity<T>> errorResponse(String endpoint, Throwable error) {
+
+        final Throwable e = Exceptions.unwrap(error);
+        if (e instanceof ResponseStatusException statusException) {
+            LOGGER.warn("{} {}", endpoint, statusException.getReason());
+            return Mono.just(ResponseEntity.status(statusException.getStatusCode()).build());
+        } else if (e instanceof BulkheadFullException || e instanceof RejectedExecutionException) {
+            LOGGER.warn("{} {}", endpoint, e.getMessage());
+            return Mono.just(ImageController.serviceUnavailable(conversionBulkheads.getRetryAfterSeconds()));
+        } else if (e instanceof ImageTooLargeException) {
+            LOGGER.warn("{} {}", endpoint, e.getMessage());
+            return Mono.just(ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build());
+        } else if (e instanceof PageNotFoundException) {
+            LOGGER.warn("{} {}", endpoint, e.getMessage());
+            return Mono.just(ResponseEntity.badRequest().build());
+        } else if (e instanceof FormatNotSupportedException) {
+            LOGGER.error("{} format not supported", endpoint, e);
+            return Mono.just(ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build());
+        }
+        LOGGER.error("{} conversion failed", endpoint, e);
+        return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+    }
+
+    /**
+     * Detect the file type from the prefix and return the number of bytes to look for the header in, 0 if the header
+     * of the format cannot be read.
+     */
+    private static int headerLimit(byte[] prefix, AtomicReference<FileTypeDetector.FileType> detected, StageTimings timings) {
+        timings.lap(Stage.INGEST);
+        final FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(prefix);
+        timings.lap(Stage.DETECT);
+        timings.setFileType(fileType);
+        detected.set(fileType);
+        return ImageHeaderReader.supports(fileType) ? ImageHeaderReader.MAX_HEADER_SIZE : 0;
+    }
+
+    /**
+     * Metadata from the image header within the bytes read so far, null if the header is not complete or invalid.
+     */
+    private static FileInfo readHeader(byte[] bytes, int length, FileTypeDetector.FileType fileType) {
+        try {
+            // the reader copies only the bytes up to the end of the header
+            return new ImageHeaderReader(new byte[0], new ByteArrayInputStream(bytes, 0, length)).read(fileType);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void record(String endpoint, StageTimings timings) {
+        timings.lap(Stage.SERIALIZE);
+        imagingMetrics.record(endpoint, timings);
+    }
+}
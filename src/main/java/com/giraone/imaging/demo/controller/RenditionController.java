@@ -0,0 +1,124 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.ConversionCommand;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.FormatNotSupportedException;
+import com.giraone.imaging.demo.metrics.Stage;
+import com.giraone.imaging.demo.metrics.StageTimings;
+import com.giraone.imaging.demo.service.BulkheadFullException;
+import com.giraone.imaging.demo.service.ConversionBulkheads;
+import com.giraone.imaging.demo.service.CpuPool;
+import com.giraone.imaging.demo.service.ImageTooLargeException;
+import com.giraone.imaging.demo.service.RenditionService;
+import com.giraone.imaging.demo.service.SpoolManager;
+import com.giraone.imaging.demo.service.Spooling;
+import com.giraone.imaging.demo.service.TempFileResource;
+import com.giraone.imaging.demo.service.ThumbnailService;
+import com.giraone.imaging.demo.service.ThumbnailSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Several thumbnails (renditions) of one upload in a single ZIP response, e.g. for responsive {@code srcset} markup.
+ */
+@SuppressWarnings("unused")
+@Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RenditionController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenditionController.class);
+
+    private final RenditionService renditionService;
+    private final ConversionBulkheads conversionBulkheads;
+    private final CpuPool cpuPool;
+    private final SpoolManager spoolManager;
+
+    public RenditionController(RenditionService renditionService, ConversionBulkheads conversionBulkheads, CpuPool cpuPool, SpoolManager spoolManager) {
+        this.spoolManager = spoolManager;
+        this.renditionService = renditionService;
+        this.conversionBulkheads = conversionBulkheads;
+        this.cpuPool = cpuPool;
+    }
+
+    @PutMapping(value = "/create-renditions", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<Resource> createRenditions(
+        InputStream in,
+        @RequestHeader(value = "Renditions", required = false, defaultValue = "64,200,400,800") String renditionsStr,
+        @RequestHeader(value = "Thumbnail-Quality", required = false, defaultValue = "LOSSY_MEDIUM") String qualityStr,
+        @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) throws IOException {
+
+        final List<ThumbnailSpec> renditions;
+        try {
+            final ConversionCommand.CompressionQuality defaultQuality = ThumbnailSpec.parseQuality(qualityStr);
+            renditions = RenditionService.parseRenditions(renditionsStr, defaultQuality);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("/create-renditions {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        timings.skip();
+        final byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+        timings.lap(Stage.INGEST);
+        if (prefix.length == 0) {
+            LOGGER.info("/create-renditions 0 bytes received");
+            return ResponseEntity.badRequest().build();
+        }
+        final FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(prefix);
+        timings.lap(Stage.DETECT);
+        timings.setFileType(fileType);
+
+        Path outputFile = null;
+        try (SpoolManager.SpoolFile inputFile = spoolManager.spoolFile("file-in-", ThumbnailService.getFileExtension(fileType))) {
+            final long inputByteSize = spoolManager.spool(prefix, in, inputFile.path(), null);
+            timings.lap(Stage.SPOOL);
+            timings.setBytesIn(inputByteSize);
+            LOGGER.info("/create-renditions {} bytes received, fileType={}, renditions={}", inputByteSize, fileType, renditions.size());
+            // decode, scaling and encoding of all renditions within the permit and the CPU pool, only the ZIP is streamed
+            try (ConversionBulkheads.Permit permit = conversionBulkheads.acquire(fileType)) {
+                final Path spooledFile = inputFile.path();
+                outputFile = cpuPool.call(() -> renditionService.createRenditions(spooledFile, fileType, renditions));
+            }
+            timings.lap(Stage.CONVERT);
+
+            final HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType(BatchThumbnailController.APPLICATION_ZIP));
+            headers.setContentDisposition(ContentDisposition.attachment().filename("renditions.zip").build());
+            headers.setContentLength(Files.size(outputFile));
+            // streamed from disk and deleted afterward
+            final ResponseEntity<Resource> response = new ResponseEntity<>(new TempFileResource(outputFile, spoolManager), headers, HttpStatus.OK);
+            outputFile = null;
+            return response;
+        } catch (BulkheadFullException e) {
+            LOGGER.warn("/create-renditions {}", e.getMessage());
+            return ImageController.serviceUnavailable(conversionBulkheads.getRetryAfterSeconds());
+        } catch (ImageTooLargeException e) {
+            LOGGER.warn("/create-renditions {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (FormatNotSupportedException e) {
+            LOGGER.error("/create-renditions format not supported", e);
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        } catch (Exception e) {
+            LOGGER.error("/create-renditions conversion failed", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        } finally {
+            spoolManager.delete(outputFile);
+        }
+    }
+}
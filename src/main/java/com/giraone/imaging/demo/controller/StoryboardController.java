@@ -0,0 +1,124 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.metrics.Stage;
+import com.giraone.imaging.demo.metrics.StageTimings;
+import com.giraone.imaging.demo.service.BulkheadFullException;
+import com.giraone.imaging.demo.service.ConversionBulkheads;
+import com.giraone.imaging.demo.service.ImageTooLargeException;
+import com.giraone.imaging.demo.service.SpoolManager;
+import com.giraone.imaging.demo.service.Spooling;
+import com.giraone.imaging.demo.service.StoryboardService;
+import com.giraone.imaging.demo.service.ThumbnailService;
+import com.giraone.imaging.demo.service.ThumbnailSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Storyboard sprite sheets of MP4 videos for hover-scrubbing, returned as ZIP with the sprite and its index.
+ */
+@SuppressWarnings("unused")
+@Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class StoryboardController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StoryboardController.class);
+
+    private final StoryboardService storyboardService;
+    private final ConversionBulkheads conversionBulkheads;
+    private final SpoolManager spoolManager;
+
+    public StoryboardController(StoryboardService storyboardService, ConversionBulkheads conversionBulkheads, SpoolManager spoolManager) {
+        this.spoolManager = spoolManager;
+        this.storyboardService = storyboardService;
+        this.conversionBulkheads = conversionBulkheads;
+    }
+
+    @PutMapping(value = "/create-storyboard", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<StreamingResponseBody> createStoryboard(
+        InputStream in,
+        @RequestHeader(value = "Storyboard-Frames", required = false, defaultValue = "20") int frames,
+        @RequestHeader(value = "Storyboard-Columns", required = false, defaultValue = "0") int columns,
+        @RequestHeader(value = "Thumbnail-Width", required = false, defaultValue = "160") int width,
+        @RequestHeader(value = "Thumbnail-Height", required = false, defaultValue = "90") int height,
+        @RequestHeader(value = "Thumbnail-Quality", required = false, defaultValue = "LOSSY_MEDIUM") String qualityStr,
+        @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) throws IOException {
+
+        final ThumbnailSpec spec;
+        try {
+            spec = ThumbnailSpec.of(width, height, qualityStr);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("/create-storyboard {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        if (frames < 1 || frames > storyboardService.getMaxFrames() || columns < 0) {
+            LOGGER.warn("/create-storyboard invalid frames={} or columns={}", frames, columns);
+            return ResponseEntity.badRequest().build();
+        }
+
+        timings.skip();
+        final byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+        timings.lap(Stage.INGEST);
+        if (prefix.length == 0) {
+            LOGGER.info("/create-storyboard 0 bytes received");
+            return ResponseEntity.badRequest().build();
+        }
+        final FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(prefix);
+        timings.lap(Stage.DETECT);
+        timings.setFileType(fileType);
+        if (fileType != FileTypeDetector.FileType.MP4) {
+            LOGGER.warn("/create-storyboard unsupported file type {}", fileType);
+            timings.setBytesIn(prefix.length);
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        }
+        timings.setOutputFormat(BatchThumbnailController.APPLICATION_ZIP);
+        timings.setQuality(spec.quality());
+
+        final StoryboardService.Storyboard storyboard;
+        try (SpoolManager.SpoolFile inputFile = spoolManager.spoolFile("file-in-", ThumbnailService.getFileExtension(fileType))) {
+            final long inputByteSize = spoolManager.spool(prefix, in, inputFile.path(), null);
+            timings.lap(Stage.SPOOL);
+            timings.setBytesIn(inputByteSize);
+            LOGGER.info("/create-storyboard {} bytes received, frames={}", inputByteSize, frames);
+            // one permit per video, the parallelism is bounded by the storyboard executor
+            try (ConversionBulkheads.Permit permit = conversionBulkheads.acquire(fileType)) {
+                storyboard = storyboardService.createStoryboard(inputFile.path(), frames, spec.dimension(), columns);
+            }
+            timings.lap(Stage.CONVERT);
+        } catch (BulkheadFullException e) {
+            LOGGER.warn("/create-storyboard {}", e.getMessage());
+            return ImageController.serviceUnavailable(conversionBulkheads.getRetryAfterSeconds());
+        } catch (ImageTooLargeException e) {
+            LOGGER.warn("/create-storyboard {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (Exception e) {
+            LOGGER.error("/create-storyboard frame extraction failed", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(BatchThumbnailController.APPLICATION_ZIP));
+        headers.setContentDisposition(ContentDisposition.attachment().filename("storyboard.zip").build());
+        // the sprite stays in the memory budget until the body is written
+        final StreamingResponseBody body = out -> {
+            try (storyboard) {
+                storyboardService.writeStoryboard(storyboard, spec, out);
+            }
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,169 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.FormatNotSupportedException;
+import com.giraone.imaging.demo.metrics.Stage;
+import com.giraone.imaging.demo.metrics.StageTimings;
+import com.giraone.imaging.demo.service.BulkheadFullException;
+import com.giraone.imaging.demo.service.SpoolManager;
+import com.giraone.imaging.demo.service.Spooling;
+import com.giraone.imaging.demo.service.ThumbnailJob;
+import com.giraone.imaging.demo.service.ThumbnailJobService;
+import com.giraone.imaging.demo.service.ThumbnailJobStatus;
+import com.giraone.imaging.demo.service.ThumbnailService;
+import com.giraone.imaging.demo.service.ThumbnailSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous variant of {@code /create-thumbnail}: submit a job, poll its status, fetch the result.
+ */
+@SuppressWarnings("unused")
+@Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ThumbnailJobController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailJobController.class);
+
+    /**
+     * Suggested polling interval / retry time in seconds.
+     */
+    private static final String RETRY_AFTER_SECONDS = "2";
+
+    private final ThumbnailJobService thumbnailJobService;
+    private final ThumbnailService thumbnailService;
+    private final SpoolManager spoolManager;
+
+    public ThumbnailJobController(ThumbnailJobService thumbnailJobService, ThumbnailService thumbnailService, SpoolManager spoolManager) {
+        this.thumbnailJobService = thumbnailJobService;
+        this.thumbnailService = thumbnailService;
+        this.spoolManager = spoolManager;
+    }
+
+    @PutMapping(value = "/thumbnail-jobs", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<ThumbnailJobStatus> submitJob(
+        InputStream in,
+        @RequestHeader(value = "Thumbnail-Width", required = false, defaultValue = "200") int width,
+        @RequestHeader(value = "Thumbnail-Height", required = false, defaultValue = "200") int height,
+        @RequestHeader(value = "Thumbnail-Quality", required = false, defaultValue = "LOSSY_MEDIUM") String qualityStr,
+        @RequestAttribute(StageTimings.ATTRIBUTE) StageTimings timings) throws IOException {
+
+        final ThumbnailSpec spec;
+        try {
+            spec = ThumbnailSpec.of(width, height, qualityStr);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("/thumbnail-jobs {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        timings.skip();
+        final byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+        timings.lap(Stage.INGEST);
+        if (prefix.length == 0) {
+            LOGGER.info("/thumbnail-jobs 0 bytes received");
+            return ResponseEntity.badRequest().build();
+        }
+        final FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(prefix);
+        timings.lap(Stage.DETECT);
+        timings.setFileType(fileType);
+        if (!thumbnailService.isSupported(fileType)) {
+            // Reject before the rest of the body is read
+            LOGGER.warn("/thumbnail-jobs unsupported file type {}", fileType);
+            timings.setBytesIn(prefix.length);
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        }
+
+        try (SpoolManager.SpoolFile inputFile = spoolManager.spoolFile("job-in-", ThumbnailService.getFileExtension(fileType))) {
+            final long inputByteSize = spoolManager.spool(prefix, in, inputFile.path(), null);
+            timings.lap(Stage.SPOOL);
+            timings.setBytesIn(inputByteSize);
+            final ThumbnailJob job = thumbnailJobService.submit(inputFile.path(), fileType, spec);
+            // the job owns the input file now
+            inputFile.release();
+            LOGGER.info("/thumbnail-jobs {} bytes received, fileType={}, job={}", inputByteSize, fileType, job.getId());
+            return ResponseEntity.accepted()
+                .location(URI.create("/thumbnail-jobs/" + job.getId()))
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(ThumbnailJobStatus.of(job));
+        } catch (FormatNotSupportedException e) {
+            LOGGER.warn("/thumbnail-jobs format not supported: {}", fileType);
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("/thumbnail-jobs job queue full");
+            return ImageController.serviceUnavailable(Long.parseLong(RETRY_AFTER_SECONDS));
+        } catch (BulkheadFullException e) {
+            LOGGER.warn("/thumbnail-jobs {}", e.getMessage());
+            return ImageController.serviceUnavailable(Long.parseLong(RETRY_AFTER_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    @GetMapping("/thumbnail-jobs/{id}")
+    public ResponseEntity<ThumbnailJobStatus> getJob(@PathVariable String id) {
+
+        final ThumbnailJob job = thumbnailJobService.get(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        final ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (!job.isFinished()) {
+            builder.header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+        }
+        return builder.body(ThumbnailJobStatus.of(job));
+    }
+
+    /**
+     * The result file is opened before the response is returned, so a concurrent {@code DELETE} or the retention
+     * sweeper can remove it without truncating a response, that is already being written.
+     */
+    @GetMapping("/thumbnail-jobs/{id}/result")
+    public ResponseEntity<Resource> getJobResult(@PathVariable String id) throws IOException {
+
+        final ThumbnailJob job = thumbnailJobService.get(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (job.getStatus() != ThumbnailJob.Status.DONE) {
+            // not yet finished or failed, details are in the status
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        final InputStream in;
+        try {
+            in = Files.newInputStream(job.getOutputFile());
+        } catch (NoSuchFileException e) {
+            // removed since the lookup
+            return ResponseEntity.notFound().build();
+        }
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(job.getSpec().outputFormat()));
+        headers.setContentLength(job.getOutputByteSize());
+        return new ResponseEntity<>(new InputStreamResource(in), headers, HttpStatus.OK);
+    }
+
+    @DeleteMapping("/thumbnail-jobs/{id}")
+    public ResponseEntity<Void> deleteJob(@PathVariable String id) {
+        return thumbnailJobService.remove(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
@@ -0,0 +1,86 @@
+package com.giraone.imaging.demo.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer instrumentation of the imaging endpoints.
+ * <ul>
+ *     <li>{@code imaging.request.stage} - timer per endpoint, stage, file type, output format and quality</li>
+ *     <li>{@code imaging.request.bytes.in}, {@code imaging.request.bytes.out} - distribution summaries per endpoint and file type</li>
+ *     <li>{@code imaging.conversions.active} - gauge of running imaging-kit conversions</li>
+ * </ul>
+ * The temp files are measured by the {@link com.giraone.imaging.demo.service.SpoolManager}.
+ */
+@Component
+public class ImagingMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger activeConversions = new AtomicInteger();
+
+    public ImagingMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("imaging.conversions.active", activeConversions, AtomicInteger::get)
+            .description("Number of running conversions")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Count a running conversion until the returned scope is closed.
+     */
+    public ActiveConversion startConversion() {
+        activeConversions.incrementAndGet();
+        return activeConversions::decrementAndGet;
+    }
+
+    /**
+     * Record all stages and byte counts of a finished request.
+     */
+    public void record(String endpoint, StageTimings timings) {
+
+        final Tags tags = Tags.of(
+            "endpoint", endpoint,
+            "fileType", timings.getFileType(),
+            "outputFormat", timings.getOutputFormat(),
+            "quality", timings.getQuality());
+        for (Stage stage : Stage.values()) {
+            final long nanos = timings.getNanos(stage);
+            if (nanos >= 0L) {
+                Timer.builder("imaging.request.stage")
+                    .tags(tags)
+                    .tag("stage", stage.tagValue())
+                    .register(meterRegistry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (timings.getBytesIn() >= 0L) {
+            bytesSummary("imaging.request.bytes.in", endpoint, timings.getFileType()).record(timings.getBytesIn());
+        }
+        if (timings.getBytesOut() >= 0L) {
+            bytesSummary("imaging.request.bytes.out", endpoint, timings.getFileType()).record(timings.getBytesOut());
+        }
+    }
+
+    private DistributionSummary bytesSummary(String name, String endpoint, String fileType) {
+        return DistributionSummary.builder(name)
+            .baseUnit("bytes")
+            .tag("endpoint", endpoint)
+            .tag("fileType", fileType)
+            .register(meterRegistry);
+    }
+
+    /**
+     * A running conversion.
+     */
+    public interface ActiveConversion extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,95 @@
+package com.giraone.imaging.demo.metrics;
+
+/**
+ * Formats {@link StageTimings} as value of a <a href="https://www.w3.org/TR/server-timing/">Server-Timing</a> header,
+ * e.g. {@code ingest;dur=0.412, detect;dur=0.031, convert;dur=25.880, total;dur=26.950, pixels;desc="2073600"}.
+ * Durations are given in milliseconds with microsecond precision. Counts are given as description, because they
+ * are no durations. Only the header string itself is allocated.
+ */
+public final class ServerTiming {
+
+    public static final String HEADER = "Server-Timing";
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private ServerTiming() {
+    }
+
+    /**
+     * Header value with all stages passed so far, the total time so far and the known counts.
+     *
+     * @param bytesOut size of the response body, -1 if unknown
+     */
+    public static String format(StageTimings timings, long bytesOut) {
+        final StringBuilder sb = new StringBuilder(192);
+        for (Stage stage : STAGES) {
+            final long nanos = timings.getNanos(stage);
+            if (nanos >= 0L) {
+                appendDuration(sb, stage.tagValue(), nanos);
+            }
+        }
+        appendDuration(sb, "total", timings.getTotalNanos());
+        appendCount(sb, "bytes-in", timings.getBytesIn());
+        appendCount(sb, "pixels", timings.getInputPixels());
+        appendCount(sb, "bytes-out", bytesOut);
+        return sb.toString();
+    }
+
+    /**
+     * Durations of all stages, -1 for stages not passed, to compute the {@link #formatTrailer trailer} later.
+     */
+    public static long[] snapshot(StageTimings timings) {
+        final long[] nanos = new long[STAGES.length];
+        for (Stage stage : STAGES) {
+            nanos[stage.ordinal()] = timings.getNanos(stage);
+        }
+        return nanos;
+    }
+
+    /**
+     * Trailer value, sent when the body is written: the time added to every stage since the header was formatted
+     * (e.g. the encoding of a streamed body and {@link Stage#SERIALIZE}), the final total and the output size.
+     *
+     * @param sentNanos the {@link #snapshot} taken, when the header was formatted
+     */
+    public static String formatTrailer(StageTimings timings, long[] sentNanos) {
+        final StringBuilder sb = new StringBuilder(64);
+        for (Stage stage : STAGES) {
+            long nanos = timings.getNanos(stage);
+            if (stage == Stage.SERIALIZE && nanos < 0L) {
+                // not yet recorded, when the trailer is written before the request is complete
+                nanos = System.nanoTime() - timings.getLastLapNanos();
+            }
+            final long added = nanos - Math.max(0L, sentNanos[stage.ordinal()]);
+            if (nanos >= 0L && added > 0L) {
+                appendDuration(sb, stage.tagValue(), added);
+            }
+        }
+        appendDuration(sb, "total", timings.getTotalNanos());
+        appendCount(sb, "bytes-out", timings.getBytesOut());
+        return sb.toString();
+    }
+
+    static StringBuilder appendDuration(StringBuilder sb, String name, long nanos) {
+        final long micros = nanos / 1_000L;
+        final long fraction = micros % 1_000L;
+        separate(sb).append(name).append(";dur=").append(micros / 1_000L).append('.');
+        if (fraction < 100L) {
+            sb.append('0');
+        }
+        if (fraction < 10L) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+
+    private static void appendCount(StringBuilder sb, String name, long count) {
+        if (count >= 0L) {
+            separate(sb).append(name).append(";desc=\"").append(count).append('"');
+        }
+    }
+
+    private static StringBuilder separate(StringBuilder sb) {
+        return sb.isEmpty() ? sb : sb.append(", ");
+    }
+}
@@ -0,0 +1,142 @@
+package com.giraone.imaging.demo.metrics;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Adds the {@code Server-Timing} header to every response of a request, for which the {@link StageTimingInterceptor}
+ * has {@link #bind bound} its {@link StageTimings}. The header is written right before the response is committed:
+ * when the body is opened, on {@code sendError} or, for responses without a body (including the sendfile path),
+ * when the request leaves the filter. So it contains all stages up to that point, but not {@link Stage#SERIALIZE}.
+ * Clients sending {@code TE: trailers} get the stages recorded afterward as trailer, e.g. the encoding of a streamed
+ * body.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerTimingFilter.class);
+
+    /**
+     * Let the response of the current request carry the {@code Server-Timing} header of the given timings.
+     */
+    public static void bind(HttpServletResponse response, StageTimings timings) {
+        final ServerTimingResponse serverTimingResponse = WebUtils.getNativeResponse(response, ServerTimingResponse.class);
+        if (serverTimingResponse != null) {
+            serverTimingResponse.timings = timings;
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+
+        final ServerTimingResponse serverTimingResponse = new ServerTimingResponse(request, response);
+        try {
+            filterChain.doFilter(request, serverTimingResponse);
+        } finally {
+            serverTimingResponse.writeServerTiming();
+        }
+    }
+
+    private static final class ServerTimingResponse extends HttpServletResponseWrapper {
+
+        private final HttpServletRequest request;
+        private StageTimings timings;
+        private boolean written;
+        // the container does not return a Content-Length set with setContentLength* as header before the commit
+        private long contentLength = -1L;
+
+        private ServerTimingResponse(HttpServletRequest request, HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            contentLength = len;
+            super.setContentLength(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            contentLength = len;
+            super.setContentLengthLong(len);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeServerTiming();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeServerTiming();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeServerTiming();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            writeServerTiming();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            writeServerTiming();
+            super.sendError(sc, msg);
+        }
+
+        private void writeServerTiming() {
+            if (timings == null || written || isCommitted()) {
+                return;
+            }
+            written = true;
+            long bytesOut = timings.getBytesOut() >= 0L ? timings.getBytesOut() : contentLength;
+            final String contentLengthHeader = getHeader(HttpHeaders.CONTENT_LENGTH);
+            if (bytesOut < 0L && contentLengthHeader != null) {
+                bytesOut = Long.parseLong(contentLengthHeader);
+            }
+            addHeader(ServerTiming.HEADER, ServerTiming.format(timings, bytesOut));
+            addTrailer();
+        }
+
+        private void addTrailer() {
+            final String te = request.getHeader("TE");
+            if (te == null || !te.contains("trailers")) {
+                return;
+            }
+            final StageTimings trailerTimings = timings;
+            final long[] sentNanos = ServerTiming.snapshot(trailerTimings);
+            try {
+                setTrailerFields(() -> Map.of(ServerTiming.HEADER, ServerTiming.formatTrailer(trailerTimings, sentNanos)));
+                addHeader(HttpHeaders.TRAILER, ServerTiming.HEADER);
+            } catch (IllegalStateException e) {
+                // e.g. HTTP/1.0
+                LOGGER.debug("Trailer fields not supported: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.giraone.imaging.demo.metrics;
+
+/**
+ * Stages of an imaging request. Not every request passes all stages.
+ */
+public enum Stage {
+
+    /** Reading the request body, or the part of it needed before spooling. */
+    INGEST("ingest"),
+    /** File type detection. */
+    DETECT("detect"),
+    /** Writing the (remaining) request body to a temp file. */
+    SPOOL("spool"),
+    /** Decoding and conversion by imaging-kit. */
+    CONVERT("convert"),
+    /** Writing the response, measured from the end of the handler to the completion of the request. */
+    SERIALIZE("serialize");
+
+    private final String tagValue;
+
+    Stage(String tagValue) {
+        this.tagValue = tagValue;
+    }
+
+    public String tagValue() {
+        return tagValue;
+    }
+}
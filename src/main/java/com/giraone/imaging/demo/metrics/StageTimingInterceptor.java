@@ -0,0 +1,68 @@
+package com.giraone.imaging.demo.metrics;
+
+import com.giraone.imaging.demo.config.ServerTimingProperties;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Provides a {@link StageTimings} instance as request attribute {@link StageTimings#ATTRIBUTE} to the controllers and
+ * records it, when the request is complete. The time between the last lap of the controller and the completion is
+ * recorded as {@link Stage#SERIALIZE}. Also decides, whether the response gets a {@code Server-Timing} header, and
+ * passes the timings to the {@link ServerTimingFilter} in that case.
+ */
+@Component
+public class StageTimingInterceptor implements HandlerInterceptor {
+
+    private final ImagingMetrics imagingMetrics;
+    private final ServerTimingProperties.Mode serverTimingMode;
+
+    public StageTimingInterceptor(ImagingMetrics imagingMetrics, ServerTimingProperties serverTimingProperties) {
+        this.imagingMetrics = imagingMetrics;
+        this.serverTimingMode = serverTimingProperties.getMode();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // preHandle is called again for the async dispatch of streaming responses
+        if (handler instanceof HandlerMethod && request.getAttribute(StageTimings.ATTRIBUTE) == null) {
+            final StageTimings timings = new StageTimings();
+            timings.setServerTimingEnabled(isServerTimingRequested(request));
+            request.setAttribute(StageTimings.ATTRIBUTE, timings);
+            if (timings.isServerTimingEnabled()) {
+                ServerTimingFilter.bind(response, timings);
+            }
+        }
+        return true;
+    }
+
+    private boolean isServerTimingRequested(HttpServletRequest request) {
+        return switch (serverTimingMode) {
+            case OFF -> false;
+            case ALWAYS -> true;
+            case ON_REQUEST -> Boolean.parseBoolean(request.getHeader(ServerTimingProperties.REQUEST_HEADER));
+        };
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+
+        if (!(request.getAttribute(StageTimings.ATTRIBUTE) instanceof StageTimings timings)) {
+            return;
+        }
+        request.removeAttribute(StageTimings.ATTRIBUTE);
+        timings.lap(Stage.SERIALIZE);
+        if (timings.getBytesOut() < 0L) {
+            final String contentLength = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+            if (contentLength != null) {
+                timings.setBytesOut(Long.parseLong(contentLength));
+            }
+        }
+        final Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        imagingMetrics.record(pattern != null ? pattern.toString() : "unknown", timings);
+    }
+}
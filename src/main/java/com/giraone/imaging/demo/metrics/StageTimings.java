@@ -0,0 +1,127 @@
+package com.giraone.imaging.demo.metrics;
+
+/**
+ * Per-request stage durations. Stages are measured as laps: {@link #lap(Stage)} assigns the time elapsed since the
+ * previous lap (or the creation) to a stage. Apart from the instance itself nothing is allocated while measuring.
+ * Instances are bound to one request and not thread-safe.
+ */
+public class StageTimings {
+
+    /**
+     * Name of the request attribute holding the instance for the current request.
+     */
+    public static final String ATTRIBUTE = "imaging.stageTimings";
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final long startNanos;
+    private final long[] durations = new long[STAGES.length];
+    private long lastLapNanos;
+    private String fileType = "none";
+    private String outputFormat = "none";
+    private String quality = "none";
+    private long bytesIn = -1L;
+    private long bytesOut = -1L;
+    private long inputPixels = -1L;
+    private boolean serverTimingEnabled;
+
+    public StageTimings() {
+        this.startNanos = System.nanoTime();
+        this.lastLapNanos = startNanos;
+    }
+
+    /**
+     * Add the time since the previous lap to the stage.
+     */
+    public void lap(Stage stage) {
+        final long now = System.nanoTime();
+        durations[stage.ordinal()] += now - lastLapNanos;
+        lastLapNanos = now;
+    }
+
+    /**
+     * Start a new lap without assigning the elapsed time to any stage.
+     */
+    public void skip() {
+        lastLapNanos = System.nanoTime();
+    }
+
+    /**
+     * Duration of the stage in nanoseconds, -1 if the stage was not passed.
+     */
+    public long getNanos(Stage stage) {
+        final long nanos = durations[stage.ordinal()];
+        return nanos > 0L ? nanos : -1L;
+    }
+
+    public long getTotalNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    long getLastLapNanos() {
+        return lastLapNanos;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(Object fileType) {
+        this.fileType = String.valueOf(fileType);
+    }
+
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+
+    public void setOutputFormat(String outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    public String getQuality() {
+        return quality;
+    }
+
+    public void setQuality(Object quality) {
+        this.quality = String.valueOf(quality);
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public void setBytesIn(long bytesIn) {
+        this.bytesIn = bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public void setBytesOut(long bytesOut) {
+        this.bytesOut = bytesOut;
+    }
+
+    /**
+     * Number of pixels of the input, -1 if unknown.
+     */
+    public long getInputPixels() {
+        return inputPixels;
+    }
+
+    public void setInputPixels(long inputPixels) {
+        this.inputPixels = inputPixels > 0L ? inputPixels : -1L;
+    }
+
+    /**
+     * True, if a {@code Server-Timing} header is to be added to the response. Controllers use this to skip work,
+     * that is only needed for the header.
+     */
+    public boolean isServerTimingEnabled() {
+        return serverTimingEnabled;
+    }
+
+    public void setServerTimingEnabled(boolean serverTimingEnabled) {
+        this.serverTimingEnabled = serverTimingEnabled;
+    }
+}
@@ -0,0 +1,9 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileTypeDetector;
+
+/**
+ * A stored original, identified by the SHA-256 of its content.
+ */
+public record Asset(String id, FileTypeDetector.FileType fileType, long size) {
+}
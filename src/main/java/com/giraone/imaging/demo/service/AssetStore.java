@@ -0,0 +1,234 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.config.AssetStoreProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Local filesystem store for uploaded originals and their renditions. An original is stored once under the SHA-256
+ * of its content, so identical uploads share one copy. Renditions are created on the first request through the
+ * {@link ThumbnailService} and stored next to the original:
+ * <pre>
+ * &lt;directory&gt;/&lt;first two id digits&gt;/&lt;id&gt;/original.&lt;ext&gt;
+ * &lt;directory&gt;/&lt;first two id digits&gt;/&lt;id&gt;/&lt;width&gt;x&lt;height&gt;-&lt;quality&gt;-&lt;page&gt;.&lt;ext&gt;
+ * </pre>
+ * Files are written to {@code tmp/}, forced to disk and renamed atomically, so readers never see partial files.
+ * Concurrent requests for the same missing rendition share one conversion. Each asset keeps at most
+ * {@code max-renditions} renditions, the least recently used (by modification time, which is updated on each hit)
+ * are deleted, when a new one is stored.
+ */
+@Service
+public class AssetStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AssetStore.class);
+
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final String ORIGINAL = "original";
+    private static final String TMP_DIR = "tmp";
+
+    private final Path directory;
+    private final int maxRenditions;
+    private final ThumbnailService thumbnailService;
+    private final ThumbnailCoalescer thumbnailCoalescer;
+    private final ConversionBulkheads conversionBulkheads;
+    private final CpuPool cpuPool;
+    private final SpoolManager spoolManager;
+
+    public AssetStore(AssetStoreProperties properties, ThumbnailService thumbnailService, ThumbnailCoalescer thumbnailCoalescer,
+                      ConversionBulkheads conversionBulkheads, CpuPool cpuPool, SpoolManager spoolManager) throws IOException {
+        this.directory = properties.getDirectory();
+        this.maxRenditions = Math.max(1, properties.getMaxRenditions());
+        this.thumbnailService = thumbnailService;
+        this.thumbnailCoalescer = thumbnailCoalescer;
+        this.conversionBulkheads = conversionBulkheads;
+        this.cpuPool = cpuPool;
+        this.spoolManager = spoolManager;
+        Files.createDirectories(directory.resolve(TMP_DIR));
+        // interrupted uploads and renditions
+        try (Stream<Path> files = Files.list(directory.resolve(TMP_DIR))) {
+            files.forEach(Spooling::deleteQuietly);
+        }
+        LOGGER.info("Asset store directory={}, maxRenditions={}", directory, maxRenditions);
+    }
+
+    /**
+     * Store an upload, unless an identical original is already stored.
+     * @param prefix the bytes already read from the stream for the file type detection
+     * @param rest the remaining input, which is read until EOF
+     */
+    public Stored store(byte[] prefix, InputStream rest, FileTypeDetector.FileType fileType) throws IOException {
+
+        Path tmp = Files.createTempFile(directory.resolve(TMP_DIR), "asset-in-", null);
+        try (BufferPool.Buffer buffer = spoolManager.getBufferPool().lease()) {
+            final MessageDigest digest = ThumbnailKey.newDigest();
+            final long size = Spooling.spool(prefix, rest, tmp, digest, buffer.array());
+            final Asset asset = new Asset(HexFormat.of().formatHex(digest.digest()), fileType, size);
+            final Path original = originalFile(asset);
+            if (Files.exists(original)) {
+                return new Stored(asset, false);
+            }
+            Files.createDirectories(original.getParent());
+            commit(tmp, original);
+            tmp = null;
+            return new Stored(asset, true);
+        } finally {
+            Spooling.deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Return the asset or null, if there is none with the id.
+     * @throws IllegalArgumentException when the id is no SHA-256 in lower case hex digits
+     */
+    public Asset find(String id) throws IOException {
+
+        final Path assetDirectory = assetDirectory(id);
+        if (!Files.isDirectory(assetDirectory)) {
+            return null;
+        }
+        final Path original;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(assetDirectory, ORIGINAL + ".*")) {
+            final Iterator<Path> iterator = files.iterator();
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            original = iterator.next();
+        }
+        final FileTypeDetector.FileType fileType;
+        try (InputStream in = Files.newInputStream(original)) {
+            fileType = FileTypeDetector.getInstance().getFileType(in.readNBytes(Spooling.DETECTION_PREFIX_SIZE));
+        }
+        return new Asset(id, fileType, Files.size(original));
+    }
+
+    public Path originalFile(Asset asset) {
+        return assetDirectory(asset.id()).resolve(ORIGINAL + ThumbnailService.getFileExtension(asset.fileType()));
+    }
+
+    /**
+     * Return the stored rendition, which is created first, if it does not exist yet. The file may be deleted by the
+     * creation of other renditions of the asset, so it has to be opened right away.
+     * @throws BulkheadFullException when the conversion bulkhead of the file type is full
+     * @throws ImageTooLargeException when the original is too large to be decoded
+     * @throws PageNotFoundException when the requested page does not exist
+     */
+    public Path rendition(Asset asset, ThumbnailSpec spec) throws Exception {
+
+        final Path target = assetDirectory(asset.id()).resolve(
+            spec.width() + "x" + spec.height() + '-' + spec.quality() + '-' + spec.page() + spec.outputExtension());
+        try {
+            // least recently used order for the eviction
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            return target;
+        } catch (NoSuchFileException e) {
+            LOGGER.debug("Rendition {} of asset {} not stored yet", target.getFileName(), asset.id());
+        }
+        final Path original = originalFile(asset);
+        final ThumbnailKey key = new ThumbnailKey(asset.id(), spec.width(), spec.height(), spec.quality(), spec.outputFormat(), spec.page());
+        final Path outputFile = thumbnailCoalescer.convert(key, () -> {
+            try (ConversionBulkheads.Permit permit = conversionBulkheads.acquire(asset.fileType())) {
+                return cpuPool.call(() -> thumbnailService.createThumbnail(original, asset.fileType(), spec));
+            }
+        });
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(directory.resolve(TMP_DIR), "rendition-", null);
+            Files.move(outputFile, tmp, StandardCopyOption.REPLACE_EXISTING);
+            commit(tmp, target);
+            tmp = null;
+            LOGGER.info("Rendition {} of asset {} created", target.getFileName(), asset.id());
+            evictRenditions(target.getParent(), target);
+            return target;
+        } finally {
+            Spooling.deleteQuietly(tmp);
+            // moved or not, the thumbnail is released to the spool manager
+            spoolManager.delete(outputFile);
+        }
+    }
+
+    /**
+     * Delete the original and all renditions.
+     * @return false, when there is no asset with the id
+     */
+    public boolean delete(String id) throws IOException {
+
+        final Path assetDirectory = assetDirectory(id);
+        if (!Files.isDirectory(assetDirectory)) {
+            return false;
+        }
+        try (Stream<Path> files = Files.walk(assetDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(Spooling::deleteQuietly);
+        }
+        return true;
+    }
+
+    /**
+     * Delete the least recently used renditions above {@code max-renditions}, but never the one just created.
+     */
+    private void evictRenditions(Path assetDirectory, Path created) throws IOException {
+
+        final List<Path> renditions;
+        try (Stream<Path> files = Files.list(assetDirectory)) {
+            renditions = files
+                .filter(file -> !file.equals(created) && !file.getFileName().toString().startsWith(ORIGINAL + '.'))
+                .sorted(Comparator.comparing(AssetStore::lastModified).reversed())
+                .toList();
+        }
+        for (Path rendition : renditions.subList(Math.min(renditions.size(), maxRenditions - 1), renditions.size())) {
+            Spooling.deleteQuietly(rendition);
+            LOGGER.info("Rendition {} of asset {} evicted", rendition.getFileName(), assetDirectory.getFileName());
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0L);
+        }
+    }
+
+    private Path assetDirectory(String id) {
+        if (id == null || !ID_PATTERN.matcher(id).matches()) {
+            throw new IllegalArgumentException("Invalid asset id: " + id);
+        }
+        return directory.resolve(id.substring(0, 2)).resolve(id);
+    }
+
+    /**
+     * Force the file to disk and rename it atomically to its final name.
+     */
+    private static void commit(Path tmp, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Result of {@link #store}.
+     * @param created false, when an identical original was already stored
+     */
+    public record Stored(Asset asset, boolean created) {
+    }
+}
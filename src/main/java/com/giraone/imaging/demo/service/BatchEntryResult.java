@@ -0,0 +1,17 @@
+package com.giraone.imaging.demo.service;
+
+/**
+ * Manifest line for one entry of a batch.
+ * @param name the name of the input entry
+ * @param output the name of the thumbnail entry in the result ZIP, null if there is none
+ * @param status the outcome
+ * @param fileType the detected file type of the input
+ * @param outputByteSize the size of the thumbnail in bytes
+ * @param error the failure reason, null on success
+ */
+public record BatchEntryResult(String name, String output, Status status, String fileType, long outputByteSize, String error) {
+
+    public enum Status {
+        OK, UNSUPPORTED_FORMAT, FAILED
+    }
+}
@@ -0,0 +1,43 @@
+package com.giraone.imaging.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.imaging.demo.config.BatchProperties;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Factory for {@link ThumbnailBatch} instances sharing the batch worker pool.
+ */
+@Service
+public class BatchThumbnailService {
+
+    private final ThumbnailService thumbnailService;
+    private final ConversionBulkheads conversionBulkheads;
+    private final CpuPool cpuPool;
+    private final SpoolManager spoolManager;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService batchExecutor;
+    private final int maxEntries;
+
+    public BatchThumbnailService(ThumbnailService thumbnailService, ConversionBulkheads conversionBulkheads, CpuPool cpuPool,
+                                 SpoolManager spoolManager, ObjectMapper objectMapper,
+                                 @Qualifier("batchExecutor") ExecutorService batchExecutor, BatchProperties properties) {
+        this.thumbnailService = thumbnailService;
+        this.conversionBulkheads = conversionBulkheads;
+        this.cpuPool = cpuPool;
+        this.spoolManager = spoolManager;
+        this.objectMapper = objectMapper;
+        this.batchExecutor = batchExecutor;
+        this.maxEntries = properties.getMaxEntries();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public ThumbnailBatch newBatch(ThumbnailSpec spec) {
+        return new ThumbnailBatch(thumbnailService, conversionBulkheads, cpuPool, spoolManager, objectMapper, batchExecutor, spec);
+    }
+}
@@ -0,0 +1,113 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.demo.config.BufferPoolProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Shared pool of large heap buffers for copying request bodies to disk and result files to the response, so these
+ * paths do not allocate per request. Heap arrays are used instead of direct buffers, because all bodies are read
+ * from {@link InputStream}s, which need an array anyway.
+ * <p>
+ * A {@link #lease()} never waits: when the pool is empty a new buffer is allocated, which is kept on return only while
+ * fewer than {@code max-pooled} buffers are idle. The idle buffers are held in an array based queue, so returning
+ * a buffer does not allocate either.
+ * <p>
+ * Metrics: {@code imaging.buffers.idle} (gauge) and {@code imaging.buffers.allocated} (counter of buffers allocated
+ * because the pool was empty).
+ */
+@Component
+public class BufferPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BufferPool.class);
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> idle;
+    private final Counter allocatedCounter;
+
+    public BufferPool(BufferPoolProperties properties, MeterRegistry meterRegistry) {
+        this.bufferSize = Math.toIntExact(properties.getSize().toBytes());
+        if (bufferSize < Spooling.DETECTION_PREFIX_SIZE) {
+            throw new IllegalArgumentException("imaging.buffers.size must be at least " + Spooling.DETECTION_PREFIX_SIZE + " bytes");
+        }
+        final int maxPooled = properties.getMaxPooled() > 0 ? properties.getMaxPooled() : 4 * Runtime.getRuntime().availableProcessors();
+        this.idle = new ArrayBlockingQueue<>(maxPooled);
+        this.allocatedCounter = Counter.builder("imaging.buffers.allocated")
+            .description("Buffers allocated, because no pooled buffer was idle")
+            .register(meterRegistry);
+        Gauge.builder("imaging.buffers.idle", idle, BlockingQueue::size).register(meterRegistry);
+        LOGGER.info("Buffer pool size={}, maxPooled={}", properties.getSize(), maxPooled);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Take an idle buffer or allocate a new one. The content of the buffer is undefined.
+     */
+    public Buffer lease() {
+        byte[] array = idle.poll();
+        if (array == null) {
+            array = new byte[bufferSize];
+            allocatedCounter.increment();
+        }
+        return new Buffer(array);
+    }
+
+    /**
+     * Copy the stream until EOF with a pooled buffer. The streams are not closed.
+     * @return the number of bytes copied
+     */
+    public long copy(InputStream in, OutputStream out) throws IOException {
+        try (Buffer buffer = lease()) {
+            final byte[] array = buffer.array();
+            long total = 0L;
+            int r;
+            while ((r = in.read(array)) >= 0) {
+                out.write(array, 0, r);
+                total += r;
+            }
+            return total;
+        }
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Scoped lease of a pooled buffer, which is returned to the pool on close. The array must not be used afterward.
+     */
+    public final class Buffer implements AutoCloseable {
+
+        private byte[] array;
+
+        private Buffer(byte[] array) {
+            this.array = array;
+        }
+
+        public byte[] array() {
+            return array;
+        }
+
+        @Override
+        public void close() {
+            if (array != null) {
+                // dropped, when the pool is full
+                idle.offer(array);
+                array = null;
+            }
+        }
+    }
+}
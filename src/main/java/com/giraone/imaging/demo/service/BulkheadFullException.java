@@ -0,0 +1,13 @@
+package com.giraone.imaging.demo.service;
+
+/**
+ * Thrown, when a conversion is rejected, because the bulkhead for its format has no free slot and its
+ * wait queue is full or the maximum wait time has elapsed. Also thrown, when the memory budget for decoding
+ * does not become free in time.
+ */
+public class BulkheadFullException extends Exception {
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,158 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.config.BulkheadProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for conversions: one bulkhead (concurrency limit plus bounded wait queue) per file type,
+ * so that slow formats like PDF or MP4 cannot occupy all request threads and starve the fast image formats.
+ * Background workers (batch entries, thumbnail jobs) share the same concurrency limits, but wait without a limit.
+ * <p>
+ * Metrics: {@code imaging.bulkhead.active}, {@code imaging.bulkhead.queued} (gauges) and
+ * {@code imaging.bulkhead.rejected} (counter), all tagged with {@code format}.
+ */
+@Component
+public class ConversionBulkheads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConversionBulkheads.class);
+
+    private final boolean enabled;
+    private final long retryAfterSeconds;
+    private final Map<FileTypeDetector.FileType, Bulkhead> bulkheads = new EnumMap<>(FileTypeDetector.FileType.class);
+
+    public ConversionBulkheads(BulkheadProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.retryAfterSeconds = Math.max(1L, properties.getRetryAfter().toSeconds());
+        for (FileTypeDetector.FileType fileType : FileTypeDetector.FileType.values()) {
+            final BulkheadProperties.Limits limits = properties.limitsFor(fileType);
+            final int maxConcurrent = limits.getMaxConcurrent() > 0 ? limits.getMaxConcurrent() : Runtime.getRuntime().availableProcessors();
+            final Bulkhead bulkhead = new Bulkhead(fileType, maxConcurrent, limits.getMaxQueue(), limits.getMaxWait().toNanos(),
+                Counter.builder("imaging.bulkhead.rejected").tag("format", fileType.name()).register(meterRegistry));
+            Gauge.builder("imaging.bulkhead.active", bulkhead, Bulkhead::active).tag("format", fileType.name()).register(meterRegistry);
+            Gauge.builder("imaging.bulkhead.queued", bulkhead, Bulkhead::queued).tag("format", fileType.name()).register(meterRegistry);
+            bulkheads.put(fileType, bulkhead);
+        }
+        LOGGER.info("Conversion bulkheads enabled={}, defaults maxConcurrent={} maxQueue={}",
+            enabled, properties.getDefaults().getMaxConcurrent(), properties.getDefaults().getMaxQueue());
+    }
+
+    /**
+     * Value for the {@code Retry-After} header of rejected requests.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Wait for a free conversion slot for the file type. The returned permit has to be closed after the conversion.
+     * @throws BulkheadFullException when the wait queue is full or the maximum wait time elapsed
+     */
+    public Permit acquire(FileTypeDetector.FileType fileType) throws BulkheadFullException {
+        if (!enabled) {
+            return () -> {
+            };
+        }
+        return bulkheads.get(fileType).acquire();
+    }
+
+    /**
+     * Wait for a free conversion slot for the file type without a time limit, e.g. in a background worker, whose
+     * work must not be rejected. The waiting worker does not occupy the wait queue of the requests.
+     * The returned permit has to be closed after the conversion.
+     */
+    public Permit acquireBlocking(FileTypeDetector.FileType fileType) throws InterruptedException {
+        if (!enabled) {
+            return () -> {
+            };
+        }
+        return bulkheads.get(fileType).acquireBlocking();
+    }
+
+    /**
+     * A conversion slot.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class Bulkhead {
+
+        private final FileTypeDetector.FileType fileType;
+        private final int maxConcurrent;
+        private final int maxQueue;
+        private final long maxWaitNanos;
+        private final Semaphore slots;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicInteger waitingBlocking = new AtomicInteger();
+        private final Counter rejected;
+
+        private Bulkhead(FileTypeDetector.FileType fileType, int maxConcurrent, int maxQueue, long maxWaitNanos, Counter rejected) {
+            this.fileType = fileType;
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueue = maxQueue;
+            this.maxWaitNanos = maxWaitNanos;
+            this.slots = new Semaphore(maxConcurrent, true);
+            this.rejected = rejected;
+        }
+
+        private Permit acquire() throws BulkheadFullException {
+            try {
+                // the untimed tryAcquire() would barge ahead of the requests already waiting in the fair semaphore
+                if (slots.tryAcquire(0L, TimeUnit.NANOSECONDS)) {
+                    return slots::release;
+                }
+                if (waiting.incrementAndGet() > maxQueue) {
+                    waiting.decrementAndGet();
+                    throw reject("queue full");
+                }
+                try {
+                    if (!slots.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                        throw reject("wait time elapsed");
+                    }
+                } finally {
+                    waiting.decrementAndGet();
+                }
+                return slots::release;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw reject("interrupted");
+            }
+        }
+
+        private Permit acquireBlocking() throws InterruptedException {
+            waitingBlocking.incrementAndGet();
+            try {
+                slots.acquire();
+            } finally {
+                waitingBlocking.decrementAndGet();
+            }
+            return slots::release;
+        }
+
+        private double queued() {
+            return waiting.get() + waitingBlocking.get();
+        }
+
+        private double active() {
+            return maxConcurrent - slots.availablePermits();
+        }
+
+        private BulkheadFullException reject(String reason) {
+            rejected.increment();
+            return new BulkheadFullException("Conversion of " + fileType + " rejected: " + reason);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.giraone.imaging.demo.service;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs CPU-bound imaging work on a fixed pool of platform threads, while the caller (typically a virtual request
+ * thread) blocks cheaply until the result is available. So the number of parallel decodes is bounded by the pool
+ * size and not by the number of connected clients. Without an executor the work runs on the calling thread.
+ */
+public class CpuPool implements AutoCloseable {
+
+    /**
+     * Work that returns a result and may throw a checked exception.
+     */
+    @FunctionalInterface
+    public interface Task<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private final ExecutorService executor;
+
+    /**
+     * @param executor the pool or null to run the work on the calling thread
+     */
+    public CpuPool(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Run the task on the pool and wait for its result. Exceptions of the task are rethrown unchanged.
+     * @throws InterruptedException when the caller is interrupted while waiting, the task is cancelled then
+     */
+    public <T, E extends Exception> T call(Task<T, E> task) throws E, InterruptedException {
+
+        if (executor == null) {
+            return task.run();
+        }
+        final Future<T> future = executor.submit(task::run);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            // the task throws only E
+            @SuppressWarnings("unchecked") final E checked = (E) cause;
+            throw checked;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
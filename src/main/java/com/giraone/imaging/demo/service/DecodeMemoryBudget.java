@@ -0,0 +1,123 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.demo.config.MemoryBudgetProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control against decompression bombs and concurrent large decodes: before an image is decoded, its
+ * decoded size is estimated from the dimensions in its header and reserved from a global heap budget. Sources above
+ * the pixel limit or the complete budget are rejected, others wait until enough of the budget is free.
+ * <p>
+ * The estimate is 4 bytes per source pixel, the size of the decoded ARGB image; the scaled copies created from it
+ * are small in comparison. The budget is a semaphore counted in KiB, so that budgets beyond 2 GB are possible.
+ * <p>
+ * Metrics: {@code imaging.memory.budget.reserved} (gauge, bytes) and {@code imaging.memory.budget.rejected}
+ * (counter, tagged with {@code reason} {@code too_large} or {@code exhausted}).
+ */
+@Component
+public class DecodeMemoryBudget {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecodeMemoryBudget.class);
+
+    static final int BYTES_PER_PIXEL = 4;
+
+    private static final Reservation NO_RESERVATION = () -> {
+    };
+
+    private final boolean enabled;
+    private final long maxPixels;
+    private final long maxWaitNanos;
+    private final int budgetKiB;
+    private final Semaphore semaphore;
+    private final Counter tooLargeCounter;
+    private final Counter exhaustedCounter;
+
+    public DecodeMemoryBudget(MemoryBudgetProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.maxPixels = properties.getMaxPixels();
+        this.maxWaitNanos = properties.getMaxWait().toNanos();
+        final long budgetBytes = properties.getMaxSize().toBytes() > 0L
+            ? properties.getMaxSize().toBytes() : Runtime.getRuntime().maxMemory() / 2L;
+        this.budgetKiB = (int) Math.min(Integer.MAX_VALUE, budgetBytes / 1024L);
+        this.semaphore = new Semaphore(budgetKiB, true);
+        this.tooLargeCounter = Counter.builder("imaging.memory.budget.rejected").tag("reason", "too_large").register(meterRegistry);
+        this.exhaustedCounter = Counter.builder("imaging.memory.budget.rejected").tag("reason", "exhausted").register(meterRegistry);
+        Gauge.builder("imaging.memory.budget.reserved", this, DecodeMemoryBudget::getReservedBytes)
+            .baseUnit("bytes").register(meterRegistry);
+        LOGGER.info("Decode memory budget enabled={}, maxSize={} KiB, maxPixels={}", enabled, budgetKiB, maxPixels);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Estimated heap needed to decode an image with the given number of pixels.
+     */
+    public static long estimateBytes(long pixels) {
+        return pixels * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Check the pixel count without reserving anything, e.g. from the header in the upload prefix.
+     * @throws ImageTooLargeException when the image can never be admitted
+     */
+    public void checkPixels(long pixels) throws ImageTooLargeException {
+        if (!enabled || pixels <= 0L) {
+            return;
+        }
+        if (pixels > maxPixels) {
+            tooLargeCounter.increment();
+            throw new ImageTooLargeException("Image has " + pixels + " pixels, maximum is " + maxPixels);
+        }
+        if (toKiB(estimateBytes(pixels)) > budgetKiB) {
+            tooLargeCounter.increment();
+            throw new ImageTooLargeException("Decoding " + pixels + " pixels needs more than the memory budget of " + budgetKiB + " KiB");
+        }
+    }
+
+    /**
+     * Reserve the memory for decoding an image with the given number of pixels. The reservation has to be closed
+     * after the decoded image is no longer used.
+     * @param pixels the pixel count of the source, -1 if unknown, which reserves nothing
+     * @throws ImageTooLargeException when the image can never be admitted
+     * @throws BulkheadFullException when the budget does not become free within the maximum wait time
+     */
+    public Reservation reserve(long pixels) throws ImageTooLargeException, BulkheadFullException, InterruptedException {
+        if (!enabled || pixels <= 0L) {
+            return NO_RESERVATION;
+        }
+        checkPixels(pixels);
+        final int kiB = toKiB(estimateBytes(pixels));
+        if (!semaphore.tryAcquire(kiB, maxWaitNanos, TimeUnit.NANOSECONDS)) {
+            exhaustedCounter.increment();
+            throw new BulkheadFullException("Memory budget exhausted, " + kiB + " KiB needed, "
+                + semaphore.availablePermits() + " KiB free");
+        }
+        return () -> semaphore.release(kiB);
+    }
+
+    public long getReservedBytes() {
+        return (budgetKiB - (long) semaphore.availablePermits()) * 1024L;
+    }
+
+    private static int toKiB(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, (bytes + 1023L) / 1024L);
+    }
+
+    /**
+     * Reserved decode memory.
+     */
+    public interface Reservation extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
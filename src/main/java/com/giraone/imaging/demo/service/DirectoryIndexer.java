@@ -0,0 +1,307 @@
+package com.giraone.imaging.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.imaging.FileInfo;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.FormatNotSupportedException;
+import com.giraone.imaging.ImagingProvider;
+import com.giraone.imaging.demo.config.IndexerProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulk indexing of a directory tree: file type detection and {@link ImagingProvider#fetchFileInfo} for every regular
+ * file, written as one {@link IndexEntry} per line to a JSON-lines file. JPEG, PNG, GIF and BMP are read with the
+ * {@link ImageHeaderReader} fast path, so only their headers are read.
+ * <p>
+ * The tree is walked on a {@link ForkJoinPool}: each directory is a task, that forks a task per sub directory and per
+ * batch of files, so idle workers steal from deep or large directories. Symbolic links are not followed.
+ * <p>
+ * Runs are incremental: files whose size and modification time equal those of the previous index are not read again,
+ * their previous line is copied. Files with an error in the previous index are read again, so transient failures do not
+ * stay in the index and every error of the new index is counted in the report. The new index is written to a temporary
+ * file and replaces the previous one atomically.
+ */
+@Service
+public class DirectoryIndexer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryIndexer.class);
+
+    /**
+     * Files per task. Small enough to balance the load, large enough to keep the task overhead low.
+     */
+    static final int BATCH_SIZE = 32;
+
+    private final ImagingProvider imagingProvider = ImagingProvider.getInstance();
+    private final ObjectMapper objectMapper;
+    private final int parallelism;
+
+    public DirectoryIndexer(IndexerProperties properties, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.parallelism = properties.getThreads() > 0 ? properties.getThreads() : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Index all regular files below {@code directory} into {@code indexFile}.
+     * @throws IOException when the directory cannot be read or the index cannot be written
+     */
+    public Report index(Path directory, Path indexFile) throws IOException {
+
+        final long start = System.nanoTime();
+        final Path root = directory.toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            throw new IOException("Not a directory: " + root);
+        }
+        final Path index = indexFile.toAbsolutePath().normalize();
+        final Path tmp = index.resolveSibling(index.getFileName() + ".tmp");
+        final Map<String, Previous> previous = readIndex(index);
+        LOGGER.info("Indexing {} with {} workers, {} entries in previous index {}", root, parallelism, previous.size(), index);
+
+        final Run run;
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+             ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            run = new Run(root, Set.of(index, tmp), previous, writer);
+            pool.invoke(new DirectoryTask(run, root));
+        } catch (UncheckedIOException e) {
+            Spooling.deleteQuietly(tmp);
+            throw e.getCause();
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        final long durationMillis = Math.max(1L, (System.nanoTime() - start) / 1_000_000L);
+        final long files = run.indexed.sum() + run.unchanged.sum();
+        final Map<FileTypeDetector.FileType, Long> errorsByType = new EnumMap<>(FileTypeDetector.FileType.class);
+        run.errorsByType.forEach((fileType, count) -> errorsByType.put(fileType, count.sum()));
+        final Report report = new Report(root.toString(), index.toString(), files, run.indexed.sum(), run.unchanged.sum(),
+            previous.size() - run.matched.sum(), run.errors.sum(), errorsByType, run.directoryErrors.sum(),
+            durationMillis, files * 1000.0 / durationMillis);
+        LOGGER.info("Indexed {} files ({} changed, {} unchanged, {} errors) in {} ms, {} files/s",
+            files, report.indexed(), report.unchanged(), report.errors(), durationMillis, Math.round(report.filesPerSecond()));
+        return report;
+    }
+
+    /**
+     * Read path, size, modification time and error of each line of the previous index. Invalid lines are skipped,
+     * so that their files are indexed again.
+     */
+    Map<String, Previous> readIndex(Path index) throws IOException {
+
+        final Map<String, Previous> previous = new HashMap<>();
+        if (!Files.exists(index)) {
+            return previous;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    final JsonNode node = objectMapper.readTree(line);
+                    final JsonNode error = node.get("error");
+                    previous.put(node.get("path").asText(), new Previous(node.get("size").asLong(), node.get("lastModified").asLong(),
+                        error != null && !error.isNull(), line));
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.debug("Skipping invalid index line {}", line);
+                }
+            }
+        }
+        return previous;
+    }
+
+    private void indexFile(Run run, Path file, BasicFileAttributes attributes) {
+
+        final String path = run.root.relativize(file).toString();
+        final long size = attributes.size();
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        final Previous previous = run.previous.get(path);
+        if (previous != null) {
+            run.matched.increment();
+            if (!previous.error() && previous.size() == size && previous.lastModified() == lastModified) {
+                run.unchanged.increment();
+                run.write(previous.line());
+                return;
+            }
+        }
+
+        FileTypeDetector.FileType fileType = FileTypeDetector.FileType.UNKNOWN;
+        FileInfo fileInfo = null;
+        String error = null;
+        try (InputStream in = Files.newInputStream(file)) {
+            final byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+            fileType = FileTypeDetector.getInstance().getFileType(prefix);
+            if (ImageHeaderReader.supports(fileType)) {
+                fileInfo = new ImageHeaderReader(prefix, in).read(fileType);
+            }
+            if (fileInfo == null && fileType != FileTypeDetector.FileType.UNKNOWN) {
+                fileInfo = imagingProvider.fetchFileInfo(file.toFile());
+            }
+        } catch (IOException | FormatNotSupportedException | RuntimeException e) {
+            LOGGER.debug("Cannot index {}", file, e);
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            run.errors.increment();
+            run.errorsByType.computeIfAbsent(fileType, type -> new LongAdder()).increment();
+        }
+        run.indexed.increment();
+        try {
+            run.write(objectMapper.writeValueAsString(new IndexEntry(path, size, lastModified, fileType, fileInfo, error)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Lists one directory, forks its sub directories and its files in batches and waits for all of them.
+     */
+    private class DirectoryTask extends RecursiveAction {
+
+        private final Run run;
+        private final Path directory;
+
+        DirectoryTask(Run run, Path directory) {
+            this.run = run;
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+
+            final List<RecursiveAction> tasks = new ArrayList<>();
+            List<Path> files = new ArrayList<>(BATCH_SIZE);
+            List<BasicFileAttributes> attributes = new ArrayList<>(BATCH_SIZE);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    final BasicFileAttributes entryAttributes;
+                    try {
+                        entryAttributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        // deleted while walking
+                        continue;
+                    }
+                    if (entryAttributes.isDirectory()) {
+                        tasks.add(new DirectoryTask(run, entry));
+                    } else if (entryAttributes.isRegularFile() && !run.excluded.contains(entry)) {
+                        files.add(entry);
+                        attributes.add(entryAttributes);
+                        if (files.size() == BATCH_SIZE) {
+                            tasks.add(new FileBatchTask(run, files, attributes));
+                            files = new ArrayList<>(BATCH_SIZE);
+                            attributes = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Cannot list directory {}: {}", directory, e.getMessage());
+                run.directoryErrors.increment();
+            }
+            if (!files.isEmpty()) {
+                tasks.add(new FileBatchTask(run, files, attributes));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private class FileBatchTask extends RecursiveAction {
+
+        private final Run run;
+        private final List<Path> files;
+        private final List<BasicFileAttributes> attributes;
+
+        FileBatchTask(Run run, List<Path> files, List<BasicFileAttributes> attributes) {
+            this.run = run;
+            this.files = files;
+            this.attributes = attributes;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = 0; i < files.size(); i++) {
+                indexFile(run, files.get(i), attributes.get(i));
+            }
+        }
+    }
+
+    /**
+     * State of one index run shared by all tasks.
+     */
+    private static final class Run {
+
+        final Path root;
+        final Set<Path> excluded;
+        final Map<String, Previous> previous;
+        final BufferedWriter writer;
+        final LongAdder indexed = new LongAdder();
+        final LongAdder unchanged = new LongAdder();
+        final LongAdder matched = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder directoryErrors = new LongAdder();
+        final Map<FileTypeDetector.FileType, LongAdder> errorsByType = new ConcurrentHashMap<>();
+
+        Run(Path root, Set<Path> excluded, Map<String, Previous> previous, BufferedWriter writer) {
+            this.root = root;
+            this.excluded = excluded;
+            this.previous = previous;
+            this.writer = writer;
+        }
+
+        void write(String line) {
+            synchronized (writer) {
+                try {
+                    writer.write(line);
+                    writer.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Size, modification time and whether indexing failed of a file in the previous index and its line.
+     */
+    record Previous(long size, long lastModified, boolean error, String line) {
+    }
+
+    /**
+     * Result of an index run.
+     * @param files number of regular files found
+     * @param indexed number of new or changed files, that were read
+     * @param unchanged number of files skipped, because size and modification time were unchanged and they had no error
+     * @param removed number of files in the previous index, that were not found anymore
+     * @param errors number of files, that could not be read or whose format is not supported
+     * @param errorsByType the errors by detected file type
+     * @param directoryErrors number of directories, that could not be listed
+     * @param filesPerSecond throughput over all files including the unchanged ones
+     */
+    public record Report(String directory, String indexFile, long files, long indexed, long unchanged, long removed, long errors,
+                         Map<FileTypeDetector.FileType, Long> errorsByType, long directoryErrors, long durationMillis,
+                         double filesPerSecond) {
+    }
+}
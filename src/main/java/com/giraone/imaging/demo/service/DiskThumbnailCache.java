@@ -0,0 +1,390 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.ConversionCommand;
+import com.giraone.imaging.demo.config.DiskCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Persistent second-level cache for created thumbnails, that survives restarts. Thumbnails are stored as files named
+ * after their {@link ThumbnailKey}, so hits can be sent with zero-copy file transfer. The index is an append-only log
+ * ({@code index.log}) with one line per put or eviction, which is replayed and compacted at startup.
+ * <p>
+ * Writes are crash-safe: a thumbnail is written to {@code tmp/}, forced to disk and atomically renamed, before its
+ * line is appended to the log. A torn last line is skipped on replay. Files without a log line (crash between rename
+ * and append) are removed at the next startup after an unclean shutdown. The least recently used thumbnails are
+ * evicted, when the sum of the file sizes exceeds {@code max-size}.
+ * <p>
+ * Hits are sent from a hard link in {@code links/}, so an eviction or replacement of the entry while the response is
+ * sent does not truncate it. The container opens the link right after the controller returned, so links are deleted
+ * after {@link #LINK_MAX_AGE_MILLIS} - an open file stays readable. Expired links are swept periodically, so the files
+ * of evicted entries do not keep their disk space after the last hit. A hit is counted, when its link was created.
+ */
+@Component
+public class DiskThumbnailCache implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskThumbnailCache.class);
+
+    static final String INDEX_FILE = "index.log";
+    /**
+     * Created on a clean shutdown, deleted at startup.
+     */
+    static final String CLEAN_MARKER = "clean";
+    private static final String DATA_DIR = "data";
+    private static final String TMP_DIR = "tmp";
+    private static final String LINK_DIR = "links";
+    /**
+     * Age, after which a link is deleted. Links are opened in milliseconds, so this only covers stalled requests.
+     */
+    static final long LINK_MAX_AGE_MILLIS = 60_000L;
+    private static final String PUT = "P";
+    private static final String DELETE = "D";
+    /**
+     * Last character of every complete log line.
+     */
+    private static final char END_OF_LINE = ';';
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxBytes;
+    /**
+     * Entries in least recently used order. All fields below are guarded by {@code this}.
+     */
+    private final LinkedHashMap<ThumbnailKey, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long totalBytes;
+    private long logLines;
+    private BufferedWriter log;
+
+    private final AtomicLong linkCounter = new AtomicLong();
+    private final Queue<Link> links = new ConcurrentLinkedQueue<>();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    public DiskThumbnailCache(DiskCacheProperties properties, MeterRegistry meterRegistry) throws IOException {
+        this.enabled = properties.isEnabled();
+        this.directory = properties.getDirectory();
+        this.maxBytes = properties.getMaxSize().toBytes();
+        this.hitCounter = Counter.builder("imaging.disk.cache.hits").register(meterRegistry);
+        this.missCounter = Counter.builder("imaging.disk.cache.misses").register(meterRegistry);
+        this.evictionCounter = Counter.builder("imaging.disk.cache.evictions").register(meterRegistry);
+        Gauge.builder("imaging.disk.cache.size", this, DiskThumbnailCache::getTotalBytes).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("imaging.disk.cache.entries", this, DiskThumbnailCache::getEntryCount).register(meterRegistry);
+        if (enabled) {
+            open();
+        }
+        LOGGER.info("Disk thumbnail cache enabled={}, directory={}, maxSize={}", enabled, directory, properties.getMaxSize());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Return the cached thumbnail file or null, if there is none. Only misses are counted here, hits are counted by
+     * {@link #link}, because the entry may still be evicted before.
+     */
+    public Entry get(ThumbnailKey key) {
+
+        if (!enabled || key == null) {
+            return null;
+        }
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            missCounter.increment();
+            return null;
+        }
+        if (!Files.isRegularFile(entry.file())) {
+            LOGGER.warn("Cached thumbnail {} was deleted externally", entry.file());
+            synchronized (this) {
+                if (entries.remove(key, entry)) {
+                    totalBytes -= entry.size();
+                    appendLog(DELETE, key, 0L);
+                }
+            }
+            missCounter.increment();
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Store a copy of the thumbnail file. Failures are only logged, the source file is never changed.
+     * @return the cache entry or null, when the thumbnail was not stored
+     */
+    public Entry put(ThumbnailKey key, String contentType, Path source) {
+
+        if (!enabled || key == null) {
+            return null;
+        }
+        sweepLinks();
+        Path tmp = null;
+        try {
+            final long size = Files.size(source);
+            if (size > maxBytes) {
+                return null;
+            }
+            tmp = Files.createTempFile(directory.resolve(TMP_DIR), "put-", null);
+            Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            final Path target = fileOf(key);
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            final Entry entry = new Entry(target, contentType, size);
+            synchronized (this) {
+                final Entry previous = entries.put(key, entry);
+                totalBytes += size - (previous != null ? previous.size() : 0L);
+                appendLog(PUT, key, size);
+                evict();
+            }
+            return entry;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot store thumbnail in disk cache", e);
+            return null;
+        } finally {
+            Spooling.deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Create a hard link to the file of the entry, which is not affected by a later eviction or replacement of the
+     * entry. The link has to be opened right away, e.g. by sendfile of the container, or be deleted by the caller.
+     * Links are deleted after {@link #LINK_MAX_AGE_MILLIS}. Counts a hit, when the link was created, a miss otherwise.
+     * @return the link or null, when the entry was evicted in the meantime or links are not supported
+     */
+    public Path link(Entry entry) {
+
+        sweepLinks();
+        final Path link = directory.resolve(LINK_DIR).resolve(linkCounter.incrementAndGet() + "-" + entry.file().getFileName());
+        try {
+            Files.createLink(link, entry.file());
+        } catch (NoSuchFileException e) {
+            LOGGER.debug("Cached thumbnail {} was evicted before it was sent", entry.file());
+            missCounter.increment();
+            return null;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warn("Cannot link cached thumbnail {}", entry.file(), e);
+            missCounter.increment();
+            return null;
+        }
+        links.add(new Link(link, System.currentTimeMillis()));
+        hitCounter.increment();
+        return link;
+    }
+
+    /**
+     * Delete the links older than {@link #LINK_MAX_AGE_MILLIS}, which frees the files of entries evicted meanwhile.
+     */
+    @Scheduled(fixedDelay = LINK_MAX_AGE_MILLIS)
+    public void sweepLinks() {
+        deleteExpiredLinks(System.currentTimeMillis() - LINK_MAX_AGE_MILLIS);
+    }
+
+    void deleteExpiredLinks(long createdBefore) {
+        Link link;
+        while ((link = links.peek()) != null && link.created() < createdBefore && links.remove(link)) {
+            Spooling.deleteQuietly(link.file());
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+            Files.createFile(directory.resolve(CLEAN_MARKER));
+        }
+    }
+
+    private void open() throws IOException {
+
+        final long start = System.nanoTime();
+        Files.createDirectories(directory.resolve(DATA_DIR));
+        Files.createDirectories(directory.resolve(TMP_DIR));
+        Files.createDirectories(directory.resolve(LINK_DIR));
+        // interrupted writes and links of the last run
+        for (String transientDir : new String[]{TMP_DIR, LINK_DIR}) {
+            try (Stream<Path> files = Files.list(directory.resolve(transientDir))) {
+                files.forEach(Spooling::deleteQuietly);
+            }
+        }
+        final boolean clean = Files.deleteIfExists(directory.resolve(CLEAN_MARKER));
+        synchronized (this) {
+            final Path index = directory.resolve(INDEX_FILE);
+            if (Files.exists(index)) {
+                replay(index);
+            }
+            if (!clean) {
+                deleteOrphans();
+            }
+            evict();
+            compact();
+        }
+        LOGGER.info("Disk thumbnail cache loaded {} entries with {} bytes in {} ms, clean shutdown={}",
+            entries.size(), totalBytes, (System.nanoTime() - start) / 1_000_000L, clean);
+    }
+
+    private void replay(Path index) throws IOException {
+
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.charAt(line.length() - 1) != END_OF_LINE) {
+                    // torn line of a crash
+                    skipped++;
+                    continue;
+                }
+                final String[] fields = line.substring(0, line.length() - 1).split(" ");
+                try {
+                    final ThumbnailKey key = new ThumbnailKey(fields[1], Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                        ConversionCommand.CompressionQuality.valueOf(fields[4]), fields[5], Integer.parseInt(fields[6]));
+                    final Entry previous = switch (fields[0]) {
+                        case PUT -> entries.put(key, new Entry(fileOf(key), key.outputFormat(), Long.parseLong(fields[7])));
+                        case DELETE -> entries.remove(key);
+                        default -> throw new IllegalArgumentException("Unknown operation " + fields[0]);
+                    };
+                    totalBytes += (PUT.equals(fields[0]) ? Long.parseLong(fields[7]) : 0L) - (previous != null ? previous.size() : 0L);
+                } catch (RuntimeException e) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            LOGGER.warn("Skipped {} invalid lines of {}", skipped, index);
+        }
+    }
+
+    /**
+     * Delete thumbnail files, that are not in the index.
+     */
+    private void deleteOrphans() throws IOException {
+
+        final Set<Path> known = new HashSet<>(entries.size() * 2);
+        entries.values().forEach(entry -> known.add(entry.file()));
+        try (Stream<Path> files = Files.walk(directory.resolve(DATA_DIR))) {
+            files.filter(Files::isRegularFile)
+                .filter(file -> !known.contains(file))
+                .forEach(Spooling::deleteQuietly);
+        }
+    }
+
+    /**
+     * Rewrite the log with one line per entry in least recently used order and replace it atomically.
+     */
+    private void compact() throws IOException {
+
+        if (log != null) {
+            log.close();
+        }
+        final Path compacted = directory.resolve(INDEX_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Map.Entry<ThumbnailKey, Entry> entry : entries.entrySet()) {
+                writer.write(logLine(PUT, entry.getKey(), entry.getValue().size()));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(compacted, directory.resolve(INDEX_FILE), StandardCopyOption.ATOMIC_MOVE);
+        logLines = entries.size();
+        log = Files.newBufferedWriter(directory.resolve(INDEX_FILE), StandardCharsets.UTF_8,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void evict() {
+
+        final Iterator<Map.Entry<ThumbnailKey, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<ThumbnailKey, Entry> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue().size();
+            Spooling.deleteQuietly(eldest.getValue().file());
+            appendLog(DELETE, eldest.getKey(), 0L);
+            evictionCounter.increment();
+        }
+    }
+
+    /**
+     * Append to the log, which is compacted when it has grown to twice the number of entries.
+     * The line is not forced to disk, a lost line only leaves an orphan file or a dangling entry.
+     */
+    private void appendLog(String operation, ThumbnailKey key, long size) {
+
+        if (log == null) {
+            return;
+        }
+        try {
+            log.write(logLine(operation, key, size));
+            log.flush();
+            if (++logLines > 2L * entries.size() + 1000L) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write disk cache index", e);
+        }
+    }
+
+    private static String logLine(String operation, ThumbnailKey key, long size) {
+        return operation + ' ' + key.contentHash() + ' ' + key.width() + ' ' + key.height() + ' ' + key.quality()
+            + ' ' + key.outputFormat() + ' ' + key.page() + (PUT.equals(operation) ? " " + size : "") + END_OF_LINE + '\n';
+    }
+
+    /**
+     * {@code data/<first two hash digits>/<hash>-<width>x<height>-<quality>-<page>.<format>}
+     */
+    private Path fileOf(ThumbnailKey key) {
+        final String format = key.outputFormat().substring(key.outputFormat().indexOf('/') + 1);
+        return directory.resolve(DATA_DIR).resolve(key.contentHash().substring(0, 2)).resolve(
+            key.contentHash() + '-' + key.width() + 'x' + key.height() + '-' + key.quality() + '-' + key.page() + '.' + format);
+    }
+
+    /**
+     * A cached thumbnail file with its content type and size.
+     */
+    public record Entry(Path file, String contentType, long size) {
+    }
+
+    private record Link(Path file, long created) {
+    }
+}
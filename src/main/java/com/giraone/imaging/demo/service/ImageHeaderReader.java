@@ -0,0 +1,228 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileInfo;
+import com.giraone.imaging.FileTypeDetector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static com.giraone.imaging.MimeTypes.IMAGE_GIF;
+import static com.giraone.imaging.MimeTypes.IMAGE_JPEG;
+import static com.giraone.imaging.MimeTypes.IMAGE_PNG;
+
+/**
+ * Reads width, height and bits per pixel of JPEG (SOF marker), PNG (IHDR chunk), GIF (logical screen descriptor)
+ * and BMP (info header) from the beginning of a stream. Only the bytes up to the end of the needed header are read,
+ * at most {@link #MAX_HEADER_SIZE}. All bytes read are kept, so the caller can fall back to processing the complete
+ * content with {@link #getBytesRead()} followed by the rest of the stream.
+ * Instances are not thread-safe and read the stream only once.
+ */
+public class ImageHeaderReader {
+
+    /**
+     * Upper limit for the bytes read while looking for the header. JPEG files with large EXIF or ICC segments
+     * may have their SOF marker behind this limit and are handled by the provider then.
+     */
+    public static final int MAX_HEADER_SIZE = 256 * 1024;
+
+    static final String IMAGE_BMP = "image/bmp";
+
+    private final InputStream in;
+    private byte[] buffer;
+    /**
+     * True, while the buffer is the one passed by the caller, which must not be returned.
+     */
+    private boolean borrowed;
+    private int length;
+
+    /**
+     * @param prefix bytes already read from the stream, e.g. for file type detection
+     * @param in     the rest of the stream
+     */
+    public ImageHeaderReader(byte[] prefix, InputStream in) {
+        this.in = in;
+        this.buffer = prefix;
+        this.length = prefix.length;
+    }
+
+    /**
+     * @param prefix bytes already read from the stream, e.g. for file type detection
+     * @param in     the rest of the stream
+     * @param buffer buffer for the bytes read, e.g. from the {@link BufferPool}, so most headers are read without
+     *               growing a buffer; it is only used while the caller keeps it
+     */
+    public ImageHeaderReader(byte[] prefix, InputStream in, byte[] buffer) {
+        this(prefix, in);
+        if (buffer.length > prefix.length) {
+            System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+            this.buffer = buffer;
+            this.borrowed = true;
+        }
+    }
+
+    /**
+     * True, if {@link #read(FileTypeDetector.FileType)} can handle the file type.
+     */
+    public static boolean supports(FileTypeDetector.FileType fileType) {
+        return switch (fileType) {
+            case JPEG, PNG, GIF, BMP -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Read the header. The compression format is not set, because its values are specific to the imaging provider.
+     *
+     * @return the file info with MIME type, provider format, width, height and bits per pixel or null, if the file type
+     * is not supported, the header is invalid or not found within {@link #MAX_HEADER_SIZE}
+     */
+    public FileInfo read(FileTypeDetector.FileType fileType) throws IOException {
+        final FileInfo fileInfo = switch (fileType) {
+            case JPEG -> readJpeg();
+            case PNG -> readPng();
+            case GIF -> readGif();
+            case BMP -> readBmp();
+            default -> null;
+        };
+        if (fileInfo != null) {
+            fileInfo.setProviderFormat(fileType.name());
+        }
+        return fileInfo;
+    }
+
+    /**
+     * All bytes read from the stream so far including the prefix.
+     */
+    public byte[] getBytesRead() {
+        return length == buffer.length && !borrowed ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    public int getBytesReadCount() {
+        return length;
+    }
+
+    private FileInfo readJpeg() throws IOException {
+        int pos = 2; // after SOI
+        while (ensure(pos + 4)) {
+            if ((buffer[pos] & 0xff) != 0xff) {
+                return null;
+            }
+            final int marker = buffer[pos + 1] & 0xff;
+            if (marker == 0xff) {
+                pos++; // fill byte
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xd0 && marker <= 0xd8)) {
+                pos += 2; // markers without length
+                continue;
+            }
+            if (marker == 0xd9 || marker == 0xda) {
+                return null; // EOI or start of scan without frame header
+            }
+            if (marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc) {
+                // SOFn: length(2) precision(1) height(2) width(2) components(1)
+                if (!ensure(pos + 10)) {
+                    return null;
+                }
+                final int precision = buffer[pos + 4] & 0xff;
+                final int components = buffer[pos + 9] & 0xff;
+                return fileInfo(IMAGE_JPEG, readUInt16BE(pos + 7), readUInt16BE(pos + 5), precision * components);
+            }
+            pos += 2 + readUInt16BE(pos + 2);
+        }
+        return null;
+    }
+
+    private FileInfo readPng() throws IOException {
+        // signature(8) length(4) "IHDR"(4) width(4) height(4) bit depth(1) color type(1)
+        if (!ensure(26) || buffer[12] != 'I' || buffer[13] != 'H' || buffer[14] != 'D' || buffer[15] != 'R') {
+            return null;
+        }
+        final int bitDepth = buffer[24] & 0xff;
+        final int channels = switch (buffer[25]) {
+            case 2 -> 3; // RGB
+            case 4 -> 2; // gray + alpha
+            case 6 -> 4; // RGBA
+            default -> 1; // gray, palette
+        };
+        return fileInfo(IMAGE_PNG, readInt32BE(16), readInt32BE(20), bitDepth * channels);
+    }
+
+    private FileInfo readGif() throws IOException {
+        // signature(6) width(2) height(2) packed fields(1)
+        if (!ensure(11)) {
+            return null;
+        }
+        final int packed = buffer[10] & 0xff;
+        // size of the global color table, if present, otherwise the color resolution
+        final int bitsPerPixel = (packed & 0x80) != 0 ? (packed & 0x07) + 1 : ((packed >> 4) & 0x07) + 1;
+        return fileInfo(IMAGE_GIF, readUInt16LE(6), readUInt16LE(8), bitsPerPixel);
+    }
+
+    private FileInfo readBmp() throws IOException {
+        // file header(14) header size(4), then OS/2 core header or Windows info header
+        if (!ensure(18)) {
+            return null;
+        }
+        final int headerSize = readInt32LE(14);
+        if (headerSize == 12) {
+            return ensure(26) ? fileInfo(IMAGE_BMP, readUInt16LE(18), readUInt16LE(20), readUInt16LE(24)) : null;
+        }
+        if (headerSize < 40 || !ensure(30)) {
+            return null;
+        }
+        // negative height means top-down
+        return fileInfo(IMAGE_BMP, readInt32LE(18), Math.abs(readInt32LE(22)), readUInt16LE(28));
+    }
+
+    private static FileInfo fileInfo(String mimeType, int width, int height, int bitsPerPixel) {
+        if (width <= 0 || height <= 0 || bitsPerPixel <= 0) {
+            return null;
+        }
+        final FileInfo fileInfo = new FileInfo();
+        fileInfo.setMimeType(mimeType);
+        fileInfo.setWidth(width);
+        fileInfo.setHeight(height);
+        fileInfo.setBitsPerPixel(bitsPerPixel);
+        return fileInfo;
+    }
+
+    /**
+     * Read from the stream until at least {@code size} bytes are available.
+     *
+     * @return false on end of stream or when {@code size} exceeds {@link #MAX_HEADER_SIZE}
+     */
+    private boolean ensure(int size) throws IOException {
+        if (size <= length) {
+            return true;
+        }
+        if (size > MAX_HEADER_SIZE) {
+            return false;
+        }
+        if (size > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(MAX_HEADER_SIZE, Math.max(size, 2 * buffer.length)));
+            borrowed = false;
+        }
+        // read only what is needed, so the stream is left right behind the header
+        final int r = in.readNBytes(buffer, length, size - length);
+        length += r;
+        return size <= length;
+    }
+
+    private int readUInt16BE(int pos) {
+        return ((buffer[pos] & 0xff) << 8) | (buffer[pos + 1] & 0xff);
+    }
+
+    private int readUInt16LE(int pos) {
+        return (buffer[pos] & 0xff) | ((buffer[pos + 1] & 0xff) << 8);
+    }
+
+    private int readInt32BE(int pos) {
+        return (readUInt16BE(pos) << 16) | readUInt16BE(pos + 2);
+    }
+
+    private int readInt32LE(int pos) {
+        return readUInt16LE(pos) | (readUInt16LE(pos + 2) << 16);
+    }
+}
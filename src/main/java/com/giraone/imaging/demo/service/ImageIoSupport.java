@@ -0,0 +1,175 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.ConversionCommand;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Scaling and encoding helpers for decoded images, used where the image has to be processed in memory
+ * instead of going through a {@link com.giraone.imaging.ThumbnailProvider} once per output.
+ */
+public final class ImageIoSupport {
+
+    private ImageIoSupport() {
+    }
+
+    /**
+     * Compute the size of an image scaled to fit into a bounding box keeping the aspect ratio. Images are never enlarged.
+     */
+    public static Dimension fitInto(int sourceWidth, int sourceHeight, Dimension box) {
+        final double scale = Math.min(1.0, Math.min((double) box.width / sourceWidth, (double) box.height / sourceHeight));
+        return new Dimension(Math.max(1, (int) Math.round(sourceWidth * scale)), Math.max(1, (int) Math.round(sourceHeight * scale)));
+    }
+
+    /**
+     * Downscale an image to the given size. Scaling is done in steps of at most 50 percent, which gives a result
+     * comparable to area averaging, but with the speed of bilinear interpolation.
+     */
+    public static BufferedImage scaleDown(BufferedImage source, Dimension target) {
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(target.width, width / 2);
+            height = Math.max(target.height, height / 2);
+            current = drawScaled(current, width, height);
+        } while (width != target.width || height != target.height);
+        return current;
+    }
+
+    /**
+     * Draw an image into a new image of the given size using bilinear interpolation. Images with alpha are drawn into
+     * an ARGB image, so transparency survives the scaling; {@link #write} removes it only when encoding as JPEG.
+     */
+    public static BufferedImage drawScaled(BufferedImage source, int width, int height) {
+        return source.getColorModel().hasAlpha()
+            ? draw(source, width, height, BufferedImage.TYPE_INT_ARGB, null)
+            : draw(source, width, height, BufferedImage.TYPE_INT_RGB, Color.WHITE);
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, int type, Color background) {
+        final BufferedImage result = new BufferedImage(width, height, type);
+        final Graphics2D g = result.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (background != null) {
+                g.setColor(background);
+                g.fillRect(0, 0, width, height);
+            }
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * Encode an image as PNG (for {@code LOSSLESS}) or as JPEG with a quality matching the compression quality.
+     * For JPEG, transparent areas become white.
+     */
+    public static void write(BufferedImage image, ConversionCommand.CompressionQuality quality, OutputStream out) throws IOException {
+
+        if (quality == ConversionCommand.CompressionQuality.LOSSLESS) {
+            ImageIO.write(image, "png", out);
+            return;
+        }
+        if (image.getColorModel().hasAlpha()) {
+            image = draw(image, image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB, Color.WHITE);
+        }
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality(quality));
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    static float jpegQuality(ConversionCommand.CompressionQuality quality) {
+        return switch (quality) {
+            case LOSSY_SPEED -> 0.6f;
+            case LOSSY_BEST -> 0.92f;
+            default -> 0.8f;
+        };
+    }
+
+    /**
+     * Read the number of pixels of the first image of a file from its header without decoding it.
+     *
+     * @return the pixel count or -1, if the format cannot be read by ImageIO (e.g. PDF, video)
+     */
+    public static long readPixelCount(Path file) {
+        final Dimension dimension = readDimension(file);
+        return dimension != null ? (long) dimension.width * dimension.height : -1L;
+    }
+
+    /**
+     * Read the size of the first image of a file from its header without decoding it.
+     *
+     * @return the size or null, if the format cannot be read by ImageIO (e.g. PDF, video)
+     */
+    public static Dimension readDimension(Path file) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            final ImageReader reader = reader(in);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Decode the first image of a file using only every {@code factor}-th pixel of every {@code factor}-th row.
+     * Memory and the work after the entropy decoding shrink by {@code factor}&sup2;.
+     *
+     * @throws IOException when the file cannot be decoded by ImageIO, e.g. CMYK JPEGs
+     */
+    public static BufferedImage readSubsampled(Path file, int factor) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            final ImageReader reader = reader(in);
+            if (reader == null) {
+                throw new IOException("No ImageIO reader for " + file);
+            }
+            try {
+                final ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static ImageReader reader(ImageInputStream in) {
+        final Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+        if (readers == null || !readers.hasNext()) {
+            return null;
+        }
+        final ImageReader reader = readers.next();
+        reader.setInput(in, true, true);
+        return reader;
+    }
+}
@@ -0,0 +1,11 @@
+package com.giraone.imaging.demo.service;
+
+/**
+ * Thrown, when the source image has more pixels than allowed or its decoded size exceeds the complete memory budget.
+ */
+public class ImageTooLargeException extends Exception {
+
+    public ImageTooLargeException(String message) {
+        super(message);
+    }
+}
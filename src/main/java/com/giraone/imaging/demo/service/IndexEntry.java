@@ -0,0 +1,17 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileInfo;
+import com.giraone.imaging.FileTypeDetector;
+
+/**
+ * Line of the directory index for one file.
+ * @param path the path relative to the indexed directory
+ * @param size the file size in bytes when it was indexed
+ * @param lastModified the modification time in epoch milliseconds when it was indexed
+ * @param fileType the detected file type
+ * @param fileInfo the file information, null for unknown file types and on failure
+ * @param error the failure reason, null on success
+ */
+public record IndexEntry(String path, long size, long lastModified, FileTypeDetector.FileType fileType, FileInfo fileInfo,
+                         String error) {
+}
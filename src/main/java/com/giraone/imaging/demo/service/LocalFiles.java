@@ -0,0 +1,216 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.config.LocalFilesProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Access to files on the server's file system, which are named by the client instead of being uploaded. Only files
+ * below the configured roots can be read and only directories below the output roots can be written. The normalized
+ * path is checked before the file system is accessed, so paths outside the roots cannot be probed. Then paths are
+ * resolved to their real path (all symbolic links followed) and checked again, so links cannot escape a root.
+ */
+@Service
+public class LocalFiles {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalFiles.class);
+
+    /**
+     * Permissions of written files, where the file system supports them: those of {@code umask 022}.
+     */
+    private static final Set<PosixFilePermission> OUTPUT_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+
+    private final List<Path> roots;
+    private final List<Path> outputRoots;
+    // the configured roots, which may differ from the real ones, if they contain symbolic links
+    private final List<Path> configuredRoots;
+    private final List<Path> configuredOutputRoots;
+    private final SpoolManager spoolManager;
+
+    public LocalFiles(LocalFilesProperties properties, SpoolManager spoolManager) {
+        this.spoolManager = spoolManager;
+        this.roots = realPaths(properties.getRoots());
+        this.outputRoots = realPaths(properties.getOutputRoots());
+        this.configuredRoots = normalizedPaths(properties.getRoots());
+        this.configuredOutputRoots = normalizedPaths(properties.getOutputRoots());
+        LOGGER.info("Local files roots={}, outputRoots={}", roots, outputRoots);
+    }
+
+    public boolean isEnabled() {
+        return !roots.isEmpty();
+    }
+
+    /**
+     * Resolve a client supplied path of an input file.
+     * @param path absolute path of a regular file below one of the roots
+     * @return the real path of the file
+     * @throws NoSuchFileException when the file does not exist, is no regular file or is not below one of the roots,
+     * which are not distinguished, so that clients cannot probe for files outside the roots
+     * @throws IllegalArgumentException when the path is invalid or relative
+     */
+    public Path resolveInput(String path) throws IOException {
+
+        final Path normalized = absolute(path).normalize();
+        if (!isBelow(normalized, roots) && !isBelow(normalized, configuredRoots)) {
+            throw new NoSuchFileException(path);
+        }
+        final Path file;
+        try {
+            file = normalized.toRealPath();
+        } catch (IOException e) {
+            throw new NoSuchFileException(path);
+        }
+        if (!isBelow(file, roots) || !Files.isRegularFile(file)) {
+            throw new NoSuchFileException(path);
+        }
+        return file;
+    }
+
+    /**
+     * Resolve a client supplied path of an output file. The file may exist and is replaced then.
+     * @param path absolute path of a file in an existing directory below one of the output roots
+     * @return the path of the file in the real path of its directory
+     * @throws NoSuchFileException when the directory does not exist
+     * @throws AccessDeniedException when the directory is not below one of the output roots or the file is a link or directory
+     * @throws IllegalArgumentException when the path is invalid or relative
+     */
+    public Path resolveOutput(String path) throws IOException {
+
+        final Path file = absolute(path).normalize();
+        if (file.getFileName() == null || file.getParent() == null) {
+            throw new IllegalArgumentException("No file name in " + path);
+        }
+        if (!isBelow(file, outputRoots) && !isBelow(file, configuredOutputRoots)) {
+            throw new AccessDeniedException(path, null, "not below an allowed output root");
+        }
+        final Path target = file.getParent().toRealPath().resolve(file.getFileName());
+        if (!isBelow(target, outputRoots)) {
+            throw new AccessDeniedException(path, null, "not below an allowed output root");
+        }
+        if (Files.isSymbolicLink(target) || Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+            throw new AccessDeniedException(path, null, "link or directory");
+        }
+        return target;
+    }
+
+    /**
+     * The input file as needed by the thumbnail providers, which choose the decoder by the file extension.
+     * If the file has the extension of its type, it is used directly, otherwise a temporary symbolic link with
+     * the proper extension is created in the spool directory, so the content is never copied.
+     * @return the file to read, to be closed by the caller to delete the link
+     */
+    public Input withExtension(Path file, FileTypeDetector.FileType fileType) throws IOException {
+
+        final String extension = ThumbnailService.getFileExtension(fileType);
+        if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(extension)) {
+            return new Input(file, null);
+        }
+        final Path link = spoolManager.createFile("file-in-", extension);
+        try {
+            Files.delete(link);
+            return new Input(Files.createSymbolicLink(link, file), spoolManager);
+        } catch (IOException e) {
+            spoolManager.delete(link);
+            throw e;
+        }
+    }
+
+    /**
+     * Move the created file to the target, atomically replacing an existing file. Across file systems the file is
+     * copied to a temporary file next to the target first. The file gets the permissions of the replaced file or
+     * {@code rw-r--r--}, not the owner-only permissions of a temporary file.
+     */
+    public static void moveTo(Path source, Path target) throws IOException {
+
+        setOutputPermissions(source, target);
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            final Path tmp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+            try {
+                Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Spooling.deleteQuietly(tmp);
+            }
+            Spooling.deleteQuietly(source);
+        }
+    }
+
+    private static void setOutputPermissions(Path source, Path target) throws IOException {
+
+        if (!Files.getFileStore(source).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            return;
+        }
+        Set<PosixFilePermission> permissions;
+        try {
+            permissions = Files.getPosixFilePermissions(target, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            permissions = OUTPUT_PERMISSIONS;
+        }
+        Files.setPosixFilePermissions(source, permissions);
+    }
+
+    private static Path absolute(String path) {
+        final Path result = Path.of(path);
+        if (!result.isAbsolute()) {
+            throw new IllegalArgumentException("Path is not absolute: " + path);
+        }
+        return result;
+    }
+
+    private static boolean isBelow(Path path, List<Path> directories) {
+        return directories.stream().anyMatch(path::startsWith);
+    }
+
+    private static List<Path> normalizedPaths(List<Path> directories) {
+        return directories.stream().map(directory -> directory.toAbsolutePath().normalize()).toList();
+    }
+
+    private static List<Path> realPaths(List<Path> directories) {
+        final List<Path> result = new ArrayList<>(directories.size());
+        for (Path directory : directories) {
+            try {
+                result.add(directory.toRealPath());
+            } catch (IOException e) {
+                LOGGER.warn("Ignoring local files root {}: {}", directory, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * An input file, which is deleted on close, when it is a temporary link owned by the spool manager.
+     */
+    public record Input(Path file, SpoolManager spoolManager) implements AutoCloseable {
+
+        public boolean link() {
+            return spoolManager != null;
+        }
+
+        @Override
+        public void close() {
+            if (spoolManager != null) {
+                spoolManager.delete(file);
+            }
+        }
+    }
+}
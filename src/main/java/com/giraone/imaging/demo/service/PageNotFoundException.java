@@ -0,0 +1,11 @@
+package com.giraone.imaging.demo.service;
+
+/**
+ * Thrown, when a requested page does not exist in the source, e.g. page 3 of a two page PDF or page 2 of a JPEG.
+ */
+public class PageNotFoundException extends Exception {
+
+    public PageNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,274 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.demo.config.PdfPagesProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Renders selected pages of a PDF as thumbnails in parallel using PDFBox. A {@link PDDocument} must not be used by
+ * more than one thread, so each worker opens its own document from the spooled file and takes the next page to render
+ * from a shared counter. The number of workers per request is limited by the size of the shared page executor.
+ * <p>
+ * The render time of each page is recorded as {@code imaging.pdf.page.render}.
+ */
+@Service
+public class PdfPageService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PdfPageService.class);
+
+    /**
+     * Space between and around the pages of a contact sheet in pixels.
+     */
+    static final int CONTACT_SHEET_GAP = 8;
+
+    private final ExecutorService pdfPageExecutor;
+    private final DecodeMemoryBudget decodeMemoryBudget;
+    private final Timer pageRenderTimer;
+    private final int parallelism;
+    private final int maxPages;
+
+    public PdfPageService(@Qualifier("pdfPageExecutor") ExecutorService pdfPageExecutor, DecodeMemoryBudget decodeMemoryBudget,
+                          PdfPagesProperties properties, MeterRegistry meterRegistry) {
+        this.pdfPageExecutor = pdfPageExecutor;
+        this.decodeMemoryBudget = decodeMemoryBudget;
+        this.pageRenderTimer = Timer.builder("imaging.pdf.page.render")
+            .description("Time to render a single PDF page")
+            .register(meterRegistry);
+        this.parallelism = properties.getThreads() > 0 ? properties.getThreads() : Runtime.getRuntime().availableProcessors();
+        this.maxPages = properties.getMaxPages();
+    }
+
+    /**
+     * Parse a page selection like {@code "all"}, {@code "3"}, {@code "1-5"}, {@code "10-"} or a comma separated list
+     * of these. Pages are returned in the requested order without duplicates.
+     * @throws IllegalArgumentException for invalid selections and when more than {@code max-pages} are selected
+     * @throws PageNotFoundException when a selected page is after the last page of the document
+     */
+    public List<Integer> parsePages(String pages, int pageCount) throws PageNotFoundException {
+
+        final Set<Integer> result = new LinkedHashSet<>();
+        if (pages == null || pages.isBlank() || pages.trim().equalsIgnoreCase("all")) {
+            for (int page = 1; page <= pageCount; page++) {
+                result.add(page);
+            }
+        } else {
+            for (String item : pages.split(",")) {
+                item = item.trim();
+                if (item.isEmpty()) {
+                    continue;
+                }
+                final int dash = item.indexOf('-');
+                try {
+                    final int first = Integer.parseInt((dash < 0 ? item : item.substring(0, dash)).trim());
+                    final String lastStr = dash < 0 ? item : item.substring(dash + 1).trim();
+                    final int last = lastStr.isEmpty() ? pageCount : Integer.parseInt(lastStr);
+                    if (first < 1 || last < first) {
+                        throw new IllegalArgumentException("Invalid pages: " + item);
+                    }
+                    if (last > pageCount) {
+                        throw new PageNotFoundException("Pages " + item + " not found, the document has " + pageCount + " pages");
+                    }
+                    for (int page = first; page <= last; page++) {
+                        result.add(page);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid pages: " + item, e);
+                }
+            }
+        }
+        if (result.isEmpty() || result.size() > maxPages) {
+            throw new IllegalArgumentException("Between 1 and " + maxPages + " pages required, got " + result.size());
+        }
+        return new ArrayList<>(result);
+    }
+
+    public int countPages(Path pdfFile) throws IOException {
+        try (PDDocument document = Loader.loadPDF(pdfFile.toFile())) {
+            return document.getNumberOfPages();
+        }
+    }
+
+    /**
+     * Render a single page on the calling thread, so that it fits into the thumbnail size, and write it in the output
+     * format of the spec. The heap for the page is reserved from the memory budget until it is written.
+     * @param page 1-based page number
+     * @throws PageNotFoundException when the page does not exist
+     * @throws ImageTooLargeException when the page would not fit into the memory budget
+     * @throws BulkheadFullException when the memory budget does not become free in time
+     */
+    public void writePage(Path pdfFile, int page, ThumbnailSpec spec, OutputStream out)
+        throws IOException, PageNotFoundException, ImageTooLargeException, BulkheadFullException, InterruptedException {
+
+        try (PDDocument document = Loader.loadPDF(pdfFile.toFile())) {
+            if (page < 1 || page > document.getNumberOfPages()) {
+                throw new PageNotFoundException("Page " + page + " not found, the file has " + document.getNumberOfPages() + " pages");
+            }
+            final Dimension box = spec.dimension();
+            try (DecodeMemoryBudget.Reservation reservation = decodeMemoryBudget.reserve((long) box.width * box.height)) {
+                ImageIoSupport.write(renderPage(document, new PDFRenderer(document), page, box), spec.quality(), out);
+            }
+        }
+    }
+
+    /**
+     * Render the pages so that each fits into the bounding box. Pages are vector graphics, so small pages are
+     * enlarged, too. The heap for all rendered pages and {@code extraPixels} is reserved from the memory budget until
+     * the result is closed, so it has to be closed after the pages are written.
+     * @param pages 1-based page numbers
+     * @param extraPixels pixels reserved in addition, e.g. {@link #contactSheetPixels} for a contact sheet, or 0
+     * @return the rendered pages in the order of {@code pages}
+     * @throws ImageTooLargeException when the pages would not fit into the memory budget
+     * @throws BulkheadFullException when the memory budget does not become free in time
+     */
+    public RenderedPages renderPages(Path pdfFile, List<Integer> pages, Dimension box, long extraPixels) throws Exception {
+
+        final BufferedImage[] rendered = new BufferedImage[pages.size()];
+        final AtomicInteger next = new AtomicInteger();
+        final int workers = Math.min(parallelism, pages.size());
+        final DecodeMemoryBudget.Reservation reservation = decodeMemoryBudget.reserve((long) pages.size() * box.width * box.height + extraPixels);
+        boolean success = false;
+        try {
+            final List<Future<?>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(pdfPageExecutor.submit(() -> {
+                    try (PDDocument document = Loader.loadPDF(pdfFile.toFile())) {
+                        final PDFRenderer renderer = new PDFRenderer(document);
+                        int index;
+                        while ((index = next.getAndIncrement()) < rendered.length) {
+                            rendered[index] = renderPage(document, renderer, pages.get(index), box);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            } finally {
+                // stop the other workers after a failure or interrupt
+                futures.forEach(future -> future.cancel(true));
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                reservation.close();
+            }
+        }
+        LOGGER.debug("Rendered {} pages of {} with {} workers", pages.size(), pdfFile, workers);
+        return new RenderedPages(Arrays.asList(rendered), reservation);
+    }
+
+    /**
+     * Upper bound of the pixels of a {@link #contactSheet} of pages fitting into the bounding box.
+     */
+    public static long contactSheetPixels(int pageCount, int columns, Dimension box) {
+        final int cols = contactSheetColumns(pageCount, columns);
+        final int rows = Math.ceilDiv(pageCount, cols);
+        return (long) (cols * box.width + (cols + 1) * CONTACT_SHEET_GAP) * (rows * box.height + (rows + 1) * CONTACT_SHEET_GAP);
+    }
+
+    /**
+     * Tile the pages into a grid of cells of the size of the largest page, each page centered in its cell.
+     * @param columns number of columns, 0 for a square-like grid
+     */
+    public static BufferedImage contactSheet(List<BufferedImage> pages, int columns) {
+
+        final int cols = contactSheetColumns(pages.size(), columns);
+        final int rows = Math.ceilDiv(pages.size(), cols);
+        final int cellWidth = pages.stream().mapToInt(BufferedImage::getWidth).max().orElse(1);
+        final int cellHeight = pages.stream().mapToInt(BufferedImage::getHeight).max().orElse(1);
+        final BufferedImage sheet = new BufferedImage(cols * cellWidth + (cols + 1) * CONTACT_SHEET_GAP,
+            rows * cellHeight + (rows + 1) * CONTACT_SHEET_GAP, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = sheet.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, sheet.getWidth(), sheet.getHeight());
+            for (int i = 0; i < pages.size(); i++) {
+                final BufferedImage page = pages.get(i);
+                final int x = CONTACT_SHEET_GAP + (i % cols) * (cellWidth + CONTACT_SHEET_GAP) + (cellWidth - page.getWidth()) / 2;
+                final int y = CONTACT_SHEET_GAP + (i / cols) * (cellHeight + CONTACT_SHEET_GAP) + (cellHeight - page.getHeight()) / 2;
+                g.drawImage(page, x, y, null);
+            }
+        } finally {
+            g.dispose();
+        }
+        return sheet;
+    }
+
+    /**
+     * Write the pages as ZIP entries named {@code page-<number><extension>}.
+     */
+    public static void writePages(List<Integer> pages, List<BufferedImage> rendered, ThumbnailSpec spec, OutputStream out) throws IOException {
+
+        final ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        for (int i = 0; i < pages.size(); i++) {
+            zip.putNextEntry(new ZipEntry(String.format("page-%03d%s", pages.get(i), spec.outputExtension())));
+            ImageIoSupport.write(rendered.get(i), spec.quality(), zip);
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private static int contactSheetColumns(int pageCount, int columns) {
+        return columns > 0 ? Math.min(columns, pageCount) : (int) Math.ceil(Math.sqrt(pageCount));
+    }
+
+    private BufferedImage renderPage(PDDocument document, PDFRenderer renderer, int page, Dimension box) throws IOException {
+
+        final long start = System.nanoTime();
+        final PDPage pdPage = document.getPage(page - 1);
+        final PDRectangle cropBox = pdPage.getCropBox();
+        final boolean rotated = pdPage.getRotation() % 180 != 0;
+        final float width = rotated ? cropBox.getHeight() : cropBox.getWidth();
+        final float height = rotated ? cropBox.getWidth() : cropBox.getHeight();
+        // scale 1 renders one pixel per point (72 dpi)
+        final float scale = Math.min(box.width / width, box.height / height);
+        final BufferedImage image = renderer.renderImage(page - 1, scale, ImageType.RGB);
+        pageRenderTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return image;
+    }
+
+    /**
+     * The rendered pages. Closing releases their memory reservation.
+     */
+    public record RenderedPages(List<BufferedImage> images, DecodeMemoryBudget.Reservation reservation) implements AutoCloseable {
+        @Override
+        public void close() {
+            reservation.close();
+        }
+    }
+}
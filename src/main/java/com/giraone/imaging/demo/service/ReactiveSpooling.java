@@ -0,0 +1,309 @@
+package com.giraone.imaging.demo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Helpers to write reactive request bodies to disk with asynchronous file channels. The next buffer is requested from
+ * the client only after the previous one is written, so neither the heap nor the event loop grows with the upload.
+ */
+public final class ReactiveSpooling {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveSpooling.class);
+
+    private ReactiveSpooling() {
+    }
+
+    /**
+     * Read the first {@link Spooling#DETECTION_PREFIX_SIZE} bytes (or less for shorter bodies) for file type detection.
+     * The rest of the body is not read.
+     */
+    public static Mono<byte[]> readPrefix(Flux<DataBuffer> body) {
+        return DataBufferUtils.join(DataBufferUtils.takeUntilByteCount(body, Spooling.DETECTION_PREFIX_SIZE))
+            .map(buffer -> {
+                try {
+                    final byte[] prefix = new byte[Math.min(buffer.readableByteCount(), Spooling.DETECTION_PREFIX_SIZE)];
+                    buffer.read(prefix);
+                    return prefix;
+                } finally {
+                    DataBufferUtils.release(buffer);
+                }
+            })
+            .defaultIfEmpty(new byte[0]);
+    }
+
+    /**
+     * Write the body to the target file. As soon as the first {@link Spooling#DETECTION_PREFIX_SIZE} bytes are written
+     * (or the whole body, when it is shorter), they are passed to the prefix check.
+     * @param target the file to write to (truncated)
+     * @param digest when not null, updated with all bytes written
+     * @param prefixCheck returns false to stop reading the rest of the body, or throws to reject the body
+     * @return the prefix and the number of bytes written
+     */
+    public static Mono<Spooled> spool(Flux<DataBuffer> body, Path target, MessageDigest digest, Predicate<byte[]> prefixCheck) {
+
+        final State state = new State(digest, prefixCheck);
+        return Flux.using(
+                () -> AsynchronousFileChannel.open(target,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING),
+                channel -> DataBufferUtils.write(body, channel),
+                ReactiveSpooling::closeQuietly)
+            .doOnNext(buffer -> {
+                try {
+                    state.written(buffer);
+                } finally {
+                    DataBufferUtils.release(buffer);
+                }
+            })
+            // cancels the upload after the buffer, that completed the prefix
+            .takeUntil(buffer -> state.stopped)
+            .then(Mono.fromCallable(state::finish));
+    }
+
+    /**
+     * Read the beginning of the body into memory and pass it to the header parser after each buffer, until the parser
+     * returns a result, which cancels the rest of the upload, or the header limit is reached. Only then the spool file
+     * is created, and the bytes read so far followed by the rest of the body are written to it.
+     * @param headerLimit returns the number of bytes to look for the header in, given the first
+     *                    {@link Spooling#DETECTION_PREFIX_SIZE} bytes (or the whole body, when it is shorter),
+     *                    0 to spool at once; may throw to reject the body
+     * @param headerParser returns the header or null, when it is not within the bytes read so far
+     * @param spoolFile creates the spool file, subscribed only when the header is not found
+     * @param delete deletes the spool file, when reading the body fails or is cancelled
+     * @return the header, or the spool file owned by the caller then, and the number of bytes read
+     */
+    public static <T> Mono<Header<T>> readHeader(Flux<DataBuffer> body, ToIntFunction<byte[]> headerLimit,
+                                                 HeaderParser<T> headerParser, Mono<Path> spoolFile, Consumer<Path> delete) {
+
+        final HeaderState<T> state = new HeaderState<>(headerLimit, headerParser, spoolFile);
+        return body
+            .concatMap(state::accept, 1)
+            // cancels the upload after the buffer, that completed the header
+            .any(found -> found)
+            .flatMap(found -> state.finish())
+            .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+            .doFinally(signal -> state.close(delete));
+    }
+
+    private static void closeQuietly(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Cannot close spool file", e);
+        }
+    }
+
+    /**
+     * Result of {@link #spool}.
+     * @param prefix the first bytes of the body
+     * @param size the number of bytes written
+     * @param complete false, when the prefix check stopped reading the body
+     */
+    public record Spooled(byte[] prefix, long size, boolean complete) {
+    }
+
+    /**
+     * Parses a header from the beginning of a body, see {@link #readHeader}.
+     */
+    @FunctionalInterface
+    public interface HeaderParser<T> {
+
+        /**
+         * @param bytes  the bytes read so far, valid up to {@code length}
+         * @param length the number of bytes read so far
+         * @return the header or null, when it is not within the bytes read so far
+         */
+        T parse(byte[] bytes, int length);
+    }
+
+    /**
+     * Result of {@link #readHeader}.
+     * @param header the header or null, when it was not found
+     * @param file the spool file with the complete body, only when the header was not found
+     * @param size the number of bytes read
+     */
+    public record Header<T>(T header, Path file, long size) {
+    }
+
+    /**
+     * Per-request progress of {@link #readHeader}. Buffers are processed one after the other, so no synchronization
+     * is needed.
+     */
+    private static final class HeaderState<T> {
+
+        private final ToIntFunction<byte[]> headerLimit;
+        private final HeaderParser<T> headerParser;
+        private final Mono<Path> spoolFile;
+        private byte[] bytes = new byte[Spooling.DETECTION_PREFIX_SIZE];
+        private long size;
+        private int limit = -1;
+        private T header;
+        private Path file;
+        private AsynchronousFileChannel channel;
+        private boolean handedOver;
+
+        HeaderState(ToIntFunction<byte[]> headerLimit, HeaderParser<T> headerParser, Mono<Path> spoolFile) {
+            this.headerLimit = headerLimit;
+            this.headerParser = headerParser;
+            this.spoolFile = spoolFile;
+        }
+
+        /**
+         * @return true, when the header is found and the rest of the body is not needed
+         */
+        Mono<Boolean> accept(DataBuffer buffer) {
+            if (channel != null) {
+                return write(buffer).thenReturn(false);
+            }
+            try {
+                append(buffer);
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+            if (limit < 0 && size >= Spooling.DETECTION_PREFIX_SIZE) {
+                limit = headerLimit.applyAsInt(Arrays.copyOf(bytes, Spooling.DETECTION_PREFIX_SIZE));
+            }
+            if (limit < 0) {
+                return Mono.just(false);
+            }
+            if (parse()) {
+                return Mono.just(true);
+            }
+            return size >= limit ? startSpooling().thenReturn(false) : Mono.just(false);
+        }
+
+        Mono<Header<T>> finish() {
+            if (channel == null && header == null) {
+                // the body ended before the header limit
+                if (limit < 0) {
+                    limit = headerLimit.applyAsInt(Arrays.copyOf(bytes, (int) size));
+                }
+                if (!parse()) {
+                    return startSpooling().then(Mono.fromCallable(this::handOver));
+                }
+            }
+            return Mono.fromCallable(this::handOver);
+        }
+
+        void close(Consumer<Path> delete) {
+            if (channel != null) {
+                closeQuietly(channel);
+            }
+            if (file != null && !handedOver) {
+                delete.accept(file);
+            }
+        }
+
+        private Header<T> handOver() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+            handedOver = true;
+            return new Header<>(header, file, size);
+        }
+
+        private boolean parse() {
+            if (limit > 0) {
+                header = headerParser.parse(bytes, (int) size);
+            }
+            return header != null;
+        }
+
+        private void append(DataBuffer buffer) {
+            final int length = buffer.readableByteCount();
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.max(size + length, 2L * bytes.length));
+            }
+            buffer.read(bytes, (int) size, length);
+            size += length;
+        }
+
+        private Mono<Void> startSpooling() {
+            return spoolFile.flatMap(path -> {
+                file = path;
+                try {
+                    channel = AsynchronousFileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                } catch (IOException e) {
+                    return Mono.error(e);
+                }
+                final long length = size;
+                size = 0;
+                return write(DefaultDataBufferFactory.sharedInstance.wrap(ByteBuffer.wrap(bytes, 0, (int) length)));
+            }).doOnSuccess(done -> bytes = null);
+        }
+
+        private Mono<Void> write(DataBuffer buffer) {
+            final long position = size;
+            size += buffer.readableByteCount();
+            return DataBufferUtils.write(Mono.just(buffer), channel, position)
+                .then()
+                .doFinally(signal -> DataBufferUtils.release(buffer));
+        }
+    }
+
+    /**
+     * Per-request progress. Buffers are signalled one after the other, so no synchronization is needed.
+     */
+    private static final class State {
+
+        private final MessageDigest digest;
+        private final Predicate<byte[]> prefixCheck;
+        private final byte[] prefix = new byte[Spooling.DETECTION_PREFIX_SIZE];
+        private long size;
+        private boolean checked;
+        private boolean stopped;
+
+        State(MessageDigest digest, Predicate<byte[]> prefixCheck) {
+            this.digest = digest;
+            this.prefixCheck = prefixCheck;
+        }
+
+        void written(DataBuffer buffer) {
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext()) {
+                    final ByteBuffer byteBuffer = iterator.next();
+                    if (size < prefix.length) {
+                        final int length = (int) Math.min(byteBuffer.remaining(), prefix.length - size);
+                        byteBuffer.duplicate().get(prefix, (int) size, length);
+                    }
+                    size += byteBuffer.remaining();
+                    if (digest != null) {
+                        digest.update(byteBuffer);
+                    }
+                }
+            }
+            if (!checked && size >= prefix.length) {
+                check();
+            }
+        }
+
+        Spooled finish() {
+            if (!checked) {
+                check();
+            }
+            final byte[] bytes = size < prefix.length ? Arrays.copyOf(prefix, (int) size) : prefix;
+            return new Spooled(bytes, size, !stopped);
+        }
+
+        private void check() {
+            checked = true;
+            stopped = !prefixCheck.test(size < prefix.length ? Arrays.copyOf(prefix, (int) size) : prefix);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.ConversionCommand;
+import com.giraone.imaging.FileTypeDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Multiple renditions (e.g. for {@code srcset}) from one decode of the source. The provider creates one lossless
+ * intermediate image for the largest bounding box. This image is decoded once and then scaled down step by step,
+ * each rendition starting from the previous (next larger) one.
+ */
+@Service
+public class RenditionService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenditionService.class);
+
+    /**
+     * Maximum number of renditions per request.
+     */
+    public static final int MAX_RENDITIONS = 16;
+
+    private final ThumbnailService thumbnailService;
+    private final DecodeMemoryBudget decodeMemoryBudget;
+    private final SpoolManager spoolManager;
+
+    public RenditionService(ThumbnailService thumbnailService, DecodeMemoryBudget decodeMemoryBudget, SpoolManager spoolManager) {
+        this.thumbnailService = thumbnailService;
+        this.decodeMemoryBudget = decodeMemoryBudget;
+        this.spoolManager = spoolManager;
+    }
+
+    /**
+     * Parse a rendition list like {@code "800x600:LOSSY_BEST, 400, 64x64"}. A single number is a square bounding box,
+     * a missing quality is replaced by the default quality.
+     * @throws IllegalArgumentException for invalid dimensions, qualities or too many renditions
+     */
+    public static List<ThumbnailSpec> parseRenditions(String renditions, ConversionCommand.CompressionQuality defaultQuality) {
+
+        final List<ThumbnailSpec> result = new ArrayList<>();
+        for (String item : renditions.split(",")) {
+            item = item.trim();
+            if (item.isEmpty()) {
+                continue;
+            }
+            final int colon = item.indexOf(':');
+            final ConversionCommand.CompressionQuality quality = colon < 0 ? defaultQuality : ThumbnailSpec.parseQuality(item.substring(colon + 1).trim());
+            final String size = colon < 0 ? item : item.substring(0, colon).trim();
+            final int x = size.indexOf('x');
+            try {
+                final int width = Integer.parseInt(x < 0 ? size : size.substring(0, x));
+                final int height = Integer.parseInt(x < 0 ? size : size.substring(x + 1));
+                if (!ThumbnailSpec.isValidDimension(width) || !ThumbnailSpec.isValidDimension(height)) {
+                    throw new IllegalArgumentException("Invalid rendition size: " + item);
+                }
+                result.add(new ThumbnailSpec(width, height, quality));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid rendition size: " + item, e);
+            }
+        }
+        if (result.isEmpty() || result.size() > MAX_RENDITIONS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_RENDITIONS + " renditions required");
+        }
+        return result;
+    }
+
+    /**
+     * Create all renditions from one decode of the source as ZIP file, see {@link #writeRenditions}. The decoded
+     * intermediate image and its first scaled copy are reserved from the memory budget, until the ZIP is written.
+     * @return a new spool file containing the ZIP, which is owned by the caller and has to be released with
+     * {@link SpoolManager#delete}
+     * @throws com.giraone.imaging.FormatNotSupportedException when there is no provider for the file type
+     * @throws ImageTooLargeException when the source or the intermediate image would not fit into the memory budget
+     * @throws BulkheadFullException when the memory budget does not become free in time
+     */
+    public Path createRenditions(Path inputFile, FileTypeDetector.FileType fileType, List<ThumbnailSpec> renditions) throws Exception {
+
+        final int maxWidth = renditions.stream().mapToInt(ThumbnailSpec::width).max().orElseThrow();
+        final int maxHeight = renditions.stream().mapToInt(ThumbnailSpec::height).max().orElseThrow();
+        final Path intermediate = thumbnailService.createThumbnail(inputFile, fileType,
+            new ThumbnailSpec(maxWidth, maxHeight, ConversionCommand.CompressionQuality.LOSSLESS));
+        Path outputFile = null;
+        try (DecodeMemoryBudget.Reservation reservation = decodeMemoryBudget.reserve(2L * maxWidth * maxHeight)) {
+            final BufferedImage image = ImageIO.read(intermediate.toFile());
+            if (image == null) {
+                throw new IOException("Cannot decode intermediate image " + intermediate);
+            }
+            outputFile = spoolManager.createFile("renditions-out-", ".zip");
+            try (OutputStream out = Files.newOutputStream(outputFile)) {
+                writeRenditions(image, renditions, out);
+            }
+            spoolManager.account(outputFile);
+            final Path result = outputFile;
+            outputFile = null;
+            return result;
+        } finally {
+            spoolManager.delete(intermediate);
+            spoolManager.delete(outputFile);
+        }
+    }
+
+    /**
+     * Scale the decoded image down to all renditions, largest first, and write them as ZIP entries
+     * named {@code <width>x<height>-<quality><extension>} using the effective (aspect ratio preserving) size.
+     * Renditions resulting in the same entry name are written only once.
+     */
+    static void writeRenditions(BufferedImage source, List<ThumbnailSpec> renditions, OutputStream out) throws IOException {
+
+        final List<ThumbnailSpec> largestFirst = renditions.stream()
+            .sorted(Comparator.comparingDouble((ThumbnailSpec spec) -> scale(source, spec)).reversed())
+            .toList();
+        final ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        final Set<String> names = new HashSet<>();
+        BufferedImage current = source;
+        for (ThumbnailSpec spec : largestFirst) {
+            final Dimension size = ImageIoSupport.fitInto(source.getWidth(), source.getHeight(), spec.dimension());
+            final String name = size.width + "x" + size.height + "-" + spec.quality() + spec.outputExtension();
+            if (!names.add(name)) {
+                continue;
+            }
+            // each step starts from the previous rendition, which is never smaller than this one
+            current = ImageIoSupport.scaleDown(current, size);
+            zip.putNextEntry(new ZipEntry(name));
+            ImageIoSupport.write(current, spec.quality(), zip);
+            zip.closeEntry();
+            LOGGER.debug("Rendition {}x{} {} written", size.width, size.height, spec.quality());
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private static double scale(BufferedImage source, ThumbnailSpec spec) {
+        return Math.min((double) spec.width() / source.getWidth(), (double) spec.height() / source.getHeight());
+    }
+}
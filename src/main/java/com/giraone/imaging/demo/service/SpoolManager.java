@@ -0,0 +1,308 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.demo.config.SpoolProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Owner of all temporary files of uploads and conversions, which are created in one configurable directory
+ * (e.g. on tmpfs). Every file is registered with its size until it is released with {@link #delete}, so the sum of
+ * live bytes is known:
+ * <ul>
+ *     <li>Uploads are admitted with {@link #spoolFile}, which waits while the quota is exceeded and is rejected with
+ *     a {@link BulkheadFullException} after {@code max-wait}. Files derived from admitted uploads (thumbnails,
+ *     copies) are created with {@link #createFile} without waiting, so conversions can always finish and release
+ *     their inputs. The quota is checked when a file is created, so it is exceeded by the files written at that time.
+ *     When the size of an upload is known in advance (e.g. from {@code Content-Length}), it is accounted at admission,
+ *     so concurrent uploads see it before it is written.</li>
+ *     <li>{@link SpoolFile} is a scoped handle, that deletes its file on close unless the ownership was passed on.</li>
+ *     <li>The sweeper deletes registered files older than {@code leak-age} (leaks) and unregistered files in the
+ *     directory (orphans, e.g. of a crash). At startup all files in the directory are orphans.</li>
+ * </ul>
+ * Metrics: {@code imaging.spool.files} and {@code imaging.spool.bytes} (gauges), {@code imaging.spool.rejected},
+ * {@code imaging.spool.leaks} and {@code imaging.spool.orphans} (counters).
+ */
+@Component
+public class SpoolManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpoolManager.class);
+
+    /**
+     * Unregistered files younger than this are not deleted by the sweeper, they may be registered right now.
+     */
+    private static final long ORPHAN_MIN_AGE_MILLIS = 60_000L;
+
+    private final Path directory;
+    private final BufferPool bufferPool;
+    private final long maxBytes;
+    private final long maxWaitNanos;
+    private final long leakAgeMillis;
+    private final Map<Path, Entry> files = new ConcurrentHashMap<>();
+    /**
+     * Sum of the accounted sizes, guarded by {@code this}.
+     */
+    private long liveBytes;
+
+    private final Counter rejectedCounter;
+    private final Counter leakCounter;
+    private final Counter orphanCounter;
+
+    public SpoolManager(SpoolProperties properties, BufferPool bufferPool, MeterRegistry meterRegistry) throws IOException {
+        this.bufferPool = bufferPool;
+        this.directory = Files.createDirectories(properties.getDirectory()).toAbsolutePath();
+        this.maxBytes = properties.getMaxSize().toBytes();
+        this.maxWaitNanos = properties.getMaxWait().toNanos();
+        this.leakAgeMillis = properties.getLeakAge().toMillis();
+        this.rejectedCounter = Counter.builder("imaging.spool.rejected").register(meterRegistry);
+        this.leakCounter = Counter.builder("imaging.spool.leaks").register(meterRegistry);
+        this.orphanCounter = Counter.builder("imaging.spool.orphans").register(meterRegistry);
+        Gauge.builder("imaging.spool.files", files, Map::size).register(meterRegistry);
+        Gauge.builder("imaging.spool.bytes", this, SpoolManager::getLiveBytes).baseUnit("bytes").register(meterRegistry);
+        final int orphans = deleteOrphans(Long.MAX_VALUE);
+        LOGGER.info("Spool directory={}, maxSize={}, {} files of a previous run deleted", directory, properties.getMaxSize(), orphans);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Create a file for an upload, waiting while the quota is exceeded.
+     * @throws BulkheadFullException when the quota is not free within the maximum wait time
+     */
+    public SpoolFile spoolFile(String prefix, String suffix) throws IOException, BulkheadFullException, InterruptedException {
+        return spoolFile(prefix, suffix, -1L);
+    }
+
+    /**
+     * Create a file for an upload of known size, waiting while the quota is exceeded. The expected size is accounted
+     * at once and corrected by {@link #account} after the upload was written.
+     * @param expectedBytes the announced size of the upload, negative when unknown
+     * @throws BulkheadFullException when the quota is not free within the maximum wait time
+     */
+    public SpoolFile spoolFile(String prefix, String suffix, long expectedBytes) throws IOException, BulkheadFullException, InterruptedException {
+        awaitQuota();
+        final Path file = createFile(prefix, suffix);
+        if (expectedBytes > 0L) {
+            final Entry entry = files.get(file);
+            synchronized (this) {
+                liveBytes += expectedBytes;
+                entry.bytes = expectedBytes;
+            }
+        }
+        return new SpoolFile(file);
+    }
+
+    /**
+     * Wait while the quota is exceeded.
+     * @throws BulkheadFullException when the quota is not free within the maximum wait time
+     */
+    public synchronized void awaitQuota() throws BulkheadFullException, InterruptedException {
+        final long deadline = System.nanoTime() + maxWaitNanos;
+        long remaining = maxWaitNanos;
+        while (liveBytes >= maxBytes) {
+            if (remaining <= 0L) {
+                rejectedCounter.increment();
+                throw new BulkheadFullException("Spool quota exhausted, " + liveBytes + " of " + maxBytes + " bytes used");
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Create a file for data derived from an admitted upload without waiting for the quota.
+     * @return the file, which is owned by the caller and has to be released with {@link #delete}
+     */
+    public Path createFile(String prefix, String suffix) throws IOException {
+        final Path file = Files.createTempFile(directory, prefix, suffix);
+        files.put(file, new Entry(System.currentTimeMillis(), Thread.currentThread().getName()));
+        return file;
+    }
+
+    /**
+     * {@link Spooling#spool} into a spool file with a pooled buffer and account its size.
+     */
+    public long spool(byte[] prefix, InputStream in, Path file, MessageDigest digest) throws IOException {
+        try (BufferPool.Buffer buffer = bufferPool.lease()) {
+            return Spooling.spool(prefix, in, file, digest, buffer.array());
+        } finally {
+            account(file);
+        }
+    }
+
+    /**
+     * Account the current size of a spool file, after it was written.
+     */
+    public void account(Path file) {
+        final Entry entry = files.get(file);
+        if (entry == null) {
+            return;
+        }
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            size = 0L;
+        }
+        synchronized (this) {
+            liveBytes += size - entry.bytes;
+            entry.bytes = size;
+        }
+    }
+
+    /**
+     * Rename a spool file within the spool directory, e.g. to add the file extension needed by a provider.
+     */
+    public Path rename(Path file, String suffix) throws IOException {
+        final Path target = Files.move(file, file.resolveSibling(file.getFileName() + suffix));
+        final Entry entry = files.remove(file);
+        if (entry != null) {
+            files.put(target, entry);
+        }
+        return target;
+    }
+
+    /**
+     * Delete a spool file and release its bytes. Files, that are not registered (anymore), are deleted, too.
+     */
+    public void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        Spooling.deleteQuietly(file);
+        final Entry entry = files.remove(file);
+        if (entry != null) {
+            release(entry);
+        }
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Delete leaked and orphaned files.
+     */
+    @Scheduled(fixedDelayString = "${imaging.spool.sweep-interval:60s}")
+    public void sweep() {
+        final long now = System.currentTimeMillis();
+        files.forEach((file, entry) -> {
+            if (now - entry.created > leakAgeMillis && files.remove(file, entry)) {
+                LOGGER.warn("Spool file {} with {} bytes created by thread {} was not released after {} s, deleting it",
+                    file, entry.bytes, entry.thread, (now - entry.created) / 1000L);
+                Spooling.deleteQuietly(file);
+                release(entry);
+                leakCounter.increment();
+            }
+        });
+        try {
+            final int orphans = deleteOrphans(now - ORPHAN_MIN_AGE_MILLIS);
+            if (orphans > 0) {
+                LOGGER.warn("Deleted {} orphaned spool files", orphans);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot sweep spool directory {}", directory, e);
+        }
+    }
+
+    private synchronized void release(Entry entry) {
+        liveBytes -= entry.bytes;
+        notifyAll();
+    }
+
+    /**
+     * Delete unregistered files, that were modified before the given time.
+     */
+    private int deleteOrphans(long modifiedBefore) throws IOException {
+        int count = 0;
+        try (Stream<Path> entries = Files.list(directory)) {
+            for (Path file : entries.toList()) {
+                if (files.containsKey(file)) {
+                    continue;
+                }
+                try {
+                    final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (!attributes.isDirectory() && attributes.lastModifiedTime().toMillis() < modifiedBefore && !files.containsKey(file)) {
+                        Spooling.deleteQuietly(file);
+                        orphanCounter.increment();
+                        count++;
+                    }
+                } catch (IOException e) {
+                    // deleted meanwhile
+                }
+            }
+        }
+        return count;
+    }
+
+    private static final class Entry {
+        private final long created;
+        private final String thread;
+        /**
+         * Guarded by the {@link SpoolManager}.
+         */
+        private long bytes;
+
+        private Entry(long created, String thread) {
+            this.created = created;
+            this.thread = thread;
+        }
+    }
+
+    /**
+     * Scoped handle of a spool file, which deletes the file on close, unless its ownership was passed on with
+     * {@link #release()}.
+     */
+    public final class SpoolFile implements AutoCloseable {
+
+        private Path path;
+
+        private SpoolFile(Path path) {
+            this.path = path;
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        /**
+         * Pass the ownership of the file on, e.g. to a job. The new owner has to {@link #delete} it.
+         */
+        public Path release() {
+            final Path result = path;
+            path = null;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            delete(path);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.giraone.imaging.demo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Helpers to copy request bodies to disk without buffering them on the heap.
+ */
+public final class Spooling {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Spooling.class);
+
+    /**
+     * Number of leading bytes, that are read before spooling to detect the file type (magic bytes).
+     */
+    public static final int DETECTION_PREFIX_SIZE = 4096;
+
+    /**
+     * Buffer size of {@link #spool(byte[], InputStream, Path, MessageDigest)} without a pooled buffer.
+     */
+    private static final int UNPOOLED_BUFFER_SIZE = 8192;
+
+    private Spooling() {
+    }
+
+    /**
+     * Write an already consumed prefix plus the rest of the stream to the target file using a buffer of its own.
+     * @see #spool(byte[], InputStream, Path, MessageDigest, byte[])
+     */
+    public static long spool(byte[] prefix, InputStream rest, Path target, MessageDigest digest) throws IOException {
+        return spool(prefix, rest, target, digest, new byte[UNPOOLED_BUFFER_SIZE]);
+    }
+
+    /**
+     * Write an already consumed prefix plus the rest of the stream to the target file using NIO channels.
+     * The stream is read directly into the given buffer, so nothing is allocated per chunk.
+     * @param prefix the bytes already read from the stream, e.g. for file type detection
+     * @param rest the remaining input, which is read until EOF, but not closed
+     * @param target the file to write to (truncated)
+     * @param digest when not null, updated with all bytes written
+     * @param buffer the buffer for the chunks, e.g. from the {@link BufferPool}
+     * @return the total number of bytes written
+     */
+    public static long spool(byte[] prefix, InputStream rest, Path target, MessageDigest digest, byte[] buffer) throws IOException {
+        if (digest != null) {
+            digest.update(prefix);
+        }
+        try (FileChannel out = FileChannel.open(target,
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, ByteBuffer.wrap(prefix));
+            long position = prefix.length;
+            final ByteBuffer chunk = ByteBuffer.wrap(buffer);
+            int r;
+            while ((r = rest.read(buffer)) >= 0) {
+                if (digest != null) {
+                    digest.update(buffer, 0, r);
+                }
+                writeFully(out, chunk.clear().limit(r));
+                position += r;
+            }
+            return position;
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Delete a temp file, if it exists. Failures are only logged.
+     */
+    public static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot delete temp file {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.giraone.imaging.demo.service;
+
+import java.util.List;
+
+/**
+ * Index of a storyboard sprite sheet, which maps time ranges of the video to tiles of the sprite.
+ * @param duration the duration of the video in seconds
+ * @param tileWidth the width of all tiles in pixels
+ * @param tileHeight the height of all tiles in pixels
+ * @param columns the number of tiles per row of the sprite
+ * @param rows the number of rows of the sprite
+ * @param tiles the tiles in time order
+ */
+public record StoryboardIndex(double duration, int tileWidth, int tileHeight, int columns, int rows, List<Tile> tiles) {
+
+    /**
+     * @param start start of the time range represented by the tile in seconds
+     * @param end end of the time range in seconds (exclusive)
+     * @param frameTime time of the shown (key) frame in seconds
+     * @param x left edge of the tile in the sprite
+     * @param y top edge of the tile in the sprite
+     */
+    public record Tile(double start, double end, double frameTime, int x, int y) {
+    }
+}
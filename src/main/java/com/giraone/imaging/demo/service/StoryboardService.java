@@ -0,0 +1,243 @@
+package com.giraone.imaging.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.imaging.demo.config.StoryboardProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jcodec.api.FrameGrab;
+import org.jcodec.api.JCodecException;
+import org.jcodec.api.PictureWithMetadata;
+import org.jcodec.common.DemuxerTrackMeta;
+import org.jcodec.common.io.FileChannelWrapper;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.Size;
+import org.jcodec.scale.AWTUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Storyboards for hover-scrubbing in video players: frames at regular intervals packed into one sprite sheet and
+ * an index mapping time ranges to tiles. Frames are extracted with JCodec by seeking to the key frame nearest to
+ * each point in time (sloppy seek), so only key frames are decoded instead of every frame up to that point.
+ * With sparse key frames neighbouring tiles may therefore show the same frame.
+ * <p>
+ * The points in time are split into contiguous ranges, one per worker of the shared storyboard executor. Each worker
+ * opens its own {@link FrameGrab} (which is not thread-safe) and seeks only forward. The time to extract and scale
+ * a single frame is recorded as {@code imaging.video.frame.extract}, whose rate is the extraction throughput.
+ */
+@Service
+public class StoryboardService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StoryboardService.class);
+
+    public static final String SPRITE_NAME = "storyboard";
+    public static final String INDEX_NAME = "storyboard.json";
+
+    private final ExecutorService storyboardExecutor;
+    private final DecodeMemoryBudget decodeMemoryBudget;
+    private final ObjectMapper objectMapper;
+    private final Timer frameExtractTimer;
+    private final int parallelism;
+    private final int maxFrames;
+
+    public StoryboardService(@Qualifier("storyboardExecutor") ExecutorService storyboardExecutor, DecodeMemoryBudget decodeMemoryBudget,
+                             ObjectMapper objectMapper, StoryboardProperties properties, MeterRegistry meterRegistry) {
+        this.storyboardExecutor = storyboardExecutor;
+        this.decodeMemoryBudget = decodeMemoryBudget;
+        this.objectMapper = objectMapper;
+        this.frameExtractTimer = Timer.builder("imaging.video.frame.extract")
+            .description("Time to seek, decode and scale a single video frame")
+            .register(meterRegistry);
+        this.parallelism = properties.getThreads() > 0 ? properties.getThreads() : Runtime.getRuntime().availableProcessors();
+        this.maxFrames = properties.getMaxFrames();
+    }
+
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+
+    /**
+     * Extract the frames in the middle of {@code frames} equal time ranges and pack them into a sprite. The sprite
+     * stays in the memory budget until the storyboard is closed, which has to happen after it is written.
+     * @param tileBox bounding box of a single tile
+     * @param columns number of tiles per row, 0 for a square-like grid
+     * @throws IOException when the file is no video readable by JCodec
+     * @throws ImageTooLargeException when the sprite and the decoded frames would not fit into the memory budget
+     * @throws BulkheadFullException when the memory budget does not become free in time
+     */
+    public Storyboard createStoryboard(Path videoFile, int frames, Dimension tileBox, int columns) throws Exception {
+
+        final DemuxerTrackMeta meta;
+        final Size size;
+        try (FileChannelWrapper channel = NIOUtils.readableChannel(videoFile.toFile())) {
+            final FrameGrab grab = createFrameGrab(channel);
+            meta = grab.getVideoTrack().getMeta();
+            // the display size of the track, the media info has the size in whole macro blocks
+            size = meta.getVideoCodecMeta() != null ? meta.getVideoCodecMeta().getSize() : grab.getMediaInfo().getDim();
+        }
+        final double duration = meta.getTotalDuration();
+        final Dimension tile = ImageIoSupport.fitInto(size.getWidth(), size.getHeight(), tileBox);
+        final int cols = columns > 0 ? Math.min(columns, frames) : (int) Math.ceil(Math.sqrt(frames));
+        final int rows = Math.ceilDiv(frames, cols);
+        final long spriteWidth = (long) cols * tile.width;
+        final long spriteHeight = (long) rows * tile.height;
+        if (spriteWidth * spriteHeight > Integer.MAX_VALUE) {
+            throw new ImageTooLargeException("Sprite of " + spriteWidth + "x" + spriteHeight + " pixels is too large");
+        }
+        final double[] frameTimes = new double[frames];
+
+        final int workers = Math.min(parallelism, frames);
+        // the sprite and one decoded frame per worker, reserved before the sprite is allocated
+        final long pixels = spriteWidth * spriteHeight + (long) workers * size.getWidth() * size.getHeight();
+        final DecodeMemoryBudget.Reservation reservation = decodeMemoryBudget.reserve(pixels);
+        final BufferedImage sprite;
+        boolean success = false;
+        try {
+            sprite = new BufferedImage((int) spriteWidth, (int) spriteHeight, BufferedImage.TYPE_INT_RGB);
+            final List<Future<?>> futures = new ArrayList<>(workers);
+            for (int w = 0; w < workers; w++) {
+                final int from = w * frames / workers;
+                final int to = (w + 1) * frames / workers;
+                futures.add(storyboardExecutor.submit(() -> {
+                    extractFrames(videoFile, from, to, frames, meta, tile, cols, sprite, frameTimes);
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            } finally {
+                // stop the other workers after a failure or interrupt
+                futures.forEach(future -> future.cancel(true));
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                reservation.close();
+            }
+        }
+
+        final List<StoryboardIndex.Tile> tiles = new ArrayList<>(frames);
+        for (int i = 0; i < frames; i++) {
+            tiles.add(new StoryboardIndex.Tile(duration * i / frames, duration * (i + 1) / frames, frameTimes[i],
+                (i % cols) * tile.width, (i / cols) * tile.height));
+        }
+        LOGGER.debug("Storyboard of {} with {} frames extracted by {} workers, frame times {}", videoFile, frames, workers, Arrays.toString(frameTimes));
+        return new Storyboard(sprite, new StoryboardIndex(duration, tile.width, tile.height, cols, rows, tiles), reservation);
+    }
+
+    /**
+     * Write the sprite ({@code storyboard.<ext>}) and the index ({@code storyboard.json}) as ZIP entries.
+     */
+    public void writeStoryboard(Storyboard storyboard, ThumbnailSpec spec, OutputStream out) throws IOException {
+
+        final ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        zip.putNextEntry(new ZipEntry(INDEX_NAME));
+        zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(storyboard.index()));
+        zip.closeEntry();
+        zip.putNextEntry(new ZipEntry(SPRITE_NAME + spec.outputExtension()));
+        ImageIoSupport.write(storyboard.sprite(), spec.quality(), zip);
+        zip.closeEntry();
+        zip.finish();
+        zip.flush();
+    }
+
+    /**
+     * Extract the frames {@code from} (inclusive) to {@code to} (exclusive) into their tiles of the sprite.
+     * Workers write disjoint tiles and array elements only.
+     */
+    private void extractFrames(Path videoFile, int from, int to, int frames, DemuxerTrackMeta meta, Dimension tile, int columns,
+                               BufferedImage sprite, double[] frameTimes) throws IOException {
+
+        try (FileChannelWrapper channel = NIOUtils.readableChannel(videoFile.toFile())) {
+            final FrameGrab grab = createFrameGrab(channel);
+            for (int i = from; i < to; i++) {
+                final long start = System.nanoTime();
+                // middle of the time range of the tile
+                final double time = meta.getTotalDuration() * (i + 0.5) / frames;
+                grab.seekToFrameSloppy(nearestKeyFrame(meta, time));
+                final PictureWithMetadata frame = grab.getNativeFrameWithMetadata();
+                if (frame == null) {
+                    throw new IOException("No frame at " + time + "s in " + videoFile);
+                }
+                final BufferedImage scaled = ImageIoSupport.scaleDown(AWTUtil.toBufferedImage(frame.getPicture()), tile);
+                final Graphics2D g = sprite.createGraphics();
+                try {
+                    g.drawImage(scaled, (i % columns) * tile.width, (i / columns) * tile.height, null);
+                } finally {
+                    g.dispose();
+                }
+                frameTimes[i] = frame.getTimestamp();
+                frameExtractTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        } catch (JCodecException e) {
+            throw new IOException("Cannot seek in " + videoFile, e);
+        }
+    }
+
+    /**
+     * The key frame nearest to the given time assuming a constant frame rate. Without a key frame table (all frames
+     * are key frames) the frame at the given time.
+     */
+    static int nearestKeyFrame(DemuxerTrackMeta meta, double time) {
+
+        final int totalFrames = meta.getTotalFrames();
+        final int frame = Math.clamp(Math.round(time * totalFrames / meta.getTotalDuration()), 0, Math.max(0, totalFrames - 1));
+        final int[] keyFrames = meta.getSeekFrames();
+        if (keyFrames == null || keyFrames.length == 0) {
+            return frame;
+        }
+        final int pos = Arrays.binarySearch(keyFrames, frame);
+        if (pos >= 0) {
+            return keyFrames[pos];
+        }
+        final int next = -pos - 1;
+        if (next == 0) {
+            return keyFrames[0];
+        }
+        if (next == keyFrames.length) {
+            return keyFrames[keyFrames.length - 1];
+        }
+        return frame - keyFrames[next - 1] <= keyFrames[next] - frame ? keyFrames[next - 1] : keyFrames[next];
+    }
+
+    private static FrameGrab createFrameGrab(FileChannelWrapper channel) throws IOException {
+        try {
+            return FrameGrab.createFrameGrab(channel);
+        } catch (JCodecException e) {
+            throw new IOException("Unsupported video", e);
+        }
+    }
+
+    /**
+     * The sprite sheet and its index. Closing releases the memory reservation of the sprite.
+     */
+    public record Storyboard(BufferedImage sprite, StoryboardIndex index, DecodeMemoryBudget.Reservation reservation) implements AutoCloseable {
+        @Override
+        public void close() {
+            reservation.close();
+        }
+    }
+}
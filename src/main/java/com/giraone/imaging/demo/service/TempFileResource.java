@@ -0,0 +1,54 @@
+package com.giraone.imaging.demo.service;
+
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File-backed response body for temporary files. The file is deleted, when the stream used to write the
+ * response is closed. Files of the {@link SpoolManager} are released to it, too, and copied to the response with
+ * a buffer of its pool.
+ */
+public class TempFileResource extends FileSystemResource {
+
+    private final SpoolManager spoolManager;
+
+    public TempFileResource(Path path) {
+        this(path, null);
+    }
+
+    public TempFileResource(Path path, SpoolManager spoolManager) {
+        super(path);
+        this.spoolManager = spoolManager;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        final Path path = getFile().toPath();
+        final InputStream in = Files.newInputStream(path, StandardOpenOption.DELETE_ON_CLOSE);
+        if (spoolManager == null) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            @Override
+            public long transferTo(OutputStream out) throws IOException {
+                return spoolManager.getBufferPool().copy(in, out);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    spoolManager.delete(path);
+                }
+            }
+        };
+    }
+}
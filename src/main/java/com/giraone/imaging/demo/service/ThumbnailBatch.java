@@ -0,0 +1,187 @@
+package com.giraone.imaging.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.FormatNotSupportedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * One batch of thumbnail conversions with a shared {@link ThumbnailSpec}. Entries are spooled and submitted to
+ * the worker pool when added; {@link #writeZip} writes the thumbnails in completion order followed by a
+ * {@value #MANIFEST_NAME}. Each conversion waits for a slot of the {@link ConversionBulkheads} of its file type, so
+ * a batch of slow formats does not exceed their limits, and runs on the {@link CpuPool}, so the batch workers only
+ * orchestrate. Instances are not thread-safe and have to be closed.
+ */
+public class ThumbnailBatch implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailBatch.class);
+
+    public static final String MANIFEST_NAME = "manifest.json";
+
+    private final ThumbnailService thumbnailService;
+    private final ConversionBulkheads conversionBulkheads;
+    private final CpuPool cpuPool;
+    private final SpoolManager spoolManager;
+    private final ObjectMapper objectMapper;
+    private final ThumbnailSpec spec;
+    private final CompletionService<Converted> completionService;
+    private final List<Future<Converted>> futures = new ArrayList<>();
+    private final Set<String> outputNames = new HashSet<>();
+
+    ThumbnailBatch(ThumbnailService thumbnailService, ConversionBulkheads conversionBulkheads, CpuPool cpuPool,
+                   SpoolManager spoolManager, ObjectMapper objectMapper, ExecutorService executor, ThumbnailSpec spec) {
+        this.thumbnailService = thumbnailService;
+        this.conversionBulkheads = conversionBulkheads;
+        this.cpuPool = cpuPool;
+        this.spoolManager = spoolManager;
+        this.objectMapper = objectMapper;
+        this.spec = spec;
+        this.completionService = new ExecutorCompletionService<>(executor);
+    }
+
+    public int size() {
+        return futures.size();
+    }
+
+    /**
+     * Spool an entry to disk and submit its conversion.
+     * @param name the entry name, e.g. the path within the ZIP or the multipart file name
+     * @param in the entry content, which is read until EOF, but not closed
+     * @throws BulkheadFullException when the spool quota does not become free in time
+     */
+    public void add(String name, InputStream in) throws IOException, BulkheadFullException, InterruptedException {
+
+        final byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+        final FileTypeDetector.FileType fileType = FileTypeDetector.getInstance().getFileType(prefix);
+        final Path inputFile;
+        try (SpoolManager.SpoolFile spoolFile = spoolManager.spoolFile("batch-in-", ThumbnailService.getFileExtension(fileType))) {
+            spoolManager.spool(prefix, in, spoolFile.path(), null);
+            // the conversion owns the input file now
+            inputFile = spoolFile.release();
+        }
+        final String outputName = uniqueOutputName(name);
+        futures.add(completionService.submit(() -> convert(name, outputName, inputFile, fileType)));
+    }
+
+    /**
+     * Wait for all entries and write the thumbnails and the manifest as a ZIP, each entry as soon as it is finished.
+     */
+    public void writeZip(OutputStream out) throws IOException {
+
+        final List<BatchEntryResult> manifest = new ArrayList<>(futures.size());
+        final ZipOutputStream zip = new ZipOutputStream(out);
+        // Thumbnails are already compressed
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        for (int i = 0; i < futures.size(); i++) {
+            final Converted converted = takeNext();
+            manifest.add(converted.result());
+            if (converted.outputFile() != null) {
+                try {
+                    zip.putNextEntry(new ZipEntry(converted.result().output()));
+                    Files.copy(converted.outputFile(), zip);
+                    zip.closeEntry();
+                } finally {
+                    spoolManager.delete(converted.outputFile());
+                }
+            }
+            zip.flush();
+        }
+        zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+        zip.putNextEntry(new ZipEntry(MANIFEST_NAME));
+        zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+        zip.closeEntry();
+        zip.finish();
+        zip.flush();
+    }
+
+    /**
+     * Wait for conversions, that are still running, and remove all thumbnails, that were not written.
+     */
+    @Override
+    public void close() {
+        for (Future<Converted> future : futures) {
+            try {
+                spoolManager.delete(future.get().outputFile());
+            } catch (ExecutionException e) {
+                // already reported by writeZip or irrelevant, because the result is discarded
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private Converted takeNext() throws IOException {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            // convert() does not throw
+            throw new IOException("Batch entry failed", e.getCause());
+        }
+    }
+
+    private Converted convert(String name, String outputName, Path inputFile, FileTypeDetector.FileType fileType) {
+        try {
+            final Path outputFile;
+            try (ConversionBulkheads.Permit permit = conversionBulkheads.acquireBlocking(fileType)) {
+                outputFile = cpuPool.call(() -> thumbnailService.createThumbnail(inputFile, fileType, spec));
+            }
+            final BatchEntryResult result = new BatchEntryResult(name, outputName, BatchEntryResult.Status.OK,
+                fileType.name(), Files.size(outputFile), null);
+            return new Converted(result, outputFile);
+        } catch (FormatNotSupportedException e) {
+            LOGGER.warn("Batch entry {} format not supported: {}", name, e.getMessage());
+            return new Converted(new BatchEntryResult(name, null, BatchEntryResult.Status.UNSUPPORTED_FORMAT,
+                fileType.name(), 0L, e.getMessage()), null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Converted(new BatchEntryResult(name, null, BatchEntryResult.Status.FAILED,
+                fileType.name(), 0L, "interrupted"), null);
+        } catch (Exception e) {
+            LOGGER.warn("Batch entry {} conversion failed", name, e);
+            return new Converted(new BatchEntryResult(name, null, BatchEntryResult.Status.FAILED,
+                fileType.name(), 0L, String.valueOf(e.getMessage())), null);
+        } finally {
+            spoolManager.delete(inputFile);
+        }
+    }
+
+    private String uniqueOutputName(String name) {
+        String baseName = name.substring(name.lastIndexOf('/') + 1);
+        final int dot = baseName.lastIndexOf('.');
+        if (dot > 0) {
+            baseName = baseName.substring(0, dot);
+        }
+        String outputName = baseName + spec.outputExtension();
+        // an entry may already be named like a generated name, e.g. "a-2.jpg" next to "a.jpg" and "a.png"
+        for (int i = 1; !outputNames.add(outputName); i++) {
+            outputName = baseName + "-" + i + spec.outputExtension();
+        }
+        return outputName;
+    }
+
+    private record Converted(BatchEntryResult result, Path outputFile) {
+    }
+}
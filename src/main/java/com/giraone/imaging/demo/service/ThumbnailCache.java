@@ -0,0 +1,79 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.demo.config.ThumbnailCacheProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Size-bounded in-memory cache for created thumbnails. Eviction is Caffeine's W-TinyLFU policy based on the
+ * byte size of the entries. Hit, miss and eviction counters are published as {@code cache.*} metrics with
+ * the tag {@code cache=thumbnails}.
+ */
+@Component
+public class ThumbnailCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    /** Rough per-entry overhead (key, record, map node) used for weighing. */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final boolean enabled;
+    private final long maxEntryBytes;
+    private final Cache<ThumbnailKey, CachedThumbnail> cache;
+
+    public ThumbnailCache(ThumbnailCacheProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.maxEntryBytes = properties.getMaxEntrySize().toBytes();
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(properties.getMaxSize().toBytes())
+            .weigher((ThumbnailKey key, CachedThumbnail value) -> value.data().length + ENTRY_OVERHEAD)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "thumbnails");
+        LOGGER.info("Thumbnail cache enabled={}, maxSize={}, maxEntrySize={}",
+            enabled, properties.getMaxSize(), properties.getMaxEntrySize());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Return the cached thumbnail or null, if there is none.
+     */
+    public CachedThumbnail get(ThumbnailKey key) {
+        return enabled ? cache.getIfPresent(key) : null;
+    }
+
+    /**
+     * Check, whether a thumbnail of the given size would be stored by {@link #put}.
+     */
+    public boolean accepts(long byteSize) {
+        return enabled && byteSize <= maxEntryBytes;
+    }
+
+    /**
+     * Store a thumbnail. Entries above the configured maximum entry size are silently ignored.
+     */
+    public void put(ThumbnailKey key, CachedThumbnail thumbnail) {
+        if (accepts(thumbnail.data().length)) {
+            cache.put(key, thumbnail);
+        }
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Thumbnail bytes together with their content type.
+     */
+    public record CachedThumbnail(String contentType, byte[] data) {
+    }
+}
@@ -0,0 +1,165 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.demo.config.CoalescingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single-flight execution of thumbnail conversions: while a conversion for a {@link ThumbnailKey} (content hash plus
+ * conversion parameters) is running, identical requests join it instead of starting their own. The first request
+ * (leader) runs the conversion, all others wait for its result. A failure is passed to every waiting request, but not
+ * kept, so the next request starts a new conversion.
+ * <p>
+ * Every participant gets its own output file, which it has to release with {@link SpoolManager#delete}. The last one
+ * takes the leader's file, the others get a copy.
+ * <p>
+ * Metrics: {@code imaging.coalescing.inflight} (gauge), {@code imaging.coalescing.leader} and
+ * {@code imaging.coalescing.joined} (counters).
+ */
+@Component
+public class ThumbnailCoalescer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailCoalescer.class);
+
+    private final boolean enabled;
+    private final SpoolManager spoolManager;
+    private final Map<ThumbnailKey, Flight> inflight = new ConcurrentHashMap<>();
+    private final Counter leaderCounter;
+    private final Counter joinedCounter;
+
+    public ThumbnailCoalescer(CoalescingProperties properties, SpoolManager spoolManager, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.spoolManager = spoolManager;
+        this.leaderCounter = Counter.builder("imaging.coalescing.leader").register(meterRegistry);
+        this.joinedCounter = Counter.builder("imaging.coalescing.joined").register(meterRegistry);
+        Gauge.builder("imaging.coalescing.inflight", inflight, Map::size).register(meterRegistry);
+        LOGGER.info("Thumbnail coalescing enabled={}", enabled);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Run the conversion or join a running conversion with the same key.
+     *
+     * @param key        the key of the conversion, null to run without coalescing
+     * @param conversion the conversion, that creates an output file
+     * @return an output file owned by the caller
+     * @throws Exception the exception of the conversion, also for joined requests
+     */
+    public Path convert(ThumbnailKey key, Conversion conversion) throws Exception {
+
+        if (!enabled || key == null) {
+            return conversion.run();
+        }
+        final Flight created = new Flight();
+        final Flight flight = inflight.compute(key, (k, running) -> {
+            final Flight f = running != null ? running : created;
+            f.participants.incrementAndGet();
+            return f;
+        });
+        try {
+            if (flight == created) {
+                leaderCounter.increment();
+                lead(key, flight, conversion);
+            } else {
+                joinedCounter.increment();
+                LOGGER.debug("Joined conversion {}", key);
+            }
+            return claim(flight, await(flight));
+        } finally {
+            leave(flight);
+        }
+    }
+
+    private void lead(ThumbnailKey key, Flight flight, Conversion conversion) {
+        Path output = null;
+        Throwable failure = null;
+        try {
+            output = conversion.run();
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            // no more joins, a failure is not kept for later requests
+            inflight.remove(key, flight);
+            flight.closed = true;
+        }
+        if (failure != null) {
+            flight.result.completeExceptionally(failure);
+        } else {
+            flight.result.complete(output);
+        }
+    }
+
+    private static Path await(Flight flight) throws Exception {
+        try {
+            return flight.result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Path claim(Flight flight, Path shared) throws IOException {
+        // once no one can join anymore, the last remaining participant takes the file itself
+        synchronized (flight) {
+            if (flight.closed && flight.participants.get() == 1) {
+                flight.taken = true;
+                return shared;
+            }
+        }
+        final String fileName = shared.getFileName().toString();
+        final int dot = fileName.lastIndexOf('.');
+        final Path copy = spoolManager.createFile("thumb-out-", dot >= 0 ? fileName.substring(dot) : "");
+        try {
+            Files.copy(shared, copy, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            spoolManager.delete(copy);
+            throw e;
+        }
+        spoolManager.account(copy);
+        return copy;
+    }
+
+    private void leave(Flight flight) {
+        final boolean last;
+        synchronized (flight) {
+            last = flight.participants.decrementAndGet() == 0 && !flight.taken;
+        }
+        if (last && flight.result.isDone() && !flight.result.isCompletedExceptionally()) {
+            spoolManager.delete(flight.result.join());
+        }
+    }
+
+    /**
+     * A conversion creating an output file.
+     */
+    @FunctionalInterface
+    public interface Conversion {
+        Path run() throws Exception;
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<Path> result = new CompletableFuture<>();
+        private final AtomicInteger participants = new AtomicInteger();
+        private volatile boolean closed;
+        private boolean taken;
+    }
+}
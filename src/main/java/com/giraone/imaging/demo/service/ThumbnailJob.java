@@ -0,0 +1,131 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileTypeDetector;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.Future;
+
+/**
+ * State of an asynchronous thumbnail job. Fields are written by the job thread and read by request threads.
+ */
+public class ThumbnailJob {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private final String id;
+    private final FileTypeDetector.FileType fileType;
+    private final ThumbnailSpec spec;
+    private final Path inputFile;
+    private final Instant submittedAt = Instant.now();
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Path outputFile;
+    private volatile long outputByteSize;
+    private volatile String error;
+    private volatile Future<?> future;
+    private boolean cancelled;
+
+    ThumbnailJob(String id, FileTypeDetector.FileType fileType, ThumbnailSpec spec, Path inputFile) {
+        this.id = id;
+        this.fileType = fileType;
+        this.spec = spec;
+        this.inputFile = inputFile;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public FileTypeDetector.FileType getFileType() {
+        return fileType;
+    }
+
+    public ThumbnailSpec getSpec() {
+        return spec;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public Path getOutputFile() {
+        return outputFile;
+    }
+
+    public long getOutputByteSize() {
+        return outputByteSize;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    Path getInputFile() {
+        return inputFile;
+    }
+
+    Future<?> getFuture() {
+        return future;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * @return false, if the job was cancelled before it started
+     */
+    synchronized boolean running() {
+        if (cancelled) {
+            return false;
+        }
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+        return true;
+    }
+
+    /**
+     * Cancel the job, if it has not started yet.
+     * @return true, if the job was still queued and will not run
+     */
+    synchronized boolean cancelIfQueued() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        cancelled = true;
+        return true;
+    }
+
+    void done(Path outputFile, long outputByteSize) {
+        this.outputFile = outputFile;
+        this.outputByteSize = outputByteSize;
+        finishedAt = Instant.now();
+        status = Status.DONE;
+    }
+
+    void failed(String error) {
+        this.error = error;
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+}
@@ -0,0 +1,142 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.FormatNotSupportedException;
+import com.giraone.imaging.demo.config.JobProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous thumbnail creation for slow formats (PDF, video). Jobs run on a dedicated executor with a bounded
+ * queue. A running job waits for a slot of the {@link ConversionBulkheads} of its file type, so jobs and requests share
+ * the limits of the slow formats, and converts on the {@link CpuPool}, so the job threads only orchestrate. Finished jobs and their results are removed after the configured retention time.
+ */
+@Service
+public class ThumbnailJobService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailJobService.class);
+
+    private final ThumbnailService thumbnailService;
+    private final ConversionBulkheads conversionBulkheads;
+    private final CpuPool cpuPool;
+    private final SpoolManager spoolManager;
+    private final ExecutorService jobExecutor;
+    private final Duration retention;
+    private final Map<String, ThumbnailJob> jobs = new ConcurrentHashMap<>();
+
+    public ThumbnailJobService(ThumbnailService thumbnailService, ConversionBulkheads conversionBulkheads, CpuPool cpuPool,
+                               SpoolManager spoolManager, @Qualifier("jobExecutor") ExecutorService jobExecutor,
+                               JobProperties properties, MeterRegistry meterRegistry) {
+        this.thumbnailService = thumbnailService;
+        this.conversionBulkheads = conversionBulkheads;
+        this.cpuPool = cpuPool;
+        this.spoolManager = spoolManager;
+        this.jobExecutor = jobExecutor;
+        this.retention = properties.getRetention();
+        Gauge.builder("imaging.jobs.retained", jobs, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Submit a job for a spooled input file. The job takes over the ownership of the input file on success.
+     * @throws FormatNotSupportedException when there is no provider for the file type
+     * @throws RejectedExecutionException when the job queue is full
+     */
+    public ThumbnailJob submit(Path inputFile, FileTypeDetector.FileType fileType, ThumbnailSpec spec) throws FormatNotSupportedException {
+
+        // fail fast with the same provider dispatch, that is used by the job
+        thumbnailService.getThumbnailProvider(fileType);
+        final ThumbnailJob job = new ThumbnailJob(UUID.randomUUID().toString(), fileType, spec, inputFile);
+        jobs.put(job.getId(), job);
+        try {
+            job.setFuture(jobExecutor.submit(() -> run(job)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    public ThumbnailJob get(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Remove a job and its result. A queued job is cancelled, a running job finishes, but its result is discarded.
+     */
+    public boolean remove(String id) {
+        final ThumbnailJob job = jobs.remove(id);
+        if (job == null) {
+            return false;
+        }
+        if (job.cancelIfQueued()) {
+            final Future<?> future = job.getFuture();
+            if (future != null) {
+                future.cancel(false);
+            }
+            // run() is skipped, so its cleanup of the input file, too
+            spoolManager.delete(job.getInputFile());
+            LOGGER.debug("Job {} cancelled", id);
+        }
+        spoolManager.delete(job.getOutputFile());
+        return true;
+    }
+
+    /**
+     * Remove finished jobs, that are older than the retention time.
+     */
+    @Scheduled(fixedDelayString = "${imaging.jobs.sweep-interval:60s}")
+    public void expireFinishedJobs() {
+        final Instant limit = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            if (job.isFinished() && job.getFinishedAt().isBefore(limit)) {
+                spoolManager.delete(job.getOutputFile());
+                LOGGER.debug("Job {} expired", job.getId());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void run(ThumbnailJob job) {
+        if (!job.running()) {
+            return;
+        }
+        final Path inputFile = job.getInputFile();
+        try {
+            final Path outputFile;
+            try (ConversionBulkheads.Permit permit = conversionBulkheads.acquireBlocking(job.getFileType())) {
+                outputFile = cpuPool.call(() -> thumbnailService.createThumbnail(inputFile, job.getFileType(), job.getSpec()));
+            }
+            job.done(outputFile, Files.size(outputFile));
+            LOGGER.info("Job {} done fileType={} outputByteSize={}", job.getId(), job.getFileType(), job.getOutputByteSize());
+            if (!jobs.containsKey(job.getId())) {
+                // removed while running
+                spoolManager.delete(outputFile);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.failed("interrupted");
+        } catch (Exception e) {
+            LOGGER.warn("Job {} failed", job.getId(), e);
+            job.failed(String.valueOf(e.getMessage()));
+        } finally {
+            spoolManager.delete(inputFile);
+        }
+    }
+}
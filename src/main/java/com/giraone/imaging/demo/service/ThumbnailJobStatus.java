@@ -0,0 +1,20 @@
+package com.giraone.imaging.demo.service;
+
+import java.time.Instant;
+
+/**
+ * JSON view of a {@link ThumbnailJob}.
+ */
+public record ThumbnailJobStatus(String id, ThumbnailJob.Status status, String fileType,
+                                 int width, int height, String quality, String outputFormat,
+                                 Instant submittedAt, Instant startedAt, Instant finishedAt,
+                                 long outputByteSize, String error) {
+
+    public static ThumbnailJobStatus of(ThumbnailJob job) {
+        final ThumbnailSpec spec = job.getSpec();
+        return new ThumbnailJobStatus(job.getId(), job.getStatus(), job.getFileType().name(),
+            spec.width(), spec.height(), spec.quality().name(), spec.outputFormat(),
+            job.getSubmittedAt(), job.getStartedAt(), job.getFinishedAt(),
+            job.getOutputByteSize(), job.getError());
+    }
+}
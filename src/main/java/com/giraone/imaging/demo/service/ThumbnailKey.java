@@ -0,0 +1,33 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.ConversionCommand;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content-addressed identity of a thumbnail: the SHA-256 of the input bytes plus all conversion parameters,
+ * that have an influence on the output.
+ */
+public record ThumbnailKey(String contentHash, int width, int height,
+                           ConversionCommand.CompressionQuality quality, String outputFormat, int page) {
+
+    public static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Build the key from a digest (created by {@link #newDigest()}), that was fed with the complete input.
+     */
+    public static ThumbnailKey of(MessageDigest contentDigest, ThumbnailSpec spec) {
+        return new ThumbnailKey(HexFormat.of().formatHex(contentDigest.digest()),
+            spec.width(), spec.height(), spec.quality(), spec.outputFormat(), spec.page());
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " not available", e);
+        }
+    }
+}
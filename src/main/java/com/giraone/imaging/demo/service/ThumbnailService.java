@@ -0,0 +1,249 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.FormatNotSupportedException;
+import com.giraone.imaging.ThumbnailProvider;
+import com.giraone.imaging.demo.config.SubsamplingProperties;
+import com.giraone.imaging.demo.config.TiffProperties;
+import com.giraone.imaging.demo.metrics.ImagingMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.giraone.imaging.MimeTypes.*;
+
+/**
+ * Thumbnail creation for spooled input files using the imaging-kit {@link ThumbnailProvider}. Large JPEG and PNG
+ * sources are decoded with ImageIO source subsampling instead and resized in memory, TIFF sources are read band by
+ * band with the {@link TiledTiffReader}. Pages other than the first are supported for TIFF and PDF sources only,
+ * the latter are rendered with the {@link PdfPageService}.
+ */
+@Service
+public class ThumbnailService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailService.class);
+
+    private final ImagingMetrics imagingMetrics;
+    private final DecodeMemoryBudget decodeMemoryBudget;
+    private final SpoolManager spoolManager;
+    private final PdfPageService pdfPageService;
+    private final boolean subsamplingEnabled;
+    private final int oversampling;
+    private final boolean tiffTiled;
+    private final int tiffBandRows;
+
+    public ThumbnailService(ImagingMetrics imagingMetrics, DecodeMemoryBudget decodeMemoryBudget, SpoolManager spoolManager,
+                            PdfPageService pdfPageService, SubsamplingProperties subsamplingProperties, TiffProperties tiffProperties) {
+        this.imagingMetrics = imagingMetrics;
+        this.decodeMemoryBudget = decodeMemoryBudget;
+        this.spoolManager = spoolManager;
+        this.pdfPageService = pdfPageService;
+        this.subsamplingEnabled = subsamplingProperties.isEnabled();
+        this.oversampling = Math.max(1, subsamplingProperties.getOversampling());
+        this.tiffTiled = tiffProperties.isTiled();
+        this.tiffBandRows = tiffProperties.getBandRows();
+    }
+
+    /**
+     * Create a thumbnail for a spooled input file.
+     * @param inputFile the input, which must have the extension given by {@link #getFileExtension}
+     * @param fileType the detected file type of the input
+     * @param spec the requested thumbnail
+     * @return a new spool file containing the thumbnail, which is owned by the caller and has to be released with
+     * {@link SpoolManager#delete}
+     * @throws FormatNotSupportedException when there is no provider for the file type
+     * @throws PageNotFoundException when the requested page does not exist
+     * @throws ImageTooLargeException when the decoded source would not fit into the memory budget
+     * @throws BulkheadFullException when the memory budget does not become free in time
+     */
+    public Path createThumbnail(Path inputFile, FileTypeDetector.FileType fileType, ThumbnailSpec spec) throws Exception {
+
+        final ThumbnailProvider thumbnailProvider = getThumbnailProvider(fileType);
+        if (spec.page() > 1 && fileType != FileTypeDetector.FileType.TIFF && fileType != FileTypeDetector.FileType.PDF) {
+            throw new PageNotFoundException("Page " + spec.page() + " not found, " + fileType + " files have a single page");
+        }
+        final Path outputFile = spoolManager.createFile("thumb-out-", spec.outputExtension());
+        boolean success = false;
+        try (ImagingMetrics.ActiveConversion conversion = imagingMetrics.startConversion()) {
+            // the thumbnail provider always uses the first page
+            if (fileType == FileTypeDetector.FileType.TIFF && (tiffTiled || spec.page() > 1)) {
+                success = createFromTiff(inputFile, spec, outputFile);
+            } else if (fileType == FileTypeDetector.FileType.PDF && spec.page() > 1) {
+                try (OutputStream out = Files.newOutputStream(outputFile)) {
+                    pdfPageService.writePage(inputFile, spec.page(), spec, out);
+                }
+                success = true;
+            }
+            if (!success && spec.page() > 1) {
+                throw new IOException("Page " + spec.page() + " of " + inputFile + " cannot be read");
+            }
+            if (!success) {
+                createDecoded(thumbnailProvider, inputFile, fileType, spec, outputFile);
+                success = true;
+            }
+        } finally {
+            if (success) {
+                spoolManager.account(outputFile);
+            } else {
+                spoolManager.delete(outputFile);
+            }
+        }
+        LOGGER.debug("Thumbnail created fileType={} outputFormat={} outputFile={}", fileType, spec.outputFormat(), outputFile);
+        return outputFile;
+    }
+
+    /**
+     * Create the thumbnail from the decoded source, subsampled if possible, otherwise with the thumbnail provider.
+     */
+    private void createDecoded(ThumbnailProvider thumbnailProvider, Path inputFile, FileTypeDetector.FileType fileType,
+                               ThumbnailSpec spec, Path outputFile) throws Exception {
+
+        // the source dimensions are read from the header, formats unknown to ImageIO reserve nothing
+        final Dimension source = decodeMemoryBudget.isEnabled() || subsamplingEnabled ? ImageIoSupport.readDimension(inputFile) : null;
+        final long sourcePixels = source != null ? (long) source.width * source.height : -1L;
+        decodeMemoryBudget.checkPixels(sourcePixels);
+        final int subsampling = subsamplingEnabled ? subsamplingFactor(fileType, source, spec.dimension(), oversampling) : 1;
+        if (subsampling > 1 && createSubsampled(inputFile, source, subsampling, spec, outputFile)) {
+            return;
+        }
+        try (DecodeMemoryBudget.Reservation reservation = decodeMemoryBudget.reserve(sourcePixels)) {
+            thumbnailProvider.createThumbnail(inputFile.toFile(), spec.toCommand(outputFile.toFile()));
+        }
+    }
+
+    /**
+     * The heap needed for a TIFF read band by band is bounded by the plan, so the size of the source is not checked
+     * against the memory budget - only the peak of the plan is reserved.
+     *
+     * @return false, when ImageIO cannot read the file and the thumbnail provider has to be used
+     */
+    private boolean createFromTiff(Path inputFile, ThumbnailSpec spec, Path outputFile)
+        throws PageNotFoundException, ImageTooLargeException, BulkheadFullException, InterruptedException, IOException {
+
+        final TiledTiffReader tiff;
+        try {
+            tiff = new TiledTiffReader(inputFile);
+        } catch (IOException e) {
+            LOGGER.debug("Tiled reading of {} not possible, using thumbnail provider: {}", inputFile, e.getMessage());
+            return false;
+        }
+        try (tiff) {
+            final TiledTiffReader.Plan plan = tiff.plan(spec.page(), spec.dimension(), oversampling, tiffBandRows);
+            try (DecodeMemoryBudget.Reservation reservation = decodeMemoryBudget.reserve(plan.peakPixels())) {
+                final BufferedImage thumbnail;
+                try {
+                    thumbnail = tiff.read(plan);
+                } catch (IOException e) {
+                    LOGGER.debug("Tiled reading of {} failed, using thumbnail provider: {}", inputFile, e.getMessage());
+                    return false;
+                }
+                try (OutputStream out = Files.newOutputStream(outputFile)) {
+                    ImageIoSupport.write(thumbnail, spec.quality(), out);
+                }
+            }
+            LOGGER.debug("Thumbnail created from TIFF page {} with {}", spec.page(), plan);
+            return true;
+        }
+    }
+
+    /**
+     * Create the thumbnail from a subsampled decode of the source followed by a high-quality resize to the final size.
+     * @return false, if ImageIO cannot decode the source and the thumbnail provider has to be used
+     */
+    private boolean createSubsampled(Path inputFile, Dimension source, int subsampling, ThumbnailSpec spec, Path outputFile)
+        throws ImageTooLargeException, BulkheadFullException, InterruptedException, IOException {
+
+        final long decodedPixels = (long) Math.ceilDiv(source.width, subsampling) * Math.ceilDiv(source.height, subsampling);
+        try (DecodeMemoryBudget.Reservation reservation = decodeMemoryBudget.reserve(decodedPixels)) {
+            final BufferedImage decoded;
+            try {
+                decoded = ImageIoSupport.readSubsampled(inputFile, subsampling);
+            } catch (IOException e) {
+                LOGGER.debug("Subsampled decoding of {} failed, using thumbnail provider: {}", inputFile, e.getMessage());
+                return false;
+            }
+            final BufferedImage thumbnail = ImageIoSupport.scaleDown(decoded,
+                ImageIoSupport.fitInto(source.width, source.height, spec.dimension()));
+            try (OutputStream out = Files.newOutputStream(outputFile)) {
+                ImageIoSupport.write(thumbnail, spec.quality(), out);
+            }
+            LOGGER.debug("Thumbnail created from {}x{} source with subsampling {}", source.width, source.height, subsampling);
+            return true;
+        }
+    }
+
+    /**
+     * Subsampling factor for decoding JPEG and PNG sources: the largest factor, that keeps the decoded image at least
+     * {@code oversampling} times the thumbnail size. 1 means full resolution.
+     */
+    static int subsamplingFactor(FileTypeDetector.FileType fileType, Dimension source, Dimension box, int oversampling) {
+        if (source == null || (fileType != FileTypeDetector.FileType.JPEG && fileType != FileTypeDetector.FileType.PNG)) {
+            return 1;
+        }
+        final Dimension target = ImageIoSupport.fitInto(source.width, source.height, box);
+        return Math.max(1, Math.min(source.width / (target.width * oversampling), source.height / (target.height * oversampling)));
+    }
+
+    /**
+     * Select the thumbnail provider for a file type.
+     * @throws FormatNotSupportedException when there is no provider for the file type
+     */
+    public ThumbnailProvider getThumbnailProvider(FileTypeDetector.FileType fileType) throws FormatNotSupportedException {
+        return ThumbnailProvider.getThumbnailProvider(determineOutputFormat(fileType));
+    }
+
+    /**
+     * True, if the file type is known and there is a thumbnail provider for it. Used to reject uploads
+     * right after the file type detection.
+     */
+    public boolean isSupported(FileTypeDetector.FileType fileType) {
+        if (fileType == FileTypeDetector.FileType.UNKNOWN) {
+            return false;
+        }
+        try {
+            getThumbnailProvider(fileType);
+            return true;
+        } catch (FormatNotSupportedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Determine output format (MIME type) based on input file type.
+     * Defaults to JPEG for most image formats, keeps PNG for PNG input.
+     */
+    public static String determineOutputFormat(FileTypeDetector.FileType fileType) {
+        return switch (fileType) {
+            case JPEG -> IMAGE_JPEG;
+            case PNG -> IMAGE_PNG;
+            case GIF -> IMAGE_GIF;
+            case PDF -> APPLICATION_PDF;
+            case MARKDOWN -> TEXT_MARKDOWN;
+            case MP4 -> VIDEO_MP4;
+            default -> DEFAULT;
+        };
+    }
+
+    /**
+     * Get file extension (with dot) based on file type.
+     */
+    public static String getFileExtension(FileTypeDetector.FileType fileType) {
+        return switch (fileType) {
+            case JPEG -> ".jpg";
+            case PNG -> ".png";
+            case GIF -> ".gif";
+            case BMP -> ".bmp";
+            case TIFF -> ".tif";
+            case PGM -> ".pgm";
+            case PDF -> ".pdf";
+            default -> ".img";
+        };
+    }
+}
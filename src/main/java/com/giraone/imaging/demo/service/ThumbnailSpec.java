@@ -0,0 +1,97 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.ConversionCommand;
+
+import java.awt.*;
+import java.io.File;
+
+import static com.giraone.imaging.ConversionCommand.CompressionQuality.LOSSLESS;
+import static com.giraone.imaging.MimeTypes.IMAGE_JPEG;
+import static com.giraone.imaging.MimeTypes.IMAGE_PNG;
+
+/**
+ * The requested thumbnail: bounding box, compression quality and the (1-based) page of multi-page sources.
+ * The page is only used for TIFF and PDF sources.
+ */
+public record ThumbnailSpec(int width, int height, ConversionCommand.CompressionQuality quality, int page) {
+
+    public ThumbnailSpec(int width, int height, ConversionCommand.CompressionQuality quality) {
+        this(width, height, quality, 1);
+    }
+
+    /**
+     * Maximum accepted value for width and height.
+     */
+    public static final int MAX_DIMENSION = 10000;
+
+    /**
+     * Validate and build a spec from request parameters.
+     * @throws IllegalArgumentException for invalid dimensions or quality names
+     */
+    public static ThumbnailSpec of(int width, int height, String qualityStr) {
+        if (!isValidDimension(width)) {
+            throw new IllegalArgumentException("Invalid width: " + width);
+        }
+        if (!isValidDimension(height)) {
+            throw new IllegalArgumentException("Invalid height: " + height);
+        }
+        return new ThumbnailSpec(width, height, parseQuality(qualityStr));
+    }
+
+    public static boolean isValidDimension(int value) {
+        return value > 0 && value <= MAX_DIMENSION;
+    }
+
+    /**
+     * Parse quality string from header to CompressionQuality enum.
+     * Maps user-friendly names to internal enum values.
+     * @throws IllegalArgumentException for unknown names
+     */
+    public static ConversionCommand.CompressionQuality parseQuality(String qualityStr) {
+        return switch (qualityStr.toUpperCase()) {
+            case "LOSSY_LOW", "LOSSY_SPEED" -> ConversionCommand.CompressionQuality.LOSSY_SPEED;
+            case "LOSSY_MEDIUM" -> ConversionCommand.CompressionQuality.LOSSY_MEDIUM;
+            case "LOSSY_HIGH", "LOSSY_BEST" -> ConversionCommand.CompressionQuality.LOSSY_BEST;
+            case "LOSSLESS" -> LOSSLESS;
+            default -> throw new IllegalArgumentException("Invalid quality: " + qualityStr);
+        };
+    }
+
+    /**
+     * The same thumbnail for another page.
+     * @throws IllegalArgumentException for pages below 1
+     */
+    public ThumbnailSpec withPage(int page) {
+        if (page < 1) {
+            throw new IllegalArgumentException("Invalid page: " + page);
+        }
+        return new ThumbnailSpec(width, height, quality, page);
+    }
+
+    public Dimension dimension() {
+        return new Dimension(width, height);
+    }
+
+    /**
+     * Output MIME type: PNG for lossless, JPEG otherwise.
+     */
+    public String outputFormat() {
+        return quality == LOSSLESS ? IMAGE_PNG : IMAGE_JPEG;
+    }
+
+    /**
+     * File extension (with dot) of the output format.
+     */
+    public String outputExtension() {
+        return quality == LOSSLESS ? ".png" : ".jpg";
+    }
+
+    public ConversionCommand toCommand(File outputFile) {
+        ConversionCommand command = new ConversionCommand();
+        command.setOutputFile(outputFile);
+        command.setOutputFormat(outputFormat());
+        command.setDimension(dimension());
+        command.setQuality(quality);
+        return command;
+    }
+}
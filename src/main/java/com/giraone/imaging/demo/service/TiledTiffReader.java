@@ -0,0 +1,190 @@
+package com.giraone.imaging.demo.service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.plugins.tiff.BaselineTIFFTagSet;
+import javax.imageio.plugins.tiff.TIFFDirectory;
+import javax.imageio.plugins.tiff.TIFFField;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Memory-bounded thumbnail creation for huge TIFF files using the ImageIO TIFF plugin. The source is read in bands
+ * of rows (aligned to the tiles or strips of the file), each band is decoded with source subsampling, drawn into
+ * a small intermediate raster and released before the next one is read. So the heap needed depends on the width of
+ * the source and the size of the thumbnail, but not on the height or the number of pages.
+ * <p>
+ * Multi-page files are split into pages by their IFDs. IFDs marked as reduced-resolution versions
+ * ({@code NewSubfileType} bit 0) belong to the preceding page and are used instead of the full-resolution image,
+ * when they are still large enough for the thumbnail.
+ * <p>
+ * Instances hold the open file and are not thread-safe.
+ */
+public class TiledTiffReader implements Closeable {
+
+    private final ImageInputStream in;
+    private final ImageReader reader;
+    private final List<List<Ifd>> pages = new ArrayList<>();
+
+    /**
+     * Open the file and read the directory structure (no image data).
+     *
+     * @throws IOException when the file is no TIFF readable by ImageIO
+     */
+    public TiledTiffReader(Path file) throws IOException {
+        this.in = ImageIO.createImageInputStream(file.toFile());
+        final Iterator<ImageReader> readers = in != null ? ImageIO.getImageReadersByFormatName("tiff") : null;
+        if (readers == null || !readers.hasNext()) {
+            close();
+            throw new IOException("No ImageIO TIFF reader for " + file);
+        }
+        this.reader = readers.next();
+        try {
+            reader.setInput(in, false, false);
+            final int count = reader.getNumImages(true);
+            for (int index = 0; index < count; index++) {
+                final Ifd ifd = new Ifd(index, reader.getWidth(index), reader.getHeight(index), reader.getTileHeight(index));
+                if (isReducedResolution(reader.getImageMetadata(index)) && !pages.isEmpty()) {
+                    pages.get(pages.size() - 1).add(ifd);
+                } else {
+                    pages.add(new ArrayList<>(List.of(ifd)));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Size of the full-resolution image of a page.
+     * @throws PageNotFoundException when the page does not exist
+     */
+    public Dimension getPageSize(int page) throws PageNotFoundException {
+        final Ifd full = pageIfds(page).get(0);
+        return new Dimension(full.width, full.height);
+    }
+
+    /**
+     * Decide, which IFD of the page is read with which subsampling and band height.
+     *
+     * @param page         1-based page number
+     * @param box          bounding box of the thumbnail
+     * @param oversampling the decoded image keeps at least this factor of the thumbnail size
+     * @param bandRows     minimum number of source rows decoded at once
+     * @throws PageNotFoundException when the page does not exist
+     */
+    public Plan plan(int page, Dimension box, int oversampling, int bandRows) throws PageNotFoundException {
+        final List<Ifd> ifds = pageIfds(page);
+        final Ifd full = ifds.get(0);
+        final Dimension target = ImageIoSupport.fitInto(full.width, full.height, box);
+        // the smallest image, that still has the oversampled thumbnail size, otherwise the full resolution
+        Ifd selected = full;
+        for (Ifd ifd : ifds) {
+            if (ifd.width >= target.width * oversampling && ifd.height >= target.height * oversampling
+                && (long) ifd.width * ifd.height < (long) selected.width * selected.height) {
+                selected = ifd;
+            }
+        }
+        final Dimension selectedTarget = ImageIoSupport.fitInto(selected.width, selected.height, box);
+        final int subsampling = Math.max(1, Math.min(selected.width / (selectedTarget.width * oversampling),
+            selected.height / (selectedTarget.height * oversampling)));
+        // whole tiles or strips per band, but at least bandRows, and a multiple of the subsampling to keep the grid
+        int band = Math.max(1, bandRows);
+        if (selected.tileHeight > 0 && selected.tileHeight < selected.height) {
+            band = Math.ceilDiv(band, selected.tileHeight) * selected.tileHeight;
+        }
+        band = Math.min(Math.ceilDiv(band, subsampling) * subsampling, Math.ceilDiv(selected.height, subsampling) * subsampling);
+        return new Plan(selected.index, selected.width, selected.height, subsampling, band, target);
+    }
+
+    /**
+     * Read the image selected by the plan band by band and scale it to the thumbnail size.
+     */
+    public BufferedImage read(Plan plan) throws IOException {
+        final BufferedImage decoded = new BufferedImage(Math.ceilDiv(plan.width, plan.subsampling),
+            Math.ceilDiv(plan.height, plan.subsampling), BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = decoded.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, decoded.getWidth(), decoded.getHeight());
+            final ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(plan.subsampling, plan.subsampling, 0, 0);
+            for (int y = 0; y < plan.height; y += plan.bandRows) {
+                param.setSourceRegion(new Rectangle(0, y, plan.width, Math.min(plan.bandRows, plan.height - y)));
+                final BufferedImage band = reader.read(plan.imageIndex, param);
+                g.drawImage(band, 0, y / plan.subsampling, null);
+                band.flush();
+            }
+        } finally {
+            g.dispose();
+        }
+        return ImageIoSupport.scaleDown(decoded, plan.target);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.dispose();
+        }
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    private List<Ifd> pageIfds(int page) throws PageNotFoundException {
+        if (page < 1 || page > pages.size()) {
+            throw new PageNotFoundException("Page " + page + " not found, the file has " + pages.size() + " pages");
+        }
+        return pages.get(page - 1);
+    }
+
+    private static boolean isReducedResolution(IIOMetadata metadata) {
+        try {
+            final TIFFField field = TIFFDirectory.createFromMetadata(metadata).getTIFFField(BaselineTIFFTagSet.TAG_NEW_SUBFILE_TYPE);
+            return field != null && (field.getAsInt(0) & BaselineTIFFTagSet.NEW_SUBFILE_TYPE_REDUCED_RESOLUTION) != 0;
+        } catch (IIOInvalidTreeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * How a page is read.
+     *
+     * @param imageIndex   index of the selected IFD
+     * @param width        width of the selected IFD
+     * @param height       height of the selected IFD
+     * @param subsampling  decode every n-th pixel and row
+     * @param bandRows     source rows per band
+     * @param target       size of the thumbnail
+     */
+    public record Plan(int imageIndex, int width, int height, int subsampling, int bandRows, Dimension target) {
+
+        /**
+         * Pixels held in memory at the same time: the subsampled raster, one decoded band at full resolution
+         * (the reader's decode buffer) and the thumbnail.
+         */
+        public long peakPixels() {
+            return (long) Math.ceilDiv(width, subsampling) * Math.ceilDiv(height, subsampling)
+                + (long) width * bandRows
+                + (long) target.width * target.height;
+        }
+    }
+
+    private record Ifd(int index, int width, int height, int tileHeight) {
+    }
+}
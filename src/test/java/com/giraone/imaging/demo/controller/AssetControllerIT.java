@@ -0,0 +1,155 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.demo.service.Asset;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the asset store endpoints.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"imaging.assets.directory=target/assets-it", "imaging.assets.max-renditions=2"})
+@AutoConfigureWebTestClient
+class AssetControllerIT {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    void uploadAsset_stores_identical_content_once() throws Exception {
+        /// arrange
+        byte[] jpegContent = loadTestFile("image-01.jpg");
+        // remove the asset of a previous run
+        webTestClient.delete().uri("/assets/{id}", upload(jpegContent).getResponseBody().id()).exchange();
+        /// act
+        EntityExchangeResult<Asset> first = upload(jpegContent);
+        EntityExchangeResult<Asset> second = upload(jpegContent);
+        /// assert
+        assertThat(first.getStatus()).isEqualTo(HttpStatus.CREATED);
+        assertThat(second.getStatus()).isEqualTo(HttpStatus.OK);
+        Asset asset = first.getResponseBody();
+        assertThat(asset.id()).hasSize(64).isEqualTo(second.getResponseBody().id());
+        assertThat(asset.fileType().name()).isEqualTo("JPEG");
+        assertThat(asset.size()).isEqualTo(jpegContent.length);
+        assertThat(first.getResponseHeaders().getLocation()).hasToString("/assets/" + asset.id());
+        byte[] original = webTestClient.get().uri("/assets/{id}", asset.id())
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(MediaType.IMAGE_JPEG)
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        assertThat(original).isEqualTo(jpegContent);
+    }
+
+    @Test
+    void getRendition_creates_rendition_once_and_supports_etag() throws Exception {
+        /// arrange
+        String id = upload(loadTestFile("image-01.png")).getResponseBody().id();
+        /// act
+        EntityExchangeResult<byte[]> first = getRendition(id);
+        EntityExchangeResult<byte[]> second = getRendition(id);
+        /// assert
+        BufferedImage rendition = ImageIO.read(new ByteArrayInputStream(first.getResponseBody()));
+        assertThat(rendition.getWidth()).isEqualTo(100);
+        assertThat(rendition.getHeight()).isEqualTo(75);
+        assertThat(second.getResponseBody()).isEqualTo(first.getResponseBody());
+        assertThat(first.getResponseHeaders().getCacheControl()).contains("immutable");
+        String eTag = first.getResponseHeaders().getETag();
+        webTestClient.get().uri("/assets/{id}/rendition?width=100&height=100", id)
+            .header("If-None-Match", eTag)
+            .exchange()
+            .expectStatus().isNotModified();
+    }
+
+    @Test
+    void getRendition_evicts_least_recently_used_renditions() throws Exception {
+        /// arrange
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "png", png);
+        byte[] content = png.toByteArray();
+        // remove the asset of a previous run
+        webTestClient.delete().uri("/assets/{id}", upload(content).getResponseBody().id()).exchange();
+        String id = upload(content).getResponseBody().id();
+        Path assetDirectory = Path.of("target/assets-it", id.substring(0, 2), id);
+        getRendition(id, 20);
+        getRendition(id, 30);
+        getRendition(id, 20);
+        /// act
+        getRendition(id, 40);
+        /// assert
+        try (Stream<Path> files = Files.list(assetDirectory)) {
+            assertThat(files.map(file -> file.getFileName().toString()))
+                .containsExactlyInAnyOrder("original.png", "20x20-LOSSY_MEDIUM-1.jpg", "40x40-LOSSY_MEDIUM-1.jpg");
+        }
+    }
+
+    @Test
+    void unknown_and_invalid_ids_are_not_found() throws Exception {
+        /// arrange
+        String id = upload(loadTestFile("image-01.gif")).getResponseBody().id();
+        /// act
+        webTestClient.delete().uri("/assets/{id}", id).exchange().expectStatus().isNoContent();
+        /// assert
+        webTestClient.get().uri("/assets/{id}", id).exchange().expectStatus().isNotFound();
+        webTestClient.get().uri("/assets/{id}/rendition", id).exchange().expectStatus().isNotFound();
+        webTestClient.get().uri("/assets/{id}", "..").exchange().expectStatus().isNotFound();
+        webTestClient.delete().uri("/assets/{id}", id).exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    void uploadAsset_rejects_unsupported_type() throws Exception {
+        /// act, assert
+        webTestClient.put().uri("/assets")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(loadTestFile("text.txt"))
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    private EntityExchangeResult<Asset> upload(byte[] content) {
+        return webTestClient.put().uri("/assets")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(content)
+            .exchange()
+            .expectStatus().is2xxSuccessful()
+            .expectBody(Asset.class)
+            .returnResult();
+    }
+
+    private EntityExchangeResult<byte[]> getRendition(String id) {
+        return getRendition(id, 100);
+    }
+
+    private EntityExchangeResult<byte[]> getRendition(String id, int size) {
+        return webTestClient.get().uri("/assets/{id}/rendition?width={size}&height={size}", id, size, size)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(MediaType.IMAGE_JPEG)
+            .expectBody(byte[].class)
+            .returnResult();
+    }
+
+    private byte[] loadTestFile(String fileName) throws Exception {
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(fileName)) {
+            return is.readAllBytes();
+        }
+    }
+}
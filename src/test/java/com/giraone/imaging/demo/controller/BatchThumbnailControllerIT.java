@@ -0,0 +1,164 @@
+package com.giraone.imaging.demo.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.imaging.demo.service.BatchEntryResult;
+import com.giraone.imaging.demo.service.ThumbnailBatch;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.giraone.imaging.demo.controller.ZipEntries.unzip;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the batch thumbnail endpoint.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient(timeout = "PT30S")
+class BatchThumbnailControllerIT {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void createThumbnails_from_zip_returns_thumbnails_and_manifest() throws Exception {
+        /// arrange
+        byte[] zip = zip(Map.of(
+            "a/image-01.jpg", loadTestFile("image-01.jpg"),
+            "image-01.png", loadTestFile("image-01.png"),
+            "text.txt", loadTestFile("text.txt")));
+        /// act
+        byte[] result = webTestClient.put().uri("/create-thumbnails")
+            .header("Thumbnail-Width", "100")
+            .contentType(MediaType.parseMediaType(BatchThumbnailController.APPLICATION_ZIP))
+            .bodyValue(zip)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(BatchThumbnailController.APPLICATION_ZIP)
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        Map<String, byte[]> entries = unzip(result);
+        assertThat(entries).containsOnlyKeys("image-01.jpg", "image-01-1.jpg", ThumbnailBatch.MANIFEST_NAME);
+        List<BatchEntryResult> manifest = objectMapper.readValue(entries.get(ThumbnailBatch.MANIFEST_NAME), new TypeReference<>() {
+        });
+        assertThat(manifest).hasSize(3);
+        assertThat(manifest).filteredOn(r -> r.status() == BatchEntryResult.Status.OK).hasSize(2);
+        assertThat(manifest).filteredOn(r -> r.name().equals("text.txt"))
+            .singleElement()
+            .satisfies(r -> {
+                assertThat(r.status()).isNotEqualTo(BatchEntryResult.Status.OK);
+                assertThat(r.output()).isNull();
+            });
+    }
+
+    @Test
+    void createThumbnails_from_multipart_returns_thumbnails() throws Exception {
+        /// arrange
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("file", namedResource("image-01.jpg", loadTestFile("image-01.jpg")));
+        builder.part("file", namedResource("image-01.gif", loadTestFile("image-01.gif")));
+        /// act
+        byte[] result = webTestClient.post().uri("/create-thumbnails")
+            .header("Thumbnail-Width", "100")
+            .header("Thumbnail-Quality", "LOSSLESS")
+            .body(BodyInserters.fromMultipartData(builder.build()))
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        assertThat(unzip(result)).containsOnlyKeys("image-01.png", "image-01-1.png", ThumbnailBatch.MANIFEST_NAME);
+    }
+
+    @Test
+    void createThumbnails_from_zip_does_not_repeat_an_output_name_taken_by_an_entry() throws Exception {
+        /// arrange
+        byte[] jpeg = loadTestFile("image-01.jpg");
+        byte[] zip = zip(Map.of(
+            "a-2.jpg", jpeg,
+            "a.jpg", jpeg,
+            "a.png", loadTestFile("image-01.png")));
+        /// act
+        byte[] result = webTestClient.put().uri("/create-thumbnails")
+            .header("Thumbnail-Width", "100")
+            .contentType(MediaType.parseMediaType(BatchThumbnailController.APPLICATION_ZIP))
+            .bodyValue(zip)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        Map<String, byte[]> entries = unzip(result);
+        assertThat(entries).containsOnlyKeys("a-2.jpg", "a.jpg", "a-1.jpg", ThumbnailBatch.MANIFEST_NAME);
+        List<BatchEntryResult> manifest = objectMapper.readValue(entries.get(ThumbnailBatch.MANIFEST_NAME), new TypeReference<>() {
+        });
+        assertThat(manifest).extracting(BatchEntryResult::output).containsExactlyInAnyOrder("a-2.jpg", "a.jpg", "a-1.jpg");
+    }
+
+    @Test
+    void createThumbnails_returns_bad_request_for_invalid_quality() throws Exception {
+        /// arrange
+        byte[] zip = zip(Map.of("image-01.jpg", loadTestFile("image-01.jpg")));
+        /// act & assert
+        webTestClient.put().uri("/create-thumbnails")
+            .header("Thumbnail-Quality", "INVALID_QUALITY")
+            .contentType(MediaType.parseMediaType(BatchThumbnailController.APPLICATION_ZIP))
+            .bodyValue(zip)
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helper methods
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private byte[] loadTestFile(String fileName) throws Exception {
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(fileName)) {
+            assertThat(is).isNotNull();
+            return is.readAllBytes();
+        }
+    }
+
+    private static ByteArrayResource namedResource(String fileName, byte[] content) {
+        return new ByteArrayResource(content) {
+            @Override
+            public String getFilename() {
+                return fileName;
+            }
+        };
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, byte[]> entry : new TreeMap<>(entries).entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,60 @@
+package com.giraone.imaging.demo.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@code /create-thumbnail} with the on-disk cache and without the in-memory cache.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"imaging.thumbnail-cache.enabled=false", "imaging.disk-cache.enabled=true",
+        "imaging.disk-cache.directory=target/disk-cache-it"})
+@AutoConfigureWebTestClient
+class DiskThumbnailCacheIT {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void createThumbnail_serves_repeated_request_from_disk() throws Exception {
+        /// arrange
+        byte[] jpegContent;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("image-01.jpg")) {
+            jpegContent = is.readAllBytes();
+        }
+        EntityExchangeResult<byte[]> first = requestThumbnail(jpegContent);
+        double hitsBefore = meterRegistry.counter("imaging.disk.cache.hits").count();
+        /// act
+        EntityExchangeResult<byte[]> second = requestThumbnail(jpegContent);
+        /// assert
+        assertThat(meterRegistry.counter("imaging.disk.cache.hits").count()).isEqualTo(hitsBefore + 1);
+        assertThat(second.getResponseBody()).isEqualTo(first.getResponseBody());
+        assertThat(second.getResponseHeaders().getContentLength()).isEqualTo(first.getResponseBody().length);
+        assertThat(second.getResponseHeaders().getContentType()).isEqualTo(MediaType.IMAGE_JPEG);
+    }
+
+    private EntityExchangeResult<byte[]> requestThumbnail(byte[] content) {
+        return webTestClient.put().uri("/create-thumbnail")
+            .header("Thumbnail-Width", "125")
+            .header("Thumbnail-Height", "125")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(content)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class)
+            .returnResult();
+    }
+}
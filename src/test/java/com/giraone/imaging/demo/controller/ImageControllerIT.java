@@ -1,6 +1,14 @@
 package com.giraone.imaging.demo.controller;
 
 import com.giraone.imaging.FileInfo;
+import com.giraone.imaging.demo.service.Spooling;
+import com.giraone.imaging.demo.service.ThumbnailCache;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -10,12 +18,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -33,6 +51,12 @@ class ImageControllerIT {
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private ThumbnailCache thumbnailCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     // Test image files from imaging-kit test resources
     private static final String TEST_IMAGE_JPEG = "image-01.jpg";
     private static final String TEST_IMAGE_PNG = "image-01.png";
@@ -164,11 +188,11 @@ class ImageControllerIT {
 
     @ParameterizedTest
     @CsvSource({
-        "image-01.jpg,image/jpeg,1024,768,24",
-        "image-01.png,image/png,800,600,24",
-        "image-01.gif,image/gif,100,75,8"
+        "image-01.jpg,JPEG,image/jpeg,1024,768,24",
+        "image-01.png,PNG,image/png,800,600,24",
+        "image-01.gif,GIF,image/gif,100,75,8"
     })
-    void fetchFileInfo_returns_image_metadata(String testFileName, String expectedMimeType,
+    void fetchFileInfo_returns_image_metadata(String testFileName, String expectedFileType, String expectedMimeType,
                                               Integer expectedWidth, Integer expectedHeight,
                                               Integer expectedBitsPerPixel) throws Exception {
         /// arrange
@@ -188,6 +212,8 @@ class ImageControllerIT {
         assertThat(fileInfo.getWidth()).isEqualTo(expectedWidth);
         assertThat(fileInfo.getHeight()).isEqualTo(expectedHeight);
         assertThat(fileInfo.getBitsPerPixel()).isEqualTo(expectedBitsPerPixel);
+        // tagged like the other endpoints with the detected type, not with the MIME type
+        assertThat(awaitBytesIn("/fetch-file-info", expectedFileType)).isNotNull();
     }
 
     @Test
@@ -390,14 +416,144 @@ class ImageControllerIT {
     void createThumbnail_returns_error_for_text_file() throws Exception {
         /// arrange
         byte[] textContent = loadTestFile(TEST_TEXT);
-        /// act & assert - Returns 500 because conversion fails (ImageConversionException)
+        /// act & assert - Returns 415, because the file type is unknown
         webTestClient.put().uri("/create-thumbnail")
             .header("Thumbnail-Width", "100")
             .header("Thumbnail-Quality", "LOSSY_MEDIUM")
             .contentType(MediaType.APPLICATION_OCTET_STREAM)
             .bodyValue(textContent)
             .exchange()
-            .expectStatus().is5xxServerError();
+            .expectStatus().isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    @Test
+    void createThumbnail_subsamples_large_jpeg_to_exact_size() throws Exception {
+        /// arrange
+        BufferedImage image = new BufferedImage(4000, 3000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.BLUE, 4000, 3000, Color.ORANGE));
+        g.fillRect(0, 0, 4000, 3000);
+        g.dispose();
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", jpeg);
+        /// act
+        byte[] thumbnailBytes = requestThumbnail(jpeg.toByteArray(), "200", "LOSSY_MEDIUM");
+        /// assert
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(thumbnailBytes));
+        assertThat(thumbnail.getWidth()).isEqualTo(200);
+        assertThat(thumbnail.getHeight()).isEqualTo(150);
+    }
+
+    @Test
+    void createThumbnail_uses_requested_tiff_page() throws Exception {
+        /// arrange - page 1 is landscape, page 2 portrait
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("tiff").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(tiff)) {
+            writer.setOutput(out);
+            writer.prepareWriteSequence(null);
+            writer.writeToSequence(new IIOImage(new BufferedImage(800, 400, BufferedImage.TYPE_INT_RGB), null, null), null);
+            writer.writeToSequence(new IIOImage(new BufferedImage(300, 600, BufferedImage.TYPE_INT_RGB), null, null), null);
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+        /// act
+        byte[] thumbnailBytes = webTestClient.put().uri("/create-thumbnail")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .header("Thumbnail-Width", "100")
+            .header("Thumbnail-Height", "100")
+            .header("Thumbnail-Page", "2")
+            .bodyValue(tiff.toByteArray())
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class)
+            .returnResult().getResponseBody();
+        /// assert
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(thumbnailBytes));
+        assertThat(thumbnail.getWidth()).isEqualTo(50);
+        assertThat(thumbnail.getHeight()).isEqualTo(100);
+        webTestClient.put().uri("/create-thumbnail")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .header("Thumbnail-Page", "3")
+            .bodyValue(tiff.toByteArray())
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void createThumbnail_uses_requested_pdf_page() throws Exception {
+        /// arrange - page 1 is landscape, page 2 portrait
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage(new PDRectangle(800, 400)));
+            document.addPage(new PDPage(new PDRectangle(300, 600)));
+            document.save(pdf);
+        }
+        /// act
+        byte[] thumbnailBytes = webTestClient.put().uri("/create-thumbnail")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .header("Thumbnail-Width", "100")
+            .header("Thumbnail-Height", "100")
+            .header("Thumbnail-Page", "2")
+            .bodyValue(pdf.toByteArray())
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class)
+            .returnResult().getResponseBody();
+        /// assert
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(thumbnailBytes));
+        assertThat(thumbnail.getWidth()).isEqualTo(50);
+        assertThat(thumbnail.getHeight()).isEqualTo(100);
+        webTestClient.put().uri("/create-thumbnail")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .header("Thumbnail-Page", "3")
+            .bodyValue(pdf.toByteArray())
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void createThumbnail_rejects_page_of_single_page_format() throws Exception {
+        /// act & assert
+        webTestClient.put().uri("/create-thumbnail")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .header("Thumbnail-Page", "2")
+            .bodyValue(loadTestFile("image-01.jpg"))
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void createThumbnail_rejects_decompression_bomb_from_header() {
+        /// arrange - PNG signature and IHDR of a 30000 x 30000 RGBA image, which would need 3.6 GB decoded
+        ByteBuffer png = ByteBuffer.allocate(64 * 1024);
+        png.put(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+        png.putInt(13).put("IHDR".getBytes(StandardCharsets.US_ASCII));
+        png.putInt(30_000).putInt(30_000).put((byte) 8).put((byte) 6).put((byte) 0).put((byte) 0).put((byte) 0);
+        /// act & assert
+        webTestClient.put().uri("/create-thumbnail")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(png.array())
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @Test
+    void createThumbnail_rejects_unknown_type_without_reading_the_body() throws Exception {
+        /// arrange - below Tomcat's max-swallow-size (2 MB), so the connection stays open for the early response
+        byte[] content = new byte[1024 * 1024];
+        Arrays.fill(content, (byte) 'x');
+        /// act
+        webTestClient.put().uri("/create-thumbnail")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(content)
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        /// assert - the controller read only the detection prefix
+        DistributionSummary bytesIn = awaitBytesIn("/create-thumbnail", "UNKNOWN");
+        assertThat(bytesIn).isNotNull();
+        assertThat(bytesIn.max()).isLessThanOrEqualTo(Spooling.DETECTION_PREFIX_SIZE);
     }
 
     @ParameterizedTest
@@ -422,10 +578,132 @@ class ImageControllerIT {
             .expectStatus().isOk();
     }
 
+    @Test
+    void createThumbnail_serves_repeated_request_from_cache() throws Exception {
+        /// arrange
+        byte[] jpegContent = loadTestFile(TEST_IMAGE_JPEG);
+        byte[] first = requestThumbnail(jpegContent, "123", "LOSSY_MEDIUM");
+        long hitsBefore = thumbnailCache.stats().hitCount();
+        /// act
+        byte[] second = requestThumbnail(jpegContent, "123", "LOSSY_MEDIUM");
+        /// assert
+        assertThat(second).isEqualTo(first);
+        assertThat(thumbnailCache.stats().hitCount()).isEqualTo(hitsBefore + 1);
+    }
+
+    @Test
+    void createThumbnail_does_not_serve_other_parameters_from_cache() throws Exception {
+        /// arrange
+        byte[] jpegContent = loadTestFile(TEST_IMAGE_JPEG);
+        requestThumbnail(jpegContent, "124", "LOSSY_MEDIUM");
+        long hitsBefore = thumbnailCache.stats().hitCount();
+        /// act
+        requestThumbnail(jpegContent, "124", "LOSSLESS");
+        /// assert
+        assertThat(thumbnailCache.stats().hitCount()).isEqualTo(hitsBefore);
+    }
+
     // -----------------------------------------------------------------------------------------------------------------
     // Cross-cutting concerns tests
     // -----------------------------------------------------------------------------------------------------------------
 
+    @Test
+    void createThumbnail_records_stage_metrics() throws Exception {
+        /// arrange
+        byte[] pngContent = loadTestFile(TEST_IMAGE_PNG);
+        /// act
+        requestThumbnail(pngContent, "125", "LOSSLESS");
+        /// assert
+        for (String stage : List.of("ingest", "detect", "spool", "convert", "serialize")) {
+            assertThat(awaitStageTimer(stage)).as(stage).isNotNull();
+        }
+        assertThat(meterRegistry.get("imaging.request.bytes.in").tag("endpoint", "/create-thumbnail").tag("fileType", "PNG")
+            .summary().totalAmount()).isGreaterThanOrEqualTo(pngContent.length);
+        assertThat(meterRegistry.get("imaging.conversions.active").gauge().value()).isZero();
+    }
+
+    @Test
+    void createThumbnail_returns_server_timing_when_requested() throws Exception {
+        /// arrange
+        byte[] jpegContent = loadTestFile(TEST_IMAGE_JPEG);
+        /// act
+        String serverTiming = webTestClient.put().uri("/create-thumbnail")
+            .header("Thumbnail-Width", "126")
+            .header("Server-Timing-Enabled", "true")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(jpegContent)
+            .exchange()
+            .expectStatus().isOk()
+            .returnResult(byte[].class)
+            .getResponseHeaders()
+            .getFirst("Server-Timing");
+        /// assert
+        assertThat(serverTiming)
+            .contains("ingest;dur=", "detect;dur=", "spool;dur=", "convert;dur=", "total;dur=")
+            .contains("bytes-in;desc=\"" + jpegContent.length + "\"")
+            .containsPattern("pixels;desc=\"[1-9][0-9]*\"")
+            .containsPattern("bytes-out;desc=\"[1-9][0-9]*\"");
+    }
+
+    @Test
+    void createThumbnail_returns_server_timing_on_error_response() {
+        /// act & assert
+        webTestClient.put().uri("/create-thumbnail")
+            .header("Thumbnail-Width", "0")
+            .header("Server-Timing-Enabled", "true")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(new byte[16])
+            .exchange()
+            .expectStatus().isBadRequest()
+            .expectHeader().value("Server-Timing", value -> assertThat(value).contains("total;dur="));
+    }
+
+    @Test
+    void renderPages_returns_server_timing_on_streamed_response() throws Exception {
+        /// arrange
+        byte[] pdfContent = loadTestFile(TEST_PDF);
+        /// act & assert
+        webTestClient.put().uri("/render-pages")
+            .header("Pages", "1")
+            .header("Server-Timing-Enabled", "true")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(pdfContent)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().value("Server-Timing", value -> assertThat(value).contains("convert;dur=", "total;dur="));
+    }
+
+    @Test
+    void createThumbnail_returns_no_server_timing_by_default() throws Exception {
+        /// arrange
+        byte[] jpegContent = loadTestFile(TEST_IMAGE_JPEG);
+        /// act & assert
+        webTestClient.put().uri("/create-thumbnail")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(jpegContent)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().doesNotExist("Server-Timing");
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "/fetch-file-info, convert;dur=",
+        "/detect-type, detect;dur="
+    })
+    void endpoints_return_server_timing_when_requested(String uri, String expectedMetric) throws Exception {
+        /// arrange
+        byte[] pngContent = loadTestFile(TEST_IMAGE_PNG);
+        /// act & assert
+        webTestClient.put().uri(uri)
+            .header("Server-Timing-Enabled", "true")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(pngContent)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().value("Server-Timing", value -> assertThat(value).contains(expectedMetric, "total;dur="));
+    }
+
     @Test
     void all_endpoints_handle_missing_content_type_header() throws Exception {
         /// arrange
@@ -458,6 +736,47 @@ class ImageControllerIT {
     // Helper methods
     // -----------------------------------------------------------------------------------------------------------------
 
+    private Timer awaitStageTimer(String stage) throws InterruptedException {
+        // the serialize stage is recorded after the response is complete
+        for (int i = 0; i < 50; i++) {
+            Timer timer = meterRegistry.find("imaging.request.stage")
+                .tags("endpoint", "/create-thumbnail", "fileType", "PNG", "quality", "LOSSLESS", "stage", stage)
+                .timer();
+            if (timer != null) {
+                return timer;
+            }
+            Thread.sleep(20L);
+        }
+        return null;
+    }
+
+    private DistributionSummary awaitBytesIn(String endpoint, String fileType) throws InterruptedException {
+        // recorded after the response is complete
+        for (int i = 0; i < 50; i++) {
+            DistributionSummary summary = meterRegistry.find("imaging.request.bytes.in")
+                .tags("endpoint", endpoint, "fileType", fileType)
+                .summary();
+            if (summary != null) {
+                return summary;
+            }
+            Thread.sleep(20L);
+        }
+        return null;
+    }
+
+    private byte[] requestThumbnail(byte[] content, String width, String quality) {
+        return webTestClient.put().uri("/create-thumbnail")
+            .header("Thumbnail-Width", width)
+            .header("Thumbnail-Quality", quality)
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(content)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+    }
+
     /**
      * Load test file from imaging-kit test resources (classpath).
      * Falls back to creating synthetic data if file not found.
@@ -0,0 +1,152 @@
+package com.giraone.imaging.demo.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for processing server-local files by path.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "imaging.local-files.roots=target/local-files-it/in",
+        "imaging.local-files.output-roots=target/local-files-it/out"
+    })
+@AutoConfigureWebTestClient
+class LocalFileControllerIT {
+
+    private static final Path IN = Path.of("target/local-files-it/in").toAbsolutePath();
+    private static final Path OUT = Path.of("target/local-files-it/out").toAbsolutePath();
+
+    static {
+        // the roots must exist, when the context is started
+        try {
+            Files.createDirectories(IN);
+            Files.createDirectories(OUT);
+            copyTestFile("image-01.jpg", IN.resolve("image.jpg"));
+            // no extension, the thumbnail provider gets a link with the proper one
+            copyTestFile("image-01.png", IN.resolve("scan"));
+            // escapes the root
+            Files.deleteIfExists(IN.resolve("link.jpg"));
+            Files.createSymbolicLink(IN.resolve("link.jpg"), Path.of("src/test/resources/image-01.jpg").toAbsolutePath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    void fetchFileInfo_reads_file_in_place() {
+        /// act
+        JsonNode jpeg = fetchFileInfo(IN.resolve("image.jpg"));
+        JsonNode png = fetchFileInfo(IN.resolve("scan"));
+        /// assert
+        assertThat(jpeg.get("mimeType").asText()).isEqualTo("image/jpeg");
+        assertThat(jpeg.get("width").asInt()).isEqualTo(1024);
+        assertThat(png.get("mimeType").asText()).isEqualTo("image/png");
+        assertThat(png.get("width").asInt()).isEqualTo(800);
+    }
+
+    @Test
+    void createThumbnail_returns_thumbnail_of_file_without_extension() throws Exception {
+        /// act
+        byte[] thumbnail = webTestClient.post()
+            .uri(uri -> uri.path("/local/create-thumbnail").queryParam("path", IN.resolve("scan").toString()).build())
+            .header("Thumbnail-Width", "100")
+            .header("Thumbnail-Height", "100")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(MediaType.IMAGE_JPEG)
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(thumbnail));
+        assertThat(image.getWidth()).isEqualTo(100);
+        assertThat(IN.resolve("scan")).exists();
+    }
+
+    @Test
+    void createThumbnail_writes_thumbnail_to_target() throws Exception {
+        /// arrange
+        Path target = OUT.resolve("image-thumb.jpg");
+        Files.deleteIfExists(target);
+        /// act
+        JsonNode result = webTestClient.post()
+            .uri(uri -> uri.path("/local/create-thumbnail")
+                .queryParam("path", IN.resolve("image.jpg").toString())
+                .queryParam("target", target.toString())
+                .build())
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(JsonNode.class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        assertThat(result.get("contentType").asText()).isEqualTo("image/jpeg");
+        assertThat(result.get("size").asLong()).isEqualTo(Files.size(target));
+        BufferedImage image = ImageIO.read(target.toFile());
+        assertThat(image.getWidth()).isEqualTo(200);
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(target))).isEqualTo("rw-r--r--");
+    }
+
+    @Test
+    void paths_outside_the_roots_are_not_found() {
+        /// act, assert
+        expectFileInfoStatus(Path.of("src/test/resources/image-01.jpg").toAbsolutePath().toString(), 404);
+        expectFileInfoStatus(Path.of("src/test/resources/missing.jpg").toAbsolutePath().toString(), 404);
+        expectFileInfoStatus(IN + "/../../../pom.xml", 404);
+        expectFileInfoStatus(IN.resolve("link.jpg").toString(), 404);
+        expectFileInfoStatus(IN.resolve("missing.jpg").toString(), 404);
+        expectFileInfoStatus("target/local-files-it/in/image.jpg", 400);
+        webTestClient.post()
+            .uri(uri -> uri.path("/local/create-thumbnail")
+                .queryParam("path", IN.resolve("image.jpg").toString())
+                .queryParam("target", IN.resolve("thumb.jpg").toString())
+                .build())
+            .exchange()
+            .expectStatus().isForbidden();
+    }
+
+    private JsonNode fetchFileInfo(Path file) {
+        return webTestClient.get()
+            .uri(uri -> uri.path("/local/fetch-file-info").queryParam("path", file.toString()).build())
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(JsonNode.class)
+            .returnResult()
+            .getResponseBody();
+    }
+
+    private void expectFileInfoStatus(String path, int status) {
+        webTestClient.get()
+            .uri(uri -> uri.path("/local/fetch-file-info").queryParam("path", path).build())
+            .exchange()
+            .expectStatus().isEqualTo(status);
+    }
+
+    private static void copyTestFile(String fileName, Path target) throws IOException {
+        try (InputStream is = LocalFileControllerIT.class.getClassLoader().getResourceAsStream(fileName)) {
+            Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
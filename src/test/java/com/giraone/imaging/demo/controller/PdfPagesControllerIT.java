@@ -0,0 +1,132 @@
+package com.giraone.imaging.demo.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Map;
+
+import static com.giraone.imaging.demo.controller.ZipEntries.unzip;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the PDF page rendering endpoint.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+class PdfPagesControllerIT {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void renderPages_returns_all_pages_as_zip() throws Exception {
+        /// arrange
+        byte[] pdf = createPdf(PDRectangle.A4, new PDRectangle(PDRectangle.A4.getHeight(), PDRectangle.A4.getWidth()), PDRectangle.A4);
+        long rendered = meterRegistry.get("imaging.pdf.page.render").timer().count();
+        /// act
+        byte[] result = webTestClient.put().uri("/render-pages")
+            .header("Thumbnail-Width", "100")
+            .header("Thumbnail-Height", "100")
+            .contentType(MediaType.APPLICATION_PDF)
+            .bodyValue(pdf)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType("application/zip")
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        Map<String, byte[]> entries = unzip(result);
+        assertThat(entries).containsOnlyKeys("page-001.jpg", "page-002.jpg", "page-003.jpg");
+        BufferedImage landscape = ImageIO.read(new ByteArrayInputStream(entries.get("page-002.jpg")));
+        assertThat(landscape.getWidth()).isEqualTo(100);
+        assertThat(landscape.getHeight()).isEqualTo(70);
+        assertThat(meterRegistry.get("imaging.pdf.page.render").timer().count()).isEqualTo(rendered + 3);
+    }
+
+    @Test
+    void renderPages_returns_contact_sheet_of_selected_pages() throws Exception {
+        /// arrange
+        byte[] pdf = createPdf(PDRectangle.A4, PDRectangle.A4, PDRectangle.A4, PDRectangle.A4);
+        /// act
+        byte[] result = webTestClient.put().uri("/render-pages")
+            .header("Pages", "2-4")
+            .header("Thumbnail-Width", "100")
+            .header("Thumbnail-Height", "100")
+            .header("Contact-Sheet", "true")
+            .header("Contact-Sheet-Columns", "3")
+            .contentType(MediaType.APPLICATION_PDF)
+            .bodyValue(pdf)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(MediaType.IMAGE_JPEG)
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert - three A4 pages of 70x100 (PDFBox rounds down) in one row with a gap of 8 pixels
+        BufferedImage sheet = ImageIO.read(new ByteArrayInputStream(result));
+        assertThat(sheet.getWidth()).isEqualTo(3 * 70 + 4 * 8);
+        assertThat(sheet.getHeight()).isEqualTo(100 + 2 * 8);
+    }
+
+    @Test
+    void renderPages_returns_bad_request_for_missing_pages() throws Exception {
+        /// arrange
+        byte[] pdf = createPdf(PDRectangle.A4, PDRectangle.A4);
+        /// act & assert
+        webTestClient.put().uri("/render-pages")
+            .header("Pages", "2-3")
+            .contentType(MediaType.APPLICATION_PDF)
+            .bodyValue(pdf)
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void renderPages_rejects_other_file_types() throws Exception {
+        /// arrange
+        byte[] jpegContent;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("image-01.jpg")) {
+            assertThat(is).isNotNull();
+            jpegContent = is.readAllBytes();
+        }
+        /// act & assert
+        webTestClient.put().uri("/render-pages")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(jpegContent)
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helper methods
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static byte[] createPdf(PDRectangle... pageSizes) throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            for (PDRectangle pageSize : pageSizes) {
+                document.addPage(new PDPage(pageSize));
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.FileInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the reactive variant of the endpoints (WebFlux instead of Spring MVC).
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"spring.main.web-application-type=reactive", "imaging.thumbnail-cache.enabled=false"})
+@AutoConfigureWebTestClient
+class ReactiveImageControllerIT {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void detectType_detects_jpeg() throws Exception {
+        /// arrange
+        byte[] jpegContent = loadTestFile("image-01.jpg");
+        /// act
+        String result = webTestClient.put().uri("/detect-type")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(jpegContent)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(String.class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        assertThat(result).isEqualTo("JPEG");
+    }
+
+    @Test
+    void fetchFileInfo_returns_metadata_from_header() throws Exception {
+        /// arrange
+        byte[] pngContent = loadTestFile("image-01.png");
+        /// act
+        FileInfo fileInfo = webTestClient.put().uri("/fetch-file-info")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(pngContent)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(FileInfo.class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        assertThat(fileInfo).isNotNull();
+        assertThat(fileInfo.getMimeType()).isEqualTo("image/png");
+        assertThat(fileInfo.getWidth()).isEqualTo(800);
+        assertThat(fileInfo.getHeight()).isEqualTo(600);
+    }
+
+    @Test
+    void fetchFileInfo_reads_header_behind_large_exif_segment() {
+        /// arrange
+        // SOI, a 60 KB APP1 segment, SOF0 for 123 x 45 pixels with 3 components and no valid scan data behind
+        final byte[] content = new byte[1024 * 1024];
+        final int app1Length = 60 * 1024;
+        content[0] = (byte) 0xFF;
+        content[1] = (byte) 0xD8;
+        content[2] = (byte) 0xFF;
+        content[3] = (byte) 0xE1;
+        content[4] = (byte) (app1Length >> 8);
+        content[5] = (byte) app1Length;
+        System.arraycopy("Exif".getBytes(StandardCharsets.US_ASCII), 0, content, 6, 4);
+        final int sof = 4 + app1Length;
+        final byte[] frameHeader = {(byte) 0xFF, (byte) 0xC0, 0x00, 0x11, 0x08, 0x00, 45, 0x00, 123, 0x03};
+        System.arraycopy(frameHeader, 0, content, sof, frameHeader.length);
+        /// act
+        FileInfo fileInfo = webTestClient.put().uri("/fetch-file-info")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(content)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(FileInfo.class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        assertThat(fileInfo).isNotNull();
+        assertThat(fileInfo.getMimeType()).isEqualTo("image/jpeg");
+        assertThat(fileInfo.getWidth()).isEqualTo(123);
+        assertThat(fileInfo.getHeight()).isEqualTo(45);
+        assertThat(fileInfo.getBitsPerPixel()).isEqualTo(24);
+    }
+
+    @Test
+    void fetchFileInfo_returns_bad_request_for_unsupported_format() throws Exception {
+        /// arrange
+        byte[] textContent = loadTestFile("text.txt");
+        /// act, assert
+        webTestClient.put().uri("/fetch-file-info")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(textContent)
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void createThumbnail_streams_thumbnail_with_content_length() throws Exception {
+        /// arrange
+        byte[] jpegContent = loadTestFile("image-01.jpg");
+        /// act
+        byte[] result = webTestClient.put().uri("/create-thumbnail")
+            .header("Thumbnail-Width", "100")
+            .header("Thumbnail-Height", "100")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(jpegContent)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(MediaType.IMAGE_JPEG)
+            .expectHeader().value("Content-Length", length -> assertThat(Long.parseLong(length)).isPositive())
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(result));
+        assertThat(thumbnail.getWidth()).isEqualTo(100);
+        assertThat(thumbnail.getHeight()).isEqualTo(75);
+        assertThat(awaitStageTimer("convert")).isNotNull();
+    }
+
+    @Test
+    void createThumbnail_rejects_unsupported_type_and_invalid_size() throws Exception {
+        /// arrange
+        byte[] textContent = loadTestFile("text.txt");
+        /// act, assert
+        webTestClient.put().uri("/create-thumbnail")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(textContent)
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        webTestClient.put().uri("/create-thumbnail")
+            .header("Thumbnail-Width", "0")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(textContent)
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    private Timer awaitStageTimer(String stage) throws InterruptedException {
+        // streamed responses are recorded after the last buffer was written
+        for (int i = 0; i < 50; i++) {
+            Timer timer = meterRegistry.find("imaging.request.stage")
+                .tags("endpoint", "/create-thumbnail", "stage", stage)
+                .timer();
+            if (timer != null) {
+                return timer;
+            }
+            Thread.sleep(20L);
+        }
+        return null;
+    }
+
+    private byte[] loadTestFile(String fileName) throws Exception {
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(fileName)) {
+            assertThat(is).isNotNull();
+            return is.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.giraone.imaging.demo.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+
+import static com.giraone.imaging.demo.controller.ZipEntries.unzip;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the multi-rendition endpoint.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+class RenditionControllerIT {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    void createRenditions_returns_default_renditions_largest_first() throws Exception {
+        /// arrange
+        byte[] jpegContent = loadTestFile("image-01.jpg");
+        /// act
+        byte[] result = webTestClient.put().uri("/create-renditions")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(jpegContent)
+            .exchange()
+            .expectStatus().isOk()
+            // encoded completely before the response starts
+            .expectHeader().exists(HttpHeaders.CONTENT_LENGTH)
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert - source is 1024x768
+        Map<String, byte[]> entries = unzip(result);
+        assertThat(entries).containsOnlyKeys(
+            "800x600-LOSSY_MEDIUM.jpg", "400x300-LOSSY_MEDIUM.jpg", "200x150-LOSSY_MEDIUM.jpg", "64x48-LOSSY_MEDIUM.jpg");
+        BufferedImage smallest = ImageIO.read(new ByteArrayInputStream(entries.get("64x48-LOSSY_MEDIUM.jpg")));
+        assertThat(smallest.getWidth()).isEqualTo(64);
+        assertThat(smallest.getHeight()).isEqualTo(48);
+    }
+
+    @Test
+    void createRenditions_supports_individual_sizes_and_qualities() throws Exception {
+        /// arrange
+        byte[] pngContent = loadTestFile("image-01.png");
+        /// act
+        byte[] result = webTestClient.put().uri("/create-renditions")
+            .header("Renditions", "100x100:LOSSLESS, 300x50")
+            .header("Thumbnail-Quality", "LOSSY_HIGH")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(pngContent)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert - source is 800x600
+        assertThat(unzip(result)).containsOnlyKeys("100x75-LOSSLESS.png", "67x50-LOSSY_BEST.jpg");
+    }
+
+    @Test
+    void createRenditions_returns_bad_request_for_invalid_renditions() throws Exception {
+        /// arrange
+        byte[] jpegContent = loadTestFile("image-01.jpg");
+        /// act & assert
+        webTestClient.put().uri("/create-renditions")
+            .header("Renditions", "100,abc")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(jpegContent)
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helper methods
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private byte[] loadTestFile(String fileName) throws Exception {
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(fileName)) {
+            assertThat(is).isNotNull();
+            return is.readAllBytes();
+        }
+    }
+}
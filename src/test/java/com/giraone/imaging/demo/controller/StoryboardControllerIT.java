@@ -0,0 +1,119 @@
+package com.giraone.imaging.demo.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.imaging.demo.service.StoryboardIndex;
+import org.jcodec.api.awt.AWTSequenceEncoder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static com.giraone.imaging.demo.controller.ZipEntries.unzip;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the video storyboard endpoint.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+class StoryboardControllerIT {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void createStoryboard_returns_sprite_and_index() throws Exception {
+        /// arrange
+        byte[] video = createVideo(320, 180, 10, 3);
+        /// act
+        byte[] result = webTestClient.put().uri("/create-storyboard")
+            .header("Storyboard-Frames", "6")
+            .header("Storyboard-Columns", "3")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(video)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType("application/zip")
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert - default tiles are 160x90
+        Map<String, byte[]> entries = unzip(result);
+        assertThat(entries).containsOnlyKeys("storyboard.json", "storyboard.jpg");
+        StoryboardIndex index = objectMapper.readValue(entries.get("storyboard.json"), StoryboardIndex.class);
+        assertThat(index.duration()).isEqualTo(3.0);
+        assertThat(index.tiles()).hasSize(6);
+        assertThat(index.tiles().get(4).x()).isEqualTo(160);
+        assertThat(index.tiles().get(4).y()).isEqualTo(90);
+        BufferedImage sprite = ImageIO.read(new ByteArrayInputStream(entries.get("storyboard.jpg")));
+        assertThat(sprite.getWidth()).isEqualTo(3 * 160);
+        assertThat(sprite.getHeight()).isEqualTo(2 * 90);
+    }
+
+    @Test
+    void createStoryboard_returns_bad_request_for_invalid_frames() throws Exception {
+        /// arrange
+        byte[] video = createVideo(64, 48, 10, 1);
+        /// act & assert
+        webTestClient.put().uri("/create-storyboard")
+            .header("Storyboard-Frames", "0")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(video)
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void createStoryboard_rejects_other_file_types() throws Exception {
+        /// arrange
+        byte[] jpegContent;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("image-01.jpg")) {
+            assertThat(is).isNotNull();
+            jpegContent = is.readAllBytes();
+        }
+        /// act & assert
+        webTestClient.put().uri("/create-storyboard")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(jpegContent)
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helper methods
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private byte[] createVideo(int width, int height, int fps, int seconds) throws Exception {
+        Path file = tempDir.resolve("video.mp4");
+        AWTSequenceEncoder encoder = AWTSequenceEncoder.createSequenceEncoder(file.toFile(), fps);
+        BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        for (int i = 0; i < fps * seconds; i++) {
+            Graphics2D g = frame.createGraphics();
+            g.setColor(new Color(Color.HSBtoRGB((float) i / (fps * seconds), 1.0f, 1.0f)));
+            g.fillRect(0, 0, width, height);
+            g.dispose();
+            encoder.encodeImage(frame);
+        }
+        encoder.finish();
+        return Files.readAllBytes(file);
+    }
+}
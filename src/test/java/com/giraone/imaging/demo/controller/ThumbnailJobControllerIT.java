@@ -0,0 +1,123 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.demo.service.ThumbnailJob;
+import com.giraone.imaging.demo.service.ThumbnailJobStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the asynchronous thumbnail job endpoints.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+class ThumbnailJobControllerIT {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    void job_lifecycle_submit_poll_fetch_delete() throws Exception {
+        /// arrange
+        byte[] jpegContent = loadTestFile("image-01.jpg");
+        /// act
+        ThumbnailJobStatus submitted = webTestClient.put().uri("/thumbnail-jobs")
+            .header("Thumbnail-Width", "100")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(jpegContent)
+            .exchange()
+            .expectStatus().isAccepted()
+            .expectHeader().exists("Location")
+            .expectBody(ThumbnailJobStatus.class)
+            .returnResult()
+            .getResponseBody();
+        assertThat(submitted).isNotNull();
+        ThumbnailJobStatus status = awaitFinished(submitted.id());
+        byte[] thumbnail = webTestClient.get().uri("/thumbnail-jobs/{id}/result", submitted.id())
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(MediaType.IMAGE_JPEG)
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        assertThat(status.status()).isEqualTo(ThumbnailJob.Status.DONE);
+        assertThat(status.fileType()).isEqualTo("JPEG");
+        assertThat(thumbnail).hasSize((int) status.outputByteSize());
+        webTestClient.delete().uri("/thumbnail-jobs/{id}", submitted.id())
+            .exchange()
+            .expectStatus().isNoContent();
+        webTestClient.get().uri("/thumbnail-jobs/{id}", submitted.id())
+            .exchange()
+            .expectStatus().isNotFound();
+    }
+
+    @Test
+    void getJob_returns_not_found_for_unknown_id() {
+        /// act & assert
+        webTestClient.get().uri("/thumbnail-jobs/{id}", "unknown")
+            .exchange()
+            .expectStatus().isNotFound();
+        webTestClient.get().uri("/thumbnail-jobs/{id}/result", "unknown")
+            .exchange()
+            .expectStatus().isNotFound();
+    }
+
+    @Test
+    void submitJob_returns_bad_request_for_empty_content() {
+        /// act & assert
+        webTestClient.put().uri("/thumbnail-jobs")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(new byte[0])
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void submitJob_rejects_unsupported_type() throws Exception {
+        /// act & assert
+        webTestClient.put().uri("/thumbnail-jobs")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(loadTestFile("text.txt"))
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+            .expectHeader().doesNotExist(HttpHeaders.LOCATION);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helper methods
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private ThumbnailJobStatus awaitFinished(String id) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            ThumbnailJobStatus status = webTestClient.get().uri("/thumbnail-jobs/{id}", id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ThumbnailJobStatus.class)
+                .returnResult()
+                .getResponseBody();
+            assertThat(status).isNotNull();
+            if (status.status() == ThumbnailJob.Status.DONE || status.status() == ThumbnailJob.Status.FAILED) {
+                return status;
+            }
+            Thread.sleep(100L);
+        }
+        throw new AssertionError("Job " + id + " not finished");
+    }
+
+    private byte[] loadTestFile(String fileName) throws Exception {
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(fileName)) {
+            assertThat(is).isNotNull();
+            return is.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.giraone.imaging.demo.controller;
+
+import com.giraone.imaging.demo.service.CpuPool;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the execution mode with virtual request threads and a separate CPU pool.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"imaging.execution.mode=VIRTUAL", "imaging.execution.cpu-threads=2"})
+@AutoConfigureWebTestClient
+class VirtualExecutionIT {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private CpuPool cpuPool;
+
+    @Test
+    void createThumbnail_works_with_virtual_threads_and_cpu_pool() throws Exception {
+        /// arrange
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", png);
+        /// act
+        byte[] result = webTestClient.put().uri("/create-thumbnail")
+            .header("Thumbnail-Width", "100")
+            .header("Thumbnail-Height", "100")
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .bodyValue(png.toByteArray())
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        /// assert
+        assertThat(cpuPool.isEnabled()).isTrue();
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(result));
+        assertThat(thumbnail.getWidth()).isEqualTo(100);
+        assertThat(thumbnail.getHeight()).isEqualTo(75);
+    }
+}
@@ -0,0 +1,31 @@
+package com.giraone.imaging.demo.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the ZIP responses of the batch, rendition, PDF pages and storyboard endpoints.
+ */
+final class ZipEntries {
+
+    private ZipEntries() {
+    }
+
+    /**
+     * The content of each entry by its name in the order of the ZIP file.
+     */
+    static Map<String, byte[]> unzip(byte[] content) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(content))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        return entries;
+    }
+}
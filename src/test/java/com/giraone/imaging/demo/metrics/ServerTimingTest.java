@@ -0,0 +1,54 @@
+package com.giraone.imaging.demo.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerTimingTest {
+
+    @Test
+    void appendDuration_formats_milliseconds_with_microsecond_precision() {
+        /// act & assert
+        assertThat(ServerTiming.appendDuration(new StringBuilder(), "convert", 25_880_123L)).hasToString("convert;dur=25.880");
+        assertThat(ServerTiming.appendDuration(new StringBuilder(), "detect", 31_999L)).hasToString("detect;dur=0.031");
+        assertThat(ServerTiming.appendDuration(new StringBuilder(), "spool", 1_002_000_000L)).hasToString("spool;dur=1002.000");
+    }
+
+    @Test
+    void format_contains_passed_stages_and_known_counts_only() {
+        /// arrange
+        StageTimings timings = new StageTimings();
+        timings.lap(Stage.INGEST);
+        timings.lap(Stage.CONVERT);
+        timings.setInputPixels(2_073_600L);
+        /// act
+        String header = ServerTiming.format(timings, 12345L);
+        /// assert
+        assertThat(header)
+            .startsWith("ingest;dur=")
+            .contains(", convert;dur=", ", total;dur=", ", pixels;desc=\"2073600\"", ", bytes-out;desc=\"12345\"")
+            .doesNotContain("detect", "spool", "serialize", "bytes-in");
+    }
+
+    @Test
+    void formatTrailer_contains_only_time_added_after_the_header() throws Exception {
+        /// arrange
+        StageTimings timings = new StageTimings();
+        timings.lap(Stage.INGEST);
+        Thread.sleep(2L);
+        timings.lap(Stage.CONVERT);
+        long[] sent = ServerTiming.snapshot(timings);
+        Thread.sleep(2L);
+        timings.lap(Stage.CONVERT);
+        timings.lap(Stage.SERIALIZE);
+        /// act
+        String trailer = ServerTiming.formatTrailer(timings, sent);
+        /// assert
+        assertThat(trailer)
+            .startsWith("convert;dur=")
+            .contains(", serialize;dur=", ", total;dur=")
+            .doesNotContain("ingest", "bytes-out");
+        assertThat(Double.parseDouble(trailer.substring("convert;dur=".length(), trailer.indexOf(','))))
+            .isLessThan(timings.getNanos(Stage.CONVERT) / 1_000_000.0);
+    }
+}
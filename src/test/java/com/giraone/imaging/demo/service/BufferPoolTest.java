@@ -0,0 +1,107 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.demo.config.BufferPoolProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BufferPoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void lease_reuses_returned_buffers_and_keeps_at_most_max_pooled() {
+        /// arrange
+        BufferPool bufferPool = bufferPool(2);
+        BufferPool.Buffer first = bufferPool.lease();
+        BufferPool.Buffer second = bufferPool.lease();
+        BufferPool.Buffer third = bufferPool.lease();
+        byte[] firstArray = first.array();
+        /// act
+        first.close();
+        second.close();
+        third.close();
+        third.close();
+        /// assert
+        assertThat(bufferPool.getIdleCount()).isEqualTo(2);
+        try (BufferPool.Buffer reused = bufferPool.lease()) {
+            assertThat(reused.array()).isSameAs(firstArray).hasSize(64 * 1024);
+        }
+        assertThat(meterRegistry.get("imaging.buffers.allocated").counter().count()).isEqualTo(3.0);
+    }
+
+    @Test
+    void copy_copies_input_larger_than_buffer() throws IOException {
+        /// arrange
+        BufferPool bufferPool = bufferPool(2);
+        byte[] content = new byte[200 * 1024 + 3];
+        Arrays.fill(content, (byte) 7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
+        /// act
+        long copied = bufferPool.copy(new ByteArrayInputStream(content), out);
+        /// assert
+        assertThat(copied).isEqualTo(content.length);
+        assertThat(out.toByteArray()).isEqualTo(content);
+        assertThat(bufferPool.getIdleCount()).isEqualTo(1);
+    }
+
+    @Test
+    void spool_with_pooled_buffer_allocates_less_than_one_buffer_per_request() throws IOException {
+        /// arrange
+        BufferPool bufferPool = bufferPool(2);
+        byte[] content = new byte[4 * 1024 * 1024];
+        byte[] prefix = Arrays.copyOf(content, Spooling.DETECTION_PREFIX_SIZE);
+        Path target = tempDir.resolve("spooled");
+        // warm up class loading, the thread's temporary direct buffer and the pool
+        for (int i = 0; i < 5; i++) {
+            spoolPooled(bufferPool, content, prefix, target);
+            Spooling.spool(prefix, rest(content, prefix), target, null);
+        }
+        /// act
+        long pooled = allocatedBytes(() -> spoolPooled(bufferPool, content, prefix, target));
+        long allocated = allocatedBytes(() -> Spooling.spool(prefix, rest(content, prefix), target, null));
+        /// assert
+        // only the file channel and small wrappers, no chunk buffer
+        assertThat(pooled).isLessThan(4 * 1024L);
+        assertThat(allocated).isGreaterThan(8 * 1024L);
+    }
+
+    private static void spoolPooled(BufferPool bufferPool, byte[] content, byte[] prefix, Path target) throws IOException {
+        try (BufferPool.Buffer buffer = bufferPool.lease()) {
+            Spooling.spool(prefix, rest(content, prefix), target, null, buffer.array());
+        }
+    }
+
+    private static ByteArrayInputStream rest(byte[] content, byte[] prefix) {
+        return new ByteArrayInputStream(content, prefix.length, content.length - prefix.length);
+    }
+
+    private static long allocatedBytes(IoRunnable runnable) throws IOException {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threadMXBean.getCurrentThreadAllocatedBytes();
+        runnable.run();
+        return threadMXBean.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    private BufferPool bufferPool(int maxPooled) {
+        BufferPoolProperties properties = new BufferPoolProperties();
+        properties.setMaxPooled(maxPooled);
+        return new BufferPool(properties, meterRegistry);
+    }
+
+    private interface IoRunnable {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,119 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.config.BulkheadProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConversionBulkheadsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void acquire_rejects_when_queue_is_full() throws Exception {
+        /// arrange
+        ConversionBulkheads bulkheads = new ConversionBulkheads(properties(1, 0, Duration.ofSeconds(1)), meterRegistry);
+        /// act
+        try (ConversionBulkheads.Permit permit = bulkheads.acquire(FileTypeDetector.FileType.PDF)) {
+            /// assert
+            assertThatThrownBy(() -> bulkheads.acquire(FileTypeDetector.FileType.PDF)).isInstanceOf(BulkheadFullException.class);
+            assertThat(meterRegistry.get("imaging.bulkhead.rejected").tag("format", "PDF").counter().count()).isEqualTo(1.0);
+            assertThat(meterRegistry.get("imaging.bulkhead.active").tag("format", "PDF").gauge().value()).isEqualTo(1.0);
+        }
+        assertThat(meterRegistry.get("imaging.bulkhead.active").tag("format", "PDF").gauge().value()).isEqualTo(0.0);
+    }
+
+    @Test
+    void acquire_isolates_file_types() throws Exception {
+        /// arrange
+        ConversionBulkheads bulkheads = new ConversionBulkheads(properties(1, 0, Duration.ofSeconds(1)), meterRegistry);
+        /// act & assert
+        try (ConversionBulkheads.Permit pdf = bulkheads.acquire(FileTypeDetector.FileType.PDF);
+             ConversionBulkheads.Permit jpeg = bulkheads.acquire(FileTypeDetector.FileType.JPEG)) {
+            assertThat(pdf).isNotNull();
+            assertThat(jpeg).isNotNull();
+        }
+    }
+
+    @Test
+    void acquire_waits_for_released_slot() throws Exception {
+        /// arrange
+        ConversionBulkheads bulkheads = new ConversionBulkheads(properties(1, 1, Duration.ofSeconds(10)), meterRegistry);
+        ConversionBulkheads.Permit first = bulkheads.acquire(FileTypeDetector.FileType.MP4);
+        /// act
+        CompletableFuture<ConversionBulkheads.Permit> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return bulkheads.acquire(FileTypeDetector.FileType.MP4);
+            } catch (BulkheadFullException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (meterRegistry.get("imaging.bulkhead.queued").tag("format", "MP4").gauge().value() < 1.0) {
+            Thread.onSpinWait();
+        }
+        first.close();
+        /// assert
+        second.get(5, TimeUnit.SECONDS).close();
+        assertThat(meterRegistry.get("imaging.bulkhead.queued").tag("format", "MP4").gauge().value()).isEqualTo(0.0);
+    }
+
+    @Test
+    void acquireBlocking_waits_without_occupying_the_request_queue() throws Exception {
+        /// arrange
+        ConversionBulkheads bulkheads = new ConversionBulkheads(properties(1, 0, Duration.ofSeconds(1)), meterRegistry);
+        ConversionBulkheads.Permit first = bulkheads.acquire(FileTypeDetector.FileType.PDF);
+        /// act
+        CompletableFuture<ConversionBulkheads.Permit> background = CompletableFuture.supplyAsync(() -> {
+            try {
+                return bulkheads.acquireBlocking(FileTypeDetector.FileType.PDF);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (meterRegistry.get("imaging.bulkhead.queued").tag("format", "PDF").gauge().value() < 1.0) {
+            Thread.onSpinWait();
+        }
+        /// assert
+        assertThat(background).isNotDone();
+        first.close();
+        background.get(5, TimeUnit.SECONDS).close();
+        assertThat(meterRegistry.get("imaging.bulkhead.active").tag("format", "PDF").gauge().value()).isEqualTo(0.0);
+        assertThat(meterRegistry.get("imaging.bulkhead.rejected").tag("format", "PDF").counter().count()).isZero();
+    }
+
+    @Test
+    void format_limits_inherit_fields_not_set_from_defaults() throws Exception {
+        /// arrange
+        BulkheadProperties properties = properties(1, 0, Duration.ofSeconds(10));
+        BulkheadProperties.Limits pdfLimits = new BulkheadProperties.Limits();
+        pdfLimits.setMaxConcurrent(2);
+        properties.getFormats().put(FileTypeDetector.FileType.PDF, pdfLimits);
+        ConversionBulkheads bulkheads = new ConversionBulkheads(properties, meterRegistry);
+        /// act
+        try (ConversionBulkheads.Permit first = bulkheads.acquire(FileTypeDetector.FileType.PDF);
+             ConversionBulkheads.Permit second = bulkheads.acquire(FileTypeDetector.FileType.PDF)) {
+            long start = System.nanoTime();
+            /// assert
+            assertThatThrownBy(() -> bulkheads.acquire(FileTypeDetector.FileType.PDF))
+                .isInstanceOf(BulkheadFullException.class)
+                .hasMessageContaining("queue full");
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+        }
+        assertThat(properties.limitsFor(FileTypeDetector.FileType.PDF).getMaxWait()).isEqualTo(Duration.ofSeconds(10));
+    }
+
+    private static BulkheadProperties properties(int maxConcurrent, int maxQueue, Duration maxWait) {
+        BulkheadProperties properties = new BulkheadProperties();
+        properties.getDefaults().setMaxConcurrent(maxConcurrent);
+        properties.getDefaults().setMaxQueue(maxQueue);
+        properties.getDefaults().setMaxWait(maxWait);
+        return properties;
+    }
+}
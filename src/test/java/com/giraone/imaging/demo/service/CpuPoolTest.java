@@ -0,0 +1,50 @@
+package com.giraone.imaging.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CpuPoolTest {
+
+    @Test
+    void call_runs_on_pool_thread_when_enabled() throws Exception {
+        /// arrange
+        try (CpuPool cpuPool = new CpuPool(Executors.newFixedThreadPool(1, Thread.ofPlatform().name("cpu-test").factory()))) {
+            /// act
+            String threadName = cpuPool.call(() -> Thread.currentThread().getName());
+            /// assert
+            assertThat(cpuPool.isEnabled()).isTrue();
+            assertThat(threadName).isEqualTo("cpu-test");
+        }
+    }
+
+    @Test
+    void call_runs_inline_when_disabled() throws Exception {
+        /// arrange
+        try (CpuPool cpuPool = new CpuPool(null)) {
+            /// act
+            Thread thread = cpuPool.call(Thread::currentThread);
+            /// assert
+            assertThat(cpuPool.isEnabled()).isFalse();
+            assertThat(thread).isSameAs(Thread.currentThread());
+        }
+    }
+
+    @Test
+    void call_rethrows_exception_of_task_unchanged() {
+        /// arrange
+        try (CpuPool cpuPool = new CpuPool(Executors.newSingleThreadExecutor())) {
+            /// act, assert
+            assertThatThrownBy(() -> cpuPool.call(() -> {
+                throw new IOException("broken");
+            })).isExactlyInstanceOf(IOException.class).hasMessage("broken");
+            assertThatThrownBy(() -> cpuPool.call(() -> {
+                throw new IllegalStateException("bug");
+            })).isExactlyInstanceOf(IllegalStateException.class);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.demo.config.MemoryBudgetProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DecodeMemoryBudgetTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void reserve_rejects_images_above_pixel_limit_and_budget() {
+        /// arrange
+        DecodeMemoryBudget budget = new DecodeMemoryBudget(properties(DataSize.ofMegabytes(100), 30_000_000L), meterRegistry);
+        /// act & assert
+        assertThatThrownBy(() -> budget.reserve(30_000L * 30_000L)).isInstanceOf(ImageTooLargeException.class);
+        assertThatThrownBy(() -> budget.reserve(29_000_000L)).isInstanceOf(ImageTooLargeException.class);
+        assertThat(meterRegistry.get("imaging.memory.budget.rejected").tag("reason", "too_large").counter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void reserve_rejects_when_budget_is_exhausted_and_releases_on_close() throws Exception {
+        /// arrange
+        DecodeMemoryBudget budget = new DecodeMemoryBudget(properties(DataSize.ofMegabytes(100), 100_000_000L), meterRegistry);
+        long pixels = 4_000 * 4_000; // 64 MB decoded
+        /// act
+        try (DecodeMemoryBudget.Reservation reservation = budget.reserve(pixels)) {
+            /// assert
+            assertThat(meterRegistry.get("imaging.memory.budget.reserved").gauge().value()).isGreaterThanOrEqualTo(64_000_000.0);
+            assertThatThrownBy(() -> budget.reserve(pixels)).isInstanceOf(BulkheadFullException.class);
+            assertThat(meterRegistry.get("imaging.memory.budget.rejected").tag("reason", "exhausted").counter().count()).isEqualTo(1.0);
+        }
+        assertThat(budget.getReservedBytes()).isZero();
+        budget.reserve(pixels).close();
+    }
+
+    @Test
+    void reserve_does_nothing_for_unknown_size() throws Exception {
+        /// arrange
+        DecodeMemoryBudget budget = new DecodeMemoryBudget(properties(DataSize.ofMegabytes(1), 1L), meterRegistry);
+        /// act
+        try (DecodeMemoryBudget.Reservation reservation = budget.reserve(-1L)) {
+            /// assert
+            assertThat(budget.getReservedBytes()).isZero();
+        }
+    }
+
+    private static MemoryBudgetProperties properties(DataSize maxSize, long maxPixels) {
+        MemoryBudgetProperties properties = new MemoryBudgetProperties();
+        properties.setMaxSize(maxSize);
+        properties.setMaxPixels(maxPixels);
+        properties.setMaxWait(Duration.ofMillis(50));
+        return properties;
+    }
+}
@@ -0,0 +1,131 @@
+package com.giraone.imaging.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.config.IndexerProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DirectoryIndexerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private DirectoryIndexer directoryIndexer;
+    private Path root;
+    private Path indexFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        IndexerProperties properties = new IndexerProperties();
+        properties.setThreads(3);
+        directoryIndexer = new DirectoryIndexer(properties, objectMapper);
+        root = Files.createDirectories(tempDir.resolve("volume"));
+        indexFile = tempDir.resolve("index.jsonl");
+        // more files than one batch in a nested directory
+        Path nested = Files.createDirectories(root.resolve("a").resolve("b"));
+        byte[] jpeg = loadTestFile("image-01.jpg");
+        for (int i = 0; i < DirectoryIndexer.BATCH_SIZE + 8; i++) {
+            Files.write(nested.resolve("image-" + i + ".jpg"), jpeg);
+        }
+        Files.write(root.resolve("image.png"), loadTestFile("image-01.png"));
+        Files.write(root.resolve("text.txt"), loadTestFile("text.txt"));
+        Files.write(root.resolve("broken.png"), new byte[]{(byte) 0x89, 'P', 'N', 'G', 1, 2, 3});
+    }
+
+    @Test
+    void index_writes_one_line_per_file_with_file_info() throws Exception {
+        /// act
+        DirectoryIndexer.Report report = directoryIndexer.index(root, indexFile);
+        /// assert
+        int jpegCount = DirectoryIndexer.BATCH_SIZE + 8;
+        assertThat(report.files()).isEqualTo(jpegCount + 3);
+        assertThat(report.indexed()).isEqualTo(jpegCount + 3);
+        assertThat(report.errors()).isEqualTo(1);
+        assertThat(report.errorsByType()).containsExactly(Map.entry(FileTypeDetector.FileType.PNG, 1L));
+        Map<String, JsonNode> lines = readIndex();
+        assertThat(lines).hasSize(jpegCount + 3);
+        JsonNode jpeg = lines.get(Path.of("a", "b", "image-0.jpg").toString());
+        assertThat(jpeg.get("fileType").asText()).isEqualTo("JPEG");
+        assertThat(jpeg.get("fileInfo").get("width").asInt()).isEqualTo(1024);
+        assertThat(lines.get("image.png").get("fileInfo").get("mimeType").asText()).isEqualTo("image/png");
+        assertThat(lines.get("text.txt").get("fileType").asText()).isEqualTo("UNKNOWN");
+        assertThat(lines.get("text.txt").get("error").isNull()).isTrue();
+        assertThat(lines.get("broken.png").get("error").asText()).isNotEmpty();
+    }
+
+    @Test
+    void index_skips_unchanged_files_on_rerun() throws Exception {
+        /// arrange
+        directoryIndexer.index(root, indexFile);
+        Map<String, JsonNode> before = readIndex();
+        Files.write(root.resolve("image.png"), loadTestFile("image-01.gif"));
+        Files.setLastModifiedTime(root.resolve("image.png"), FileTime.fromMillis(System.currentTimeMillis() + 10_000L));
+        Files.delete(root.resolve("text.txt"));
+        /// act
+        DirectoryIndexer.Report report = directoryIndexer.index(root, indexFile);
+        /// assert
+        // the changed file and the one with an error
+        assertThat(report.indexed()).isEqualTo(2);
+        assertThat(report.unchanged()).isEqualTo(report.files() - 2);
+        assertThat(report.removed()).isEqualTo(1);
+        assertThat(report.errors()).isEqualTo(1);
+        assertThat(report.errorsByType()).containsExactly(Map.entry(FileTypeDetector.FileType.PNG, 1L));
+        Map<String, JsonNode> after = readIndex();
+        assertThat(after).hasSize(before.size() - 1).doesNotContainKey("text.txt");
+        assertThat(after.get("image.png").get("fileType").asText()).isEqualTo("GIF");
+        assertThat(after.get("broken.png").get("error").asText()).isNotEmpty();
+        String jpeg = Path.of("a", "b", "image-0.jpg").toString();
+        assertThat(after.get(jpeg)).isEqualTo(before.get(jpeg));
+        assertThat(tempDir.resolve("index.jsonl.tmp")).doesNotExist();
+    }
+
+    @Test
+    void index_reads_files_with_previous_error_again() throws Exception {
+        /// arrange
+        directoryIndexer.index(root, indexFile);
+        // a transient read error of the previous run
+        List<String> lines = Files.readAllLines(indexFile).stream()
+            .map(line -> line.contains("\"image.png\"") ? line.replace("\"error\":null", "\"error\":\"IOException: Input/output error\"") : line)
+            .toList();
+        Files.write(indexFile, lines);
+        /// act
+        DirectoryIndexer.Report report = directoryIndexer.index(root, indexFile);
+        /// assert
+        assertThat(report.indexed()).isEqualTo(2);
+        assertThat(report.errors()).isEqualTo(1);
+        Map<String, JsonNode> after = readIndex();
+        assertThat(after.get("image.png").get("error").isNull()).isTrue();
+        assertThat(after.get("image.png").get("fileInfo").get("mimeType").asText()).isEqualTo("image/png");
+    }
+
+    private Map<String, JsonNode> readIndex() throws Exception {
+        List<String> lines = Files.readAllLines(indexFile);
+        Map<String, JsonNode> result = new HashMap<>();
+        for (String line : lines) {
+            JsonNode node = objectMapper.readTree(line);
+            result.put(node.get("path").asText(), node);
+        }
+        assertThat(result).hasSize(lines.size());
+        return result;
+    }
+
+    private byte[] loadTestFile(String fileName) throws Exception {
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(fileName)) {
+            return is.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.ConversionCommand;
+import com.giraone.imaging.demo.config.DiskCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiskThumbnailCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void entries_survive_restart() throws Exception {
+        /// arrange
+        DiskThumbnailCache cache = open(DataSize.ofMegabytes(1));
+        cache.put(key("aa01"), "image/jpeg", thumbnail(100));
+        cache.put(key("bb02"), "image/jpeg", thumbnail(200));
+        cache.close();
+        /// act
+        DiskThumbnailCache reopened = open(DataSize.ofMegabytes(1));
+        DiskThumbnailCache.Entry entry = reopened.get(key("aa01"));
+        /// assert
+        assertThat(entry).isNotNull();
+        assertThat(entry.contentType()).isEqualTo("image/jpeg");
+        assertThat(Files.readAllBytes(entry.file())).hasSize(100);
+        assertThat(reopened.getEntryCount()).isEqualTo(2);
+        assertThat(reopened.getTotalBytes()).isEqualTo(300L);
+        reopened.close();
+    }
+
+    @Test
+    void least_recently_used_entries_are_evicted() throws Exception {
+        /// arrange
+        DiskThumbnailCache cache = open(DataSize.ofBytes(250));
+        cache.put(key("aa01"), "image/jpeg", thumbnail(100));
+        cache.put(key("bb02"), "image/jpeg", thumbnail(100));
+        Path first = cache.get(key("aa01")).file();
+        /// act
+        cache.put(key("cc03"), "image/jpeg", thumbnail(100));
+        /// assert
+        assertThat(cache.get(key("aa01"))).isNotNull();
+        assertThat(cache.get(key("bb02"))).isNull();
+        assertThat(cache.get(key("cc03"))).isNotNull();
+        assertThat(first).exists();
+        assertThat(cache.getTotalBytes()).isEqualTo(200L);
+        cache.close();
+    }
+
+    @Test
+    void torn_log_line_and_orphans_are_dropped_after_crash() throws Exception {
+        /// arrange
+        DiskThumbnailCache cache = open(DataSize.ofMegabytes(1));
+        cache.put(key("aa01"), "image/png", thumbnail(100));
+        Path orphan = cache.put(key("bb02"), "image/png", thumbnail(100)).file();
+        // no clean shutdown, the last line is torn
+        Path index = tempDir.resolve(DiskThumbnailCache.INDEX_FILE);
+        String log = Files.readString(index);
+        Files.writeString(index, log.substring(0, log.length() - 5), StandardOpenOption.TRUNCATE_EXISTING);
+        /// act
+        DiskThumbnailCache reopened = open(DataSize.ofMegabytes(1));
+        /// assert
+        assertThat(reopened.get(key("aa01"))).isNotNull();
+        assertThat(reopened.get(key("bb02"))).isNull();
+        assertThat(orphan).doesNotExist();
+        reopened.close();
+    }
+
+    @Test
+    void link_survives_eviction_of_the_entry_and_expires() throws Exception {
+        /// arrange
+        DiskThumbnailCache cache = open(DataSize.ofBytes(150));
+        cache.put(key("aa01"), "image/jpeg", thumbnail(100));
+        DiskThumbnailCache.Entry entry = cache.get(key("aa01"));
+        /// act
+        Path link = cache.link(entry);
+        cache.put(key("bb02"), "image/jpeg", thumbnail(100));
+        /// assert
+        assertThat(entry.file()).doesNotExist();
+        assertThat(Files.readAllBytes(link)).hasSize(100);
+        assertThat(cache.link(entry)).isNull();
+        // the entry was found, but only the first link is a hit
+        assertThat(meterRegistry.counter("imaging.disk.cache.hits").count()).isEqualTo(1.0);
+        assertThat(meterRegistry.counter("imaging.disk.cache.misses").count()).isEqualTo(1.0);
+        cache.deleteExpiredLinks(System.currentTimeMillis() + 1L);
+        assertThat(link).doesNotExist();
+        cache.close();
+    }
+
+    private DiskThumbnailCache open(DataSize maxSize) throws Exception {
+        DiskCacheProperties properties = new DiskCacheProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(tempDir);
+        properties.setMaxSize(maxSize);
+        return new DiskThumbnailCache(properties, meterRegistry);
+    }
+
+    private static ThumbnailKey key(String contentHash) {
+        return new ThumbnailKey(contentHash, 200, 200, ConversionCommand.CompressionQuality.LOSSY_MEDIUM, "image/jpeg", 1);
+    }
+
+    private Path thumbnail(int size) throws Exception {
+        Path file = Files.createTempFile(tempDir, "thumb-out-", ".jpg");
+        Files.write(file, "x".repeat(size).getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+}
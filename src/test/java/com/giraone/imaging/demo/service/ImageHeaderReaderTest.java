@@ -0,0 +1,95 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileInfo;
+import com.giraone.imaging.FileTypeDetector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageHeaderReaderTest {
+
+    @ParameterizedTest
+    @CsvSource({
+        "image-01.jpg,JPEG,image/jpeg,1024,768,24",
+        "image-01.png,PNG,image/png,800,600,24",
+        "image-01.gif,GIF,image/gif,100,75,8"
+    })
+    void read_returns_header_info_and_stops_reading(String fileName, FileTypeDetector.FileType fileType, String expectedMimeType,
+                                                    int expectedWidth, int expectedHeight, int expectedBitsPerPixel) throws Exception {
+        /// arrange
+        byte[] content = loadTestFile(fileName);
+        InputStream in = new ByteArrayInputStream(content);
+        ImageHeaderReader reader = new ImageHeaderReader(in.readNBytes(16), in);
+        /// act
+        FileInfo fileInfo = reader.read(fileType);
+        /// assert
+        assertThat(fileInfo).isNotNull();
+        assertThat(fileInfo.getMimeType()).isEqualTo(expectedMimeType);
+        assertThat(fileInfo.getProviderFormat()).isEqualTo(fileType.name());
+        assertThat(fileInfo.getWidth()).isEqualTo(expectedWidth);
+        assertThat(fileInfo.getHeight()).isEqualTo(expectedHeight);
+        assertThat(fileInfo.getBitsPerPixel()).isEqualTo(expectedBitsPerPixel);
+        assertThat(reader.getBytesReadCount()).isLessThan(content.length);
+        assertThat(in.available()).isEqualTo(content.length - reader.getBytesReadCount());
+    }
+
+    @Test
+    void read_returns_header_info_for_bmp() throws Exception {
+        /// arrange
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(33, 17, BufferedImage.TYPE_3BYTE_BGR), "bmp", out);
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        ImageHeaderReader reader = new ImageHeaderReader(new byte[0], in);
+        /// act
+        FileInfo fileInfo = reader.read(FileTypeDetector.FileType.BMP);
+        /// assert
+        assertThat(fileInfo).isNotNull();
+        assertThat(fileInfo.getMimeType()).isEqualTo("image/bmp");
+        assertThat(fileInfo.getWidth()).isEqualTo(33);
+        assertThat(fileInfo.getHeight()).isEqualTo(17);
+        assertThat(fileInfo.getBitsPerPixel()).isEqualTo(24);
+    }
+
+    @Test
+    void read_returns_null_and_keeps_bytes_read_for_truncated_header() throws Exception {
+        /// arrange
+        byte[] content = Arrays.copyOf(loadTestFile("image-01.jpg"), 100);
+        ImageHeaderReader reader = new ImageHeaderReader(new byte[0], new ByteArrayInputStream(content));
+        /// act
+        FileInfo fileInfo = reader.read(FileTypeDetector.FileType.JPEG);
+        /// assert
+        assertThat(fileInfo).isNull();
+        assertThat(reader.getBytesRead()).isEqualTo(Arrays.copyOf(content, reader.getBytesReadCount()));
+    }
+
+    @Test
+    void read_with_borrowed_buffer_returns_copy_of_bytes_read() throws Exception {
+        /// arrange
+        byte[] content = Arrays.copyOf(loadTestFile("image-01.jpg"), 100);
+        byte[] buffer = new byte[1024];
+        ImageHeaderReader reader = new ImageHeaderReader(Arrays.copyOf(content, 10), new ByteArrayInputStream(content, 10, 90), buffer);
+        /// act
+        FileInfo fileInfo = reader.read(FileTypeDetector.FileType.JPEG);
+        /// assert
+        assertThat(fileInfo).isNull();
+        assertThat(reader.getBytesReadCount()).isEqualTo(100);
+        assertThat(Arrays.copyOf(buffer, 100)).isEqualTo(content);
+        assertThat(reader.getBytesRead()).isEqualTo(content).isNotSameAs(buffer);
+    }
+
+    private byte[] loadTestFile(String fileName) throws Exception {
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(fileName)) {
+            assertThat(is).isNotNull();
+            return is.readAllBytes();
+        }
+    }
+}
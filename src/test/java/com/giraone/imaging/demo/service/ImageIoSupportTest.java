@@ -0,0 +1,56 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.ConversionCommand;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageIoSupportTest {
+
+    @Test
+    void scaleDown_and_write_lossless_keep_transparency() throws Exception {
+        /// arrange
+        BufferedImage source = transparentImage(400, 200);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        /// act
+        BufferedImage scaled = ImageIoSupport.scaleDown(source, new Dimension(100, 50));
+        ImageIoSupport.write(scaled, ConversionCommand.CompressionQuality.LOSSLESS, out);
+        /// assert
+        BufferedImage png = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(png.getColorModel().hasAlpha()).isTrue();
+        assertThat(png.getRGB(10, 25) >>> 24).isZero();
+        assertThat(png.getRGB(90, 25)).isEqualTo(Color.RED.getRGB());
+    }
+
+    @Test
+    void write_lossy_replaces_transparency_with_white() throws Exception {
+        /// arrange
+        BufferedImage scaled = ImageIoSupport.scaleDown(transparentImage(400, 200), new Dimension(100, 50));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        /// act
+        ImageIoSupport.write(scaled, ConversionCommand.CompressionQuality.LOSSY_BEST, out);
+        /// assert
+        BufferedImage jpeg = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(jpeg.getColorModel().hasAlpha()).isFalse();
+        assertThat(new Color(jpeg.getRGB(10, 25)).getGreen()).isGreaterThan(240);
+        assertThat(new Color(jpeg.getRGB(90, 25)).getGreen()).isLessThan(20);
+    }
+
+    /**
+     * Left half transparent, right half opaque red.
+     */
+    private static BufferedImage transparentImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(width / 2, 0, width / 2, height);
+        g.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,113 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.demo.config.MemoryBudgetProperties;
+import com.giraone.imaging.demo.config.PdfPagesProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PdfPageServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+    private final DecodeMemoryBudget decodeMemoryBudget = new DecodeMemoryBudget(new MemoryBudgetProperties(), meterRegistry);
+    private final PdfPageService pdfPageService = createService();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void parsePages_resolves_ranges_in_requested_order() throws Exception {
+        /// act & assert
+        assertThat(pdfPageService.parsePages("all", 3)).containsExactly(1, 2, 3);
+        assertThat(pdfPageService.parsePages(" ", 2)).containsExactly(1, 2);
+        assertThat(pdfPageService.parsePages("5, 1-3, 2, 9-", 10)).containsExactly(5, 1, 2, 3, 9, 10);
+    }
+
+    @Test
+    void parsePages_rejects_invalid_and_too_many_pages() {
+        /// act & assert
+        assertThatThrownBy(() -> pdfPageService.parsePages("0", 3)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> pdfPageService.parsePages("2-4", 3)).isInstanceOf(PageNotFoundException.class);
+        assertThatThrownBy(() -> pdfPageService.parsePages("3-1", 3)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> pdfPageService.parsePages("a", 3)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> pdfPageService.parsePages("all", 11)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void renderPages_renders_in_parallel_keeping_the_order() throws Exception {
+        /// arrange - the page number is encoded in the page width
+        Path pdf = tempDir.resolve("pages.pdf");
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 1; i <= 8; i++) {
+                PDPage page = new PDPage(new PDRectangle(100 * i, 1000));
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.setNonStrokingColor(Color.BLUE);
+                    content.addRect(0, 0, 100 * i, 1000);
+                    content.fill();
+                }
+            }
+            document.save(pdf.toFile());
+        }
+        /// act
+        PdfPageService.RenderedPages pages = pdfPageService.renderPages(pdf, List.of(8, 1, 4, 2, 7, 3, 6, 5), new Dimension(100, 100), 0L);
+        /// assert - the pages stay reserved until closed
+        assertThat(decodeMemoryBudget.getReservedBytes()).isGreaterThanOrEqualTo(DecodeMemoryBudget.estimateBytes(8 * 100 * 100));
+        pages.close();
+        assertThat(decodeMemoryBudget.getReservedBytes()).isZero();
+        List<BufferedImage> rendered = pages.images();
+        assertThat(rendered).extracting(BufferedImage::getWidth).containsExactly(80, 10, 40, 20, 70, 30, 60, 50);
+        assertThat(rendered).extracting(BufferedImage::getHeight).containsOnly(100);
+        assertThat(rendered.get(0).getRGB(40, 50) & 0xffffff).isEqualTo(0x0000ff);
+        assertThat(meterRegistry.get("imaging.pdf.page.render").timer().count()).isEqualTo(8);
+    }
+
+    @Test
+    void contactSheet_centers_pages_in_grid() {
+        /// arrange
+        List<BufferedImage> pages = List.of(
+            new BufferedImage(70, 100, BufferedImage.TYPE_INT_RGB),
+            new BufferedImage(100, 70, BufferedImage.TYPE_INT_RGB),
+            new BufferedImage(70, 100, BufferedImage.TYPE_INT_RGB));
+        /// act
+        BufferedImage square = PdfPageService.contactSheet(pages, 0);
+        BufferedImage row = PdfPageService.contactSheet(pages, 5);
+        /// assert - cells are 100x100
+        int gap = PdfPageService.CONTACT_SHEET_GAP;
+        assertThat(new Dimension(square.getWidth(), square.getHeight())).isEqualTo(new Dimension(200 + 3 * gap, 200 + 3 * gap));
+        assertThat(new Dimension(row.getWidth(), row.getHeight())).isEqualTo(new Dimension(300 + 4 * gap, 100 + 2 * gap));
+        assertThat(PdfPageService.contactSheetPixels(3, 0, new Dimension(100, 100))).isEqualTo((long) square.getWidth() * square.getHeight());
+        assertThat(PdfPageService.contactSheetPixels(3, 5, new Dimension(100, 100))).isEqualTo((long) row.getWidth() * row.getHeight());
+        // white margin left of the first centered portrait page, black page content
+        assertThat(square.getRGB(gap + 10, gap + 50) & 0xffffff).isEqualTo(0xffffff);
+        assertThat(square.getRGB(gap + 50, gap + 50) & 0xffffff).isZero();
+    }
+
+    private PdfPageService createService() {
+        PdfPagesProperties properties = new PdfPagesProperties();
+        properties.setThreads(3);
+        properties.setMaxPages(10);
+        return new PdfPageService(executor, decodeMemoryBudget, properties, meterRegistry);
+    }
+}
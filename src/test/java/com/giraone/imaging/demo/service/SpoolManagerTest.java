@@ -0,0 +1,130 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.demo.config.BufferPoolProperties;
+import com.giraone.imaging.demo.config.SpoolProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpoolManagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void spoolFile_is_rejected_after_max_wait_when_quota_is_exhausted() throws Exception {
+        /// arrange
+        SpoolManager spoolManager = spoolManager(Duration.ofMillis(100), Duration.ofHours(1));
+        SpoolManager.SpoolFile first = spoolManager.spoolFile("test-", ".bin");
+        spoolManager.spool(new byte[0], upload(64), first.path(), null);
+        /// act
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> spoolManager.spoolFile("test-", ".bin"))
+            /// assert
+            .isInstanceOf(BulkheadFullException.class);
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(spoolManager.getLiveBytes()).isEqualTo(64L);
+        assertThat(meterRegistry.get("imaging.spool.rejected").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void close_releases_quota_and_admits_waiting_upload() throws Exception {
+        /// arrange
+        SpoolManager spoolManager = spoolManager(Duration.ofSeconds(10), Duration.ofHours(1));
+        SpoolManager.SpoolFile first = spoolManager.spoolFile("test-", ".bin");
+        spoolManager.spool(new byte[0], upload(64), first.path(), null);
+        CompletableFuture<SpoolManager.SpoolFile> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return spoolManager.spoolFile("test-", ".bin");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100L);
+        assertThat(waiting).isNotDone();
+        /// act
+        first.close();
+        /// assert
+        try (SpoolManager.SpoolFile second = waiting.get(5, TimeUnit.SECONDS)) {
+            assertThat(Files.exists(first.path())).isFalse();
+            assertThat(Files.exists(second.path())).isTrue();
+            assertThat(spoolManager.getLiveBytes()).isZero();
+            assertThat(spoolManager.getFileCount()).isEqualTo(1);
+        }
+        assertThat(spoolManager.getFileCount()).isZero();
+    }
+
+    @Test
+    void released_file_is_not_deleted_on_close() throws Exception {
+        /// arrange
+        SpoolManager spoolManager = spoolManager(Duration.ofSeconds(10), Duration.ofHours(1));
+        Path file;
+        /// act
+        try (SpoolManager.SpoolFile spoolFile = spoolManager.spoolFile("test-", ".bin")) {
+            spoolManager.spool(new byte[0], upload(16), spoolFile.path(), null);
+            file = spoolFile.release();
+        }
+        /// assert
+        assertThat(Files.exists(file)).isTrue();
+        assertThat(spoolManager.getLiveBytes()).isEqualTo(16L);
+        spoolManager.delete(file);
+        assertThat(Files.exists(file)).isFalse();
+        assertThat(spoolManager.getLiveBytes()).isZero();
+    }
+
+    @Test
+    void sweep_deletes_leaked_and_orphaned_files() throws Exception {
+        /// arrange
+        Path previousRun = Files.writeString(tempDir.resolve("file-in-1.jpg"), "previous run");
+        SpoolManager spoolManager = spoolManager(Duration.ofSeconds(10), Duration.ZERO);
+        assertThat(Files.exists(previousRun)).isFalse();
+        Path leaked = spoolManager.createFile("thumb-out-", ".jpg");
+        Files.writeString(leaked, "leaked");
+        spoolManager.account(leaked);
+        Path orphan = Files.writeString(tempDir.resolve("orphan.jpg"), "orphan");
+        Files.setLastModifiedTime(orphan, FileTime.from(Instant.now().minus(Duration.ofMinutes(5))));
+        Path recent = Files.writeString(tempDir.resolve("recent.jpg"), "recent");
+        Thread.sleep(10L);
+        /// act
+        spoolManager.sweep();
+        /// assert
+        assertThat(Files.exists(leaked)).isFalse();
+        assertThat(Files.exists(orphan)).isFalse();
+        assertThat(Files.exists(recent)).isTrue();
+        assertThat(spoolManager.getFileCount()).isZero();
+        assertThat(spoolManager.getLiveBytes()).isZero();
+        assertThat(meterRegistry.get("imaging.spool.leaks").counter().count()).isEqualTo(1.0);
+        // the file of the previous run and the orphan
+        assertThat(meterRegistry.get("imaging.spool.orphans").counter().count()).isEqualTo(2.0);
+    }
+
+    private SpoolManager spoolManager(Duration maxWait, Duration leakAge) throws IOException {
+        SpoolProperties properties = new SpoolProperties();
+        properties.setDirectory(tempDir);
+        properties.setMaxSize(DataSize.ofBytes(64));
+        properties.setMaxWait(maxWait);
+        properties.setLeakAge(leakAge);
+        return new SpoolManager(properties, new BufferPool(new BufferPoolProperties(), meterRegistry), meterRegistry);
+    }
+
+    private static InputStream upload(int size) {
+        return new ByteArrayInputStream(new byte[size]);
+    }
+}
@@ -0,0 +1,65 @@
+package com.giraone.imaging.demo.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpoolingTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void spool_writes_prefix_and_rest_and_updates_digest() throws Exception {
+        /// arrange
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        InputStream in = new ByteArrayInputStream(content);
+        byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+        MessageDigest digest = ThumbnailKey.newDigest();
+        Path target = tempDir.resolve("spooled");
+        /// act
+        long written = Spooling.spool(prefix, in, target, digest);
+        /// assert
+        assertThat(written).isEqualTo(content.length);
+        assertThat(Files.readAllBytes(target)).isEqualTo(content);
+        assertThat(digest.digest()).isEqualTo(ThumbnailKey.newDigest().digest(content));
+    }
+
+    @Test
+    void spool_handles_input_shorter_than_prefix() throws Exception {
+        /// arrange
+        byte[] content = "GIF89a".getBytes();
+        InputStream in = new ByteArrayInputStream(content);
+        byte[] prefix = in.readNBytes(Spooling.DETECTION_PREFIX_SIZE);
+        Path target = tempDir.resolve("small");
+        /// act
+        long written = Spooling.spool(prefix, in, target, null);
+        /// assert
+        assertThat(written).isEqualTo(content.length);
+        assertThat(Arrays.equals(Files.readAllBytes(target), content)).isTrue();
+    }
+
+    @Test
+    void tempFileResource_deletes_file_after_reading() throws Exception {
+        /// arrange
+        Path file = Files.write(tempDir.resolve("out"), new byte[]{1, 2, 3});
+        TempFileResource resource = new TempFileResource(file);
+        /// act
+        try (InputStream in = resource.getInputStream()) {
+            assertThat(in.readAllBytes()).hasSize(3);
+        }
+        /// assert
+        assertThat(file).doesNotExist();
+    }
+}
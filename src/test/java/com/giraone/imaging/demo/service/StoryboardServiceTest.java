@@ -0,0 +1,96 @@
+package com.giraone.imaging.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.imaging.demo.config.MemoryBudgetProperties;
+import com.giraone.imaging.demo.config.StoryboardProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jcodec.api.awt.AWTSequenceEncoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StoryboardServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+    private final DecodeMemoryBudget decodeMemoryBudget = new DecodeMemoryBudget(new MemoryBudgetProperties(), meterRegistry);
+    private final StoryboardService storyboardService = createService();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void createStoryboard_packs_frames_into_sprite_with_index() throws Exception {
+        /// arrange - 4 seconds at 10 fps, the brightness increases each second
+        Path video = writeVideo(tempDir.resolve("video.mp4"), 320, 192, 10, 4);
+        /// act
+        StoryboardService.Storyboard storyboard = storyboardService.createStoryboard(video, 8, new Dimension(80, 80), 4);
+        /// assert - the sprite stays reserved until the storyboard is closed
+        assertThat(decodeMemoryBudget.getReservedBytes()).isGreaterThanOrEqualTo(DecodeMemoryBudget.estimateBytes(320 * 96));
+        storyboard.close();
+        assertThat(decodeMemoryBudget.getReservedBytes()).isZero();
+        StoryboardIndex index = storyboard.index();
+        assertThat(index.duration()).isEqualTo(4.0);
+        assertThat(index.tileWidth()).isEqualTo(80);
+        assertThat(index.tileHeight()).isEqualTo(48);
+        assertThat(index.columns()).isEqualTo(4);
+        assertThat(index.rows()).isEqualTo(2);
+        assertThat(storyboard.sprite().getWidth()).isEqualTo(320);
+        assertThat(storyboard.sprite().getHeight()).isEqualTo(96);
+        assertThat(meterRegistry.get("imaging.video.frame.extract").timer().count()).isEqualTo(8);
+        // the encoder writes a key frame every 25 frames (0s, 2.5s), each tile shows the nearest one
+        assertThat(index.tiles()).extracting(StoryboardIndex.Tile::frameTime).containsExactly(0.0, 0.0, 2.5, 2.5, 2.5, 2.5, 2.5, 2.5);
+        assertThat(index.tiles().get(5)).isEqualTo(new StoryboardIndex.Tile(2.5, 3.0, 2.5, 80, 48));
+        assertThat(storyboard.sprite().getRGB(40, 24) & 0xff).isLessThan(10);
+        assertThat(storyboard.sprite().getRGB(200, 24) & 0xff).isBetween(90, 110);
+    }
+
+    @Test
+    void createStoryboard_rejects_sprite_exceeding_the_memory_budget() throws Exception {
+        /// arrange - 10000 tiles of 320x192 are more than the default of 100 million pixels
+        Path video = writeVideo(tempDir.resolve("video.mp4"), 320, 192, 10, 1);
+        /// act, assert
+        assertThatThrownBy(() -> storyboardService.createStoryboard(video, 10_000, new Dimension(3840, 2160), 100))
+            .isInstanceOf(ImageTooLargeException.class);
+        assertThat(decodeMemoryBudget.getReservedBytes()).isZero();
+        assertThat(meterRegistry.get("imaging.video.frame.extract").timer().count()).isZero();
+    }
+
+    private StoryboardService createService() {
+        StoryboardProperties properties = new StoryboardProperties();
+        properties.setThreads(3);
+        return new StoryboardService(executor, decodeMemoryBudget, new ObjectMapper(), properties, meterRegistry);
+    }
+
+    /**
+     * Encode a H.264 video, whose frames are filled with a gray level of 50 times the second.
+     */
+    static Path writeVideo(Path file, int width, int height, int fps, int seconds) throws Exception {
+        AWTSequenceEncoder encoder = AWTSequenceEncoder.createSequenceEncoder(file.toFile(), fps);
+        BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        for (int i = 0; i < fps * seconds; i++) {
+            Graphics2D g = frame.createGraphics();
+            int gray = 50 * (i / fps);
+            g.setColor(new Color(gray, gray, gray));
+            g.fillRect(0, 0, width, height);
+            g.dispose();
+            encoder.encodeImage(frame);
+        }
+        encoder.finish();
+        return file;
+    }
+}
@@ -0,0 +1,132 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.ConversionCommand;
+import com.giraone.imaging.demo.config.CoalescingProperties;
+import com.giraone.imaging.demo.config.BufferPoolProperties;
+import com.giraone.imaging.demo.config.SpoolProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ThumbnailCoalescerTest {
+
+    private static final ThumbnailKey KEY = new ThumbnailKey("abc", 200, 200, ConversionCommand.CompressionQuality.LOSSY_MEDIUM, "image/jpeg", 1);
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ThumbnailCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        SpoolProperties spoolProperties = new SpoolProperties();
+        spoolProperties.setDirectory(tempDir);
+        coalescer = new ThumbnailCoalescer(new CoalescingProperties(), new SpoolManager(spoolProperties, new BufferPool(new BufferPoolProperties(), meterRegistry), meterRegistry), meterRegistry);
+    }
+
+    @Test
+    void convert_runs_one_conversion_for_concurrent_identical_requests() throws Exception {
+        /// arrange
+        int requests = 8;
+        AtomicInteger conversions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        List<Path> outputs = new ArrayList<>();
+        try {
+            /// act
+            List<Future<Path>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                futures.add(executor.submit(() -> coalescer.convert(KEY, () -> {
+                    conversions.incrementAndGet();
+                    release.await(10, TimeUnit.SECONDS);
+                    return createOutput("thumbnail");
+                })));
+            }
+            while (meterRegistry.get("imaging.coalescing.joined").counter().count() < requests - 1) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+            for (Future<Path> future : futures) {
+                outputs.add(future.get(10, TimeUnit.SECONDS));
+            }
+            /// assert
+            assertThat(conversions.get()).isEqualTo(1);
+            assertThat(meterRegistry.get("imaging.coalescing.leader").counter().count()).isEqualTo(1.0);
+            assertThat(meterRegistry.get("imaging.coalescing.inflight").gauge().value()).isZero();
+            Set<Path> distinct = new HashSet<>(outputs);
+            assertThat(distinct).hasSize(requests);
+            for (Path output : outputs) {
+                assertThat(Files.readString(output)).isEqualTo("thumbnail");
+            }
+        } finally {
+            executor.shutdownNow();
+            outputs.forEach(Spooling::deleteQuietly);
+        }
+    }
+
+    @Test
+    void convert_passes_failure_to_all_waiters_and_not_to_later_requests() throws Exception {
+        /// arrange
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Path> leader = executor.submit(() -> coalescer.convert(KEY, () -> {
+                release.await(10, TimeUnit.SECONDS);
+                throw new IOException("conversion failed");
+            }));
+            while (meterRegistry.get("imaging.coalescing.leader").counter().count() < 1.0) {
+                Thread.onSpinWait();
+            }
+            Future<Path> joined = executor.submit(() -> coalescer.convert(KEY, () -> createOutput("unused")));
+            while (meterRegistry.get("imaging.coalescing.joined").counter().count() < 1.0) {
+                Thread.onSpinWait();
+            }
+            /// act
+            release.countDown();
+            /// assert
+            assertThatThrownBy(() -> leader.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(IOException.class);
+            assertThatThrownBy(() -> joined.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(IOException.class);
+            Path later = coalescer.convert(KEY, () -> createOutput("retried"));
+            assertThat(Files.readString(later)).isEqualTo("retried");
+            Spooling.deleteQuietly(later);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void convert_returns_the_output_itself_without_concurrent_requests() throws Exception {
+        /// arrange
+        Path output = createOutput("thumbnail");
+        /// act
+        Path result = coalescer.convert(KEY, () -> output);
+        /// assert
+        assertThat(result).isEqualTo(output);
+        Spooling.deleteQuietly(result);
+    }
+
+    private static Path createOutput(String content) throws IOException {
+        Path output = Files.createTempFile("thumb-out-", ".jpg");
+        Files.writeString(output, content);
+        return output;
+    }
+}
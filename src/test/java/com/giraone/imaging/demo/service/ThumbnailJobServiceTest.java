@@ -0,0 +1,87 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.ConversionCommand;
+import com.giraone.imaging.FileTypeDetector;
+import com.giraone.imaging.demo.config.BufferPoolProperties;
+import com.giraone.imaging.demo.config.BulkheadProperties;
+import com.giraone.imaging.demo.config.JobProperties;
+import com.giraone.imaging.demo.config.MemoryBudgetProperties;
+import com.giraone.imaging.demo.config.PdfPagesProperties;
+import com.giraone.imaging.demo.config.SpoolProperties;
+import com.giraone.imaging.demo.config.SubsamplingProperties;
+import com.giraone.imaging.demo.config.TiffProperties;
+import com.giraone.imaging.demo.metrics.ImagingMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ThumbnailJobServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor();
+    private SpoolManager spoolManager;
+    private ThumbnailJobService thumbnailJobService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        SpoolProperties spoolProperties = new SpoolProperties();
+        spoolProperties.setDirectory(tempDir);
+        spoolManager = new SpoolManager(spoolProperties, new BufferPool(new BufferPoolProperties(), meterRegistry), meterRegistry);
+        DecodeMemoryBudget decodeMemoryBudget = new DecodeMemoryBudget(new MemoryBudgetProperties(), meterRegistry);
+        ThumbnailService thumbnailService = new ThumbnailService(new ImagingMetrics(meterRegistry), decodeMemoryBudget, spoolManager,
+            new PdfPageService(jobExecutor, decodeMemoryBudget, new PdfPagesProperties(), meterRegistry),
+            new SubsamplingProperties(), new TiffProperties());
+        thumbnailJobService = new ThumbnailJobService(thumbnailService, new ConversionBulkheads(new BulkheadProperties(), meterRegistry),
+            new CpuPool(null), spoolManager, jobExecutor, new JobProperties(), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobExecutor.shutdownNow();
+    }
+
+    @Test
+    void remove_cancels_queued_job_and_deletes_its_input() throws Exception {
+        /// arrange
+        CountDownLatch release = new CountDownLatch(1);
+        jobExecutor.execute(() -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Path inputFile = spoolManager.createFile("job-in-", ".jpg");
+        ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "jpg", inputFile.toFile());
+        spoolManager.account(inputFile);
+        ThumbnailJob job = thumbnailJobService.submit(inputFile, FileTypeDetector.FileType.JPEG,
+            new ThumbnailSpec(32, 32, ConversionCommand.CompressionQuality.LOSSY_MEDIUM));
+        /// act
+        boolean removed = thumbnailJobService.remove(job.getId());
+        release.countDown();
+        /// assert
+        assertThat(removed).isTrue();
+        assertThat(job.getFuture().isCancelled()).isTrue();
+        assertThat(Files.exists(inputFile)).isFalse();
+        jobExecutor.submit(() -> null).get(10, TimeUnit.SECONDS);
+        assertThat(job.getStatus()).isEqualTo(ThumbnailJob.Status.QUEUED);
+        assertThat(job.getStartedAt()).isNull();
+        assertThat(spoolManager.getFileCount()).isZero();
+    }
+}
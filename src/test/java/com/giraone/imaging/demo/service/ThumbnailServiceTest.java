@@ -0,0 +1,52 @@
+package com.giraone.imaging.demo.service;
+
+import com.giraone.imaging.FileTypeDetector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ThumbnailServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @CsvSource({
+        "JPEG,6000,4000,200,200,2,15",
+        "JPEG,6000,4000,200,200,3,10",
+        "PNG,1024,768,100,200,2,5",
+        "JPEG,800,600,300,300,2,1",
+        "JPEG,400,300,800,800,2,1",
+        "GIF,6000,4000,200,200,2,1",
+        "TIFF,6000,4000,200,200,2,1"
+    })
+    void subsamplingFactor_keeps_oversampling_of_target(FileTypeDetector.FileType fileType, int sourceWidth, int sourceHeight,
+                                                        int boxWidth, int boxHeight, int oversampling, int expectedFactor) {
+        /// act
+        int factor = ThumbnailService.subsamplingFactor(fileType, new Dimension(sourceWidth, sourceHeight),
+            new Dimension(boxWidth, boxHeight), oversampling);
+        /// assert
+        assertThat(factor).isEqualTo(expectedFactor);
+    }
+
+    @Test
+    void readSubsampled_decodes_reduced_resolution() throws Exception {
+        /// arrange
+        Path file = tempDir.resolve("large.jpg");
+        ImageIO.write(new BufferedImage(1000, 600, BufferedImage.TYPE_INT_RGB), "jpg", file.toFile());
+        /// act
+        BufferedImage image = ImageIoSupport.readSubsampled(file, 4);
+        /// assert
+        assertThat(ImageIoSupport.readDimension(file)).isEqualTo(new Dimension(1000, 600));
+        assertThat(image.getWidth()).isEqualTo(250);
+        assertThat(image.getHeight()).isEqualTo(150);
+    }
+}
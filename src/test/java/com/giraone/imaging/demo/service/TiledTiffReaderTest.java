@@ -0,0 +1,117 @@
+package com.giraone.imaging.demo.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.plugins.tiff.BaselineTIFFTagSet;
+import javax.imageio.plugins.tiff.TIFFDirectory;
+import javax.imageio.plugins.tiff.TIFFField;
+import javax.imageio.plugins.tiff.TIFFTag;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TiledTiffReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void pages_group_reduced_resolution_images() throws Exception {
+        /// arrange
+        Path file = writeTiff(image(2000, 1000, Color.RED), image(500, 250, Color.RED), image(400, 600, Color.BLUE));
+        /// act
+        try (TiledTiffReader tiff = new TiledTiffReader(file)) {
+            /// assert
+            assertThat(tiff.getPageCount()).isEqualTo(2);
+            assertThat(tiff.getPageSize(1)).isEqualTo(new Dimension(2000, 1000));
+            assertThat(tiff.getPageSize(2)).isEqualTo(new Dimension(400, 600));
+            assertThatThrownBy(() -> tiff.plan(3, new Dimension(100, 100), 2, 512))
+                .isInstanceOf(PageNotFoundException.class);
+        }
+    }
+
+    @Test
+    void plan_uses_reduced_resolution_image_when_large_enough() throws Exception {
+        /// arrange
+        Path file = writeTiff(image(2000, 1000, Color.RED), image(500, 250, Color.RED), image(400, 600, Color.BLUE));
+        try (TiledTiffReader tiff = new TiledTiffReader(file)) {
+            /// act
+            TiledTiffReader.Plan small = tiff.plan(1, new Dimension(100, 100), 2, 64);
+            TiledTiffReader.Plan large = tiff.plan(1, new Dimension(400, 400), 2, 64);
+            /// assert
+            assertThat(small.imageIndex()).isEqualTo(1);
+            assertThat(small.subsampling()).isEqualTo(2);
+            assertThat(small.target()).isEqualTo(new Dimension(100, 50));
+            assertThat(large.imageIndex()).isEqualTo(0);
+            assertThat(large.subsampling()).isEqualTo(2);
+            // whole tiles of 256 rows and a multiple of the subsampling
+            assertThat(large.bandRows()).isEqualTo(256);
+        }
+    }
+
+    @Test
+    void read_creates_thumbnail_of_selected_page() throws Exception {
+        /// arrange
+        Path file = writeTiff(image(2000, 1000, Color.RED), image(500, 250, Color.RED), image(400, 600, Color.BLUE));
+        try (TiledTiffReader tiff = new TiledTiffReader(file)) {
+            /// act
+            BufferedImage first = tiff.read(tiff.plan(1, new Dimension(400, 400), 2, 64));
+            BufferedImage second = tiff.read(tiff.plan(2, new Dimension(100, 100), 2, 64));
+            /// assert
+            assertThat(new Dimension(first.getWidth(), first.getHeight())).isEqualTo(new Dimension(400, 200));
+            assertThat(new Dimension(second.getWidth(), second.getHeight())).isEqualTo(new Dimension(67, 100));
+            // the last band is drawn, too
+            assertThat(first.getRGB(200, 199) & 0xffffff).isEqualTo(0xff0000);
+            assertThat(second.getRGB(33, 50) & 0xffffff).isEqualTo(0x0000ff);
+        }
+    }
+
+    private static BufferedImage image(int width, int height, Color color) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Write a tiled TIFF. The second image is marked as reduced-resolution version of the first one.
+     */
+    private Path writeTiff(BufferedImage... images) throws Exception {
+        Path file = tempDir.resolve("multi.tif");
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("tiff").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file.toFile())) {
+            writer.setOutput(out);
+            writer.prepareWriteSequence(null);
+            for (int i = 0; i < images.length; i++) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setTiling(256, 256, 0, 0);
+                IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(images[i]), param);
+                if (i == 1) {
+                    TIFFDirectory directory = TIFFDirectory.createFromMetadata(metadata);
+                    directory.addTIFFField(new TIFFField(BaselineTIFFTagSet.getInstance().getTag(BaselineTIFFTagSet.TAG_NEW_SUBFILE_TYPE),
+                        TIFFTag.TIFF_LONG, 1, new long[]{BaselineTIFFTagSet.NEW_SUBFILE_TYPE_REDUCED_RESOLUTION}));
+                    metadata = directory.getAsMetadata();
+                }
+                writer.writeToSequence(new IIOImage(images[i], null, metadata), param);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+        return file;
+    }
+}